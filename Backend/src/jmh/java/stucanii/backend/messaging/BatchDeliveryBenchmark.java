@@ -0,0 +1,130 @@
+package stucanii.backend.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ConcurrentTaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Server-side CPU per delivered event for a burst of {@value #BURST} notifications to one subscription:
+ * one STOMP frame each, versus one {@link SubscriptionBatcher} frame for the whole burst.
+ * Covers STOMP encoding and the hand-off to the session; not the network.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BatchDeliveryBenchmark {
+
+    static final int BURST = 10;
+
+    private final StompSubProtocolHandler stomp = new StompSubProtocolHandler();
+    private final NoopSession session = new NoopSession();
+    private final MessageChannel toClient = (m, timeout) -> {
+        stomp.handleMessageToClient(session, m);
+        return true;
+    };
+
+    private ScheduledExecutorService timer;
+    private SubscriptionBatcher batcher;
+    private Message<byte[]>[] burst;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+        // max-size = burst: the batch goes out synchronously when the burst completes
+        batcher = new SubscriptionBatcher(new ConcurrentTaskScheduler(timer), new SimpleMeterRegistry(),
+                Duration.ofMillis(250), BURST);
+        batcher.subscribed("s1", "sub-0", "/topic/activity/dr.pop", "25");
+
+        burst = new Message[BURST];
+        for (int i = 0; i < BURST; i++) {
+            String json = "{\"type\":\"MOOD_ENTRY\",\"clientUsername\":\"client" + i + "\",\"entryId\":" + (1000 + i)
+                    + ",\"createdAt\":\"2026-01-01T10:15:30.123Z\",\"summary\":\"Logged a mood entry\"}";
+            SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            h.setSessionId("s1");
+            h.setSubscriptionId("sub-0");
+            h.setDestination("/topic/activity/dr.pop");
+            h.setContentType(MimeTypeUtils.APPLICATION_JSON);
+            burst[i] = MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), h.getMessageHeaders());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        timer.shutdownNow();
+        System.out.printf("%nframes sent: %d%n", session.frames);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void framePerEvent() {
+        for (Message<byte[]> m : burst) {
+            toClient.send(m);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void batchedFrame() {
+        for (Message<byte[]> m : burst) {
+            Message<?> out = batcher.preSend(m, toClient);
+            if (out != null) {
+                toClient.send(out);
+            }
+        }
+    }
+
+    static final class NoopSession implements WebSocketSession {
+        long frames;
+        private final Map<String, Object> attributes = new HashMap<>();
+
+        @Override public void sendMessage(WebSocketMessage<?> message) { frames++; }
+        @Override public String getId() { return "s1"; }
+        @Override public URI getUri() { return null; }
+        @Override public org.springframework.http.HttpHeaders getHandshakeHeaders() { return new org.springframework.http.HttpHeaders(); }
+        @Override public Map<String, Object> getAttributes() { return attributes; }
+        @Override public Principal getPrincipal() { return null; }
+        @Override public InetSocketAddress getLocalAddress() { return null; }
+        @Override public InetSocketAddress getRemoteAddress() { return null; }
+        @Override public String getAcceptedProtocol() { return "v12.stomp"; }
+        @Override public void setTextMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getTextMessageSizeLimit() { return Integer.MAX_VALUE; }
+        @Override public void setBinaryMessageSizeLimit(int messageSizeLimit) { }
+        @Override public int getBinaryMessageSizeLimit() { return Integer.MAX_VALUE; }
+        @Override public List<WebSocketExtension> getExtensions() { return List.of(); }
+        @Override public boolean isOpen() { return true; }
+        @Override public void close() { }
+        @Override public void close(CloseStatus status) { }
+    }
+}
@@ -0,0 +1,107 @@
+package stucanii.backend.messaging;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import stucanii.backend.api.events.PanicWsEvent;
+import tools.jackson.databind.JsonNode;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JSON vs CBOR for a panic event (with a Jitsi-sized token) and a 50-row list: encode, decode, and the
+ * JSON-to-CBOR re-encoding {@link CborTranscodingInterceptor} does per CBOR session. Sizes are printed at setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PayloadEncodingBenchmark {
+
+    public record Row(Integer id, String clientUsername, String status, Instant createdAt, Instant updatedAt,
+                      boolean triggeredByLongPress) {}
+
+    private final JsonMapper json = JsonMapper.builder().build();
+    private final CBORMapper cbor = CBORMapper.builder().build();
+
+    private PanicWsEvent event;
+    private List<Row> rows;
+    private byte[] eventJson;
+    private byte[] eventCbor;
+    private byte[] rowsJson;
+    private byte[] rowsCbor;
+
+    @Setup
+    public void setUp() {
+        // RS256 Jitsi tokens run to roughly 700 base64url characters
+        String token = "x".repeat(700);
+        event = new PanicWsEvent(1234, "client.username", true, Instant.parse("2026-01-01T10:15:30.123Z"),
+                "room-" + UUID.randomUUID(), token, UUID.randomUUID().toString());
+        rows = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            Instant t = Instant.parse("2026-01-01T10:15:30.123Z").plusSeconds(i);
+            rows.add(new Row(1000 + i, "client" + i, "OPEN", t, t, i % 2 == 0));
+        }
+        eventJson = json.writeValueAsBytes(event);
+        eventCbor = cbor.writeValueAsBytes(event);
+        rowsJson = json.writeValueAsBytes(rows);
+        rowsCbor = cbor.writeValueAsBytes(rows);
+        System.out.printf("%nsizes: event json=%d cbor=%d, 50 rows json=%d cbor=%d bytes%n",
+                eventJson.length, eventCbor.length, rowsJson.length, rowsCbor.length);
+    }
+
+    @Benchmark
+    public byte[] eventToJson() {
+        return json.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] eventToCbor() {
+        return cbor.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public PanicWsEvent eventFromJson() {
+        return json.readValue(eventJson, PanicWsEvent.class);
+    }
+
+    @Benchmark
+    public PanicWsEvent eventFromCbor() {
+        return cbor.readValue(eventCbor, PanicWsEvent.class);
+    }
+
+    @Benchmark
+    public byte[] eventTranscodeJsonToCbor() {
+        JsonNode tree = json.readTree(eventJson);
+        return cbor.writeValueAsBytes(tree);
+    }
+
+    @Benchmark
+    public byte[] rowsToJson() {
+        return json.writeValueAsBytes(rows);
+    }
+
+    @Benchmark
+    public byte[] rowsToCbor() {
+        return cbor.writeValueAsBytes(rows);
+    }
+
+    @Benchmark
+    public Row[] rowsFromJson() {
+        return json.readValue(rowsJson, Row[].class);
+    }
+
+    @Benchmark
+    public Row[] rowsFromCbor() {
+        return cbor.readValue(rowsCbor, Row[].class);
+    }
+}
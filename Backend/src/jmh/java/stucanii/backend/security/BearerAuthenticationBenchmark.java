@@ -0,0 +1,92 @@
+package stucanii.backend.security;
+
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.JwsHeader;
+import org.springframework.security.oauth2.jwt.JwtClaimsSet;
+import org.springframework.security.oauth2.jwt.JwtEncoder;
+import org.springframework.security.oauth2.jwt.JwtEncoderParameters;
+import org.springframework.security.oauth2.jwt.NimbusJwtDecoder;
+import org.springframework.security.oauth2.jwt.NimbusJwtEncoder;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
+import org.springframework.security.oauth2.server.resource.web.authentication.BearerTokenAuthenticationFilter;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+import static org.springframework.security.oauth2.jose.jws.MacAlgorithm.HS256;
+
+/**
+ * Cost of the bearer-token filter per request with the same access token each time, as the dashboard
+ * sends it: decoder + converter on every request, versus {@link CachingJwtAuthenticationManager}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BearerAuthenticationBenchmark {
+
+    private static final FilterChain NOOP = (req, res) -> { };
+
+    private BearerTokenAuthenticationFilter uncached;
+    private BearerTokenAuthenticationFilter cached;
+    private String authorization;
+
+    @Setup
+    public void setUp() {
+        SecretKey key = new SecretKeySpec(
+                "a-benchmark-secret-that-is-long-enough-for-hs256".getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+        JwtEncoder encoder = new NimbusJwtEncoder(new ImmutableSecret<>(key));
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .issuer("therappy-backend")
+                .issuedAt(Instant.now())
+                .expiresAt(Instant.now().plusSeconds(900))
+                .subject("client.username")
+                .claim("role", "CLIENT")
+                .build();
+        authorization = "Bearer " + encoder.encode(JwtEncoderParameters.from(JwsHeader.with(HS256).build(), claims))
+                .getTokenValue();
+
+        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(new JwtAuthConverter());
+        JwtAuthenticationProvider provider = new JwtAuthenticationProvider(NimbusJwtDecoder.withSecretKey(key).build());
+        provider.setJwtAuthenticationConverter(converter);
+
+        uncached = new BearerTokenAuthenticationFilter(provider::authenticate);
+        cached = new BearerTokenAuthenticationFilter(
+                new CachingJwtAuthenticationManager(provider, new SimpleMeterRegistry(), 1000));
+    }
+
+    @Benchmark
+    public Object verifyEveryRequest() throws Exception {
+        return run(uncached);
+    }
+
+    @Benchmark
+    public Object cachedVerification() throws Exception {
+        return run(cached);
+    }
+
+    private Object run(BearerTokenAuthenticationFilter filter) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/mood");
+        request.addHeader("Authorization", authorization);
+        filter.doFilter(request, new MockHttpServletResponse(), NOOP);
+        Object auth = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.clearContext();
+        return auth;
+    }
+}
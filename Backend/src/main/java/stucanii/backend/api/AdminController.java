@@ -14,6 +14,7 @@ import stucanii.backend.domain.Role;
 import stucanii.backend.domain.User;
 import stucanii.backend.repository.RefreshTokenRepository;
 import stucanii.backend.repository.UserRepository;
+import stucanii.backend.security.IdentityResolver;
 
 import java.util.List;
 import java.util.Map;
@@ -24,10 +25,13 @@ public class AdminController {
 
     private final UserRepository userRepository;
     private final RefreshTokenRepository refreshTokenRepository;
+    private final IdentityResolver identities;
 
-    public AdminController(UserRepository userRepository, RefreshTokenRepository refreshTokenRepository) {
+    public AdminController(UserRepository userRepository, RefreshTokenRepository refreshTokenRepository,
+                           IdentityResolver identities) {
         this.userRepository = userRepository;
         this.refreshTokenRepository = refreshTokenRepository;
+        this.identities = identities;
     }
 
     @GetMapping("/stats")
@@ -61,6 +65,7 @@ public class AdminController {
 
         user.setRole(newRole);
         userRepository.save(user);
+        identities.evict(user);
     }
 
     @DeleteMapping("/users/{id}")
@@ -76,6 +81,7 @@ public class AdminController {
 
         // 2) delete user
         userRepository.deleteById(id);
+        identities.evict(id);
     }
 
     @GetMapping("/ping")
@@ -0,0 +1,54 @@
+package stucanii.backend.api;
+
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.UserRepository;
+import stucanii.backend.service.AckLatencyAnalytics;
+import stucanii.backend.service.AckLatencyAnalytics.Stats;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RestController
+@RequestMapping("/api/admin/panic")
+public class AdminPanicAnalyticsController {
+
+    private final AckLatencyAnalytics analytics;
+    private final UserRepository userRepository;
+
+    public AdminPanicAnalyticsController(AckLatencyAnalytics analytics, UserRepository userRepository) {
+        this.analytics = analytics;
+        this.userRepository = userRepository;
+    }
+
+    public record PsychologistAckLatency(Integer psychologistId, String username, Stats stats) {}
+
+    public record AckLatencyResponse(Stats overall, List<PsychologistAckLatency> psychologists) {}
+
+    @GetMapping("/ack-latency")
+    @PreAuthorize("hasRole('ADMIN')")
+    public AckLatencyResponse ackLatency() {
+        Map<String, Stats> snapshot = analytics.snapshot();
+
+        Map<Integer, Stats> byPsychologist = snapshot.entrySet().stream()
+                .filter(e -> !e.getKey().equals(AckLatencyAnalytics.ALL))
+                .collect(Collectors.toMap(
+                        e -> Integer.valueOf(e.getKey().substring(e.getKey().indexOf(':') + 1)),
+                        Map.Entry::getValue));
+
+        Map<Integer, String> usernames = userRepository.findAllById(byPsychologist.keySet()).stream()
+                .collect(Collectors.toMap(User::getId, User::getUsername));
+
+        List<PsychologistAckLatency> psychologists = byPsychologist.entrySet().stream()
+                .map(e -> new PsychologistAckLatency(e.getKey(), usernames.get(e.getKey()), e.getValue()))
+                .sorted(Comparator.comparing(PsychologistAckLatency::psychologistId))
+                .toList();
+
+        return new AckLatencyResponse(snapshot.get(AckLatencyAnalytics.ALL), psychologists);
+    }
+}
@@ -0,0 +1,30 @@
+package stucanii.backend.api;
+
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import stucanii.backend.domain.Role;
+import stucanii.backend.messaging.PresenceRegistry;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/admin/presence")
+public class AdminPresenceController {
+
+    private final PresenceRegistry presence;
+
+    public AdminPresenceController(PresenceRegistry presence) {
+        this.presence = presence;
+    }
+
+    public record PresenceResponse(Map<Role, Long> online, List<String> psychologists) {}
+
+    @GetMapping
+    @PreAuthorize("hasRole('ADMIN')")
+    public PresenceResponse presence() {
+        return new PresenceResponse(presence.onlineCounts(), presence.onlineUsernames(Role.PSYCHOLOGIST));
+    }
+}
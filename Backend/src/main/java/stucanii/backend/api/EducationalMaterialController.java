@@ -1,21 +1,34 @@
 package stucanii.backend.api;
 
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRange;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
+import org.springframework.util.MimeTypeUtils;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.multipart.MultipartFile;
-import stucanii.backend.domain.EducationalMaterial;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import stucanii.backend.repository.EducationalMaterialRepository.MaterialSummary;
 import stucanii.backend.service.EducationalMaterialService;
 
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/materials")
 public class EducationalMaterialController {
 
+    // more ranges than this in one request and the whole file is sent instead
+    static final int MAX_RANGES = 16;
+
     private final EducationalMaterialService service;
 
     public EducationalMaterialController(EducationalMaterialService service) {
@@ -34,17 +47,17 @@ public class EducationalMaterialController {
         String filename = file.getOriginalFilename() == null ? "material" : file.getOriginalFilename();
         String ct = file.getContentType() == null ? "application/octet-stream" : file.getContentType();
 
-        Integer id = service.uploadForClient(auth.getName(), clientId, filename, ct, file.getBytes());
-        return new UploadResponse(id);
+        try (InputStream in = file.getInputStream()) {
+            Integer id = service.uploadForClient(auth.getName(), clientId, filename, ct, in, file.getSize());
+            return new UploadResponse(id);
+        }
     }
     // psychologist list for a specific client
     @GetMapping("/clients/{clientId}")
     @PreAuthorize("hasRole('PSYCHOLOGIST')")
     public ListResponse listForClient(Authentication auth, @PathVariable Integer clientId) {
-        List<EducationalMaterial> items = service.listForClientAsPsychologist(auth.getName(), clientId);
-        return new ListResponse(items.stream().map(m ->
-                new MaterialItem(m.getId(), m.getOriginalFilename(), m.getContentType(), m.getSizeBytes(), m.getUploadedAt().toString())
-        ).toList());
+        List<MaterialSummary> items = service.listForClientAsPsychologist(auth.getName(), clientId);
+        return new ListResponse(items.stream().map(EducationalMaterialController::toItem).toList());
     }
 
     @DeleteMapping("/{id}")
@@ -57,25 +70,144 @@ public class EducationalMaterialController {
     @GetMapping("/mine")
     @PreAuthorize("hasRole('CLIENT')")
     public ListResponse myMaterials(Authentication auth) {
-        List<EducationalMaterial> items = service.listForSelfClient(auth.getName());
-        return new ListResponse(items.stream().map(m ->
-                new MaterialItem(m.getId(), m.getOriginalFilename(), m.getContentType(), m.getSizeBytes(), m.getUploadedAt().toString())
-        ).toList());
+        List<MaterialSummary> items = service.listForSelfClient(auth.getName());
+        return new ListResponse(items.stream().map(EducationalMaterialController::toItem).toList());
+    }
+
+    private static MaterialItem toItem(MaterialSummary m) {
+        return new MaterialItem(m.getId(), m.getOriginalFilename(), m.getContentType(), m.getSizeBytes(), m.getUploadedAt().toString());
     }
 
     // download as psychologist
     @GetMapping("/{id}/download")
     @PreAuthorize("hasAnyRole('CLIENT','PSYCHOLOGIST')")
-    public ResponseEntity<byte[]> download(Authentication auth, @PathVariable Integer id) {
+    public ResponseEntity<StreamingResponseBody> download(Authentication auth,
+                                                          @PathVariable Integer id,
+                                                          @RequestHeader HttpHeaders headers,
+                                                          WebRequest request) {
         boolean isClient = auth.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ROLE_CLIENT"));
 
         EducationalMaterialService.DownloadedMaterial d = isClient
                 ? service.downloadAsClient(auth.getName(), id)
                 : service.downloadAsPsychologist(auth.getName(), id);
 
-        return ResponseEntity.ok()
+        // If-None-Match / If-Modified-Since: answer 304 before anything is decrypted
+        if (request.checkNotModified(d.etag(), d.lastModified().toEpochMilli())) {
+            return null;
+        }
+
+        long length = d.sizeBytes();
+        String rangeHeader = headers.getFirst(HttpHeaders.RANGE);
+        List<long[]> ranges = rangeHeader == null || !ifRangeMatches(headers, d)
+                ? null
+                : satisfiableRanges(rangeHeader, length);
+        if (ranges == null) {
+            return withMaterialHeaders(ResponseEntity.ok(), d)
+                    .contentType(MediaType.parseMediaType(d.contentType()))
+                    .contentLength(length)
+                    .body(d.content()::writeTo);
+        }
+        if (ranges.isEmpty()) {
+            return withMaterialHeaders(ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE), d)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                    .build();
+        }
+
+        ResponseEntity.BodyBuilder partial = withMaterialHeaders(ResponseEntity.status(HttpStatus.PARTIAL_CONTENT), d);
+        if (ranges.size() == 1) {
+            long start = ranges.get(0)[0];
+            long end = ranges.get(0)[1];
+            return partial
+                    .contentType(MediaType.parseMediaType(d.contentType()))
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length)
+                    .contentLength(end - start + 1)
+                    .body(out -> d.content().writeRange(start, end, out));
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        return partial
+                .contentType(MediaType.parseMediaType("multipart/byteranges; boundary=" + boundary))
+                .body(out -> {
+                    for (long[] range : ranges) {
+                        out.write(("\r\n--" + boundary + "\r\n"
+                                + HttpHeaders.CONTENT_TYPE + ": " + d.contentType() + "\r\n"
+                                + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n")
+                                .getBytes(StandardCharsets.US_ASCII));
+                        d.content().writeRange(range[0], range[1], out);
+                    }
+                    out.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII));
+                });
+    }
+
+    /**
+     * The byte ranges of {@code header} that overlap a body of {@code length} bytes, as inclusive
+     * {@code [start, end]} pairs, sorted with overlapping and adjacent ones merged; empty when none does
+     * (416). {@code null} means the whole body is served instead: the header is malformed (RFC 9110
+     * §14.2 says to ignore it), the ranges cover the whole body, or there are more than
+     * {@link #MAX_RANGES} of them, so a request can't make us decrypt the file once per range.
+     */
+    static List<long[]> satisfiableRanges(String header, long length) {
+        List<HttpRange> parsed;
+        try {
+            parsed = HttpRange.parseRanges(header);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<>();
+        if (length == 0) {
+            return ranges;
+        }
+        for (HttpRange range : parsed) {
+            long start = range.getRangeStart(length);
+            long end = range.getRangeEnd(length);
+            if (start < length && start <= end) {
+                ranges.add(new long[]{start, end});
+            }
+        }
+        ranges.sort(Comparator.comparingLong(r -> r[0]));
+
+        List<long[]> merged = new ArrayList<>();
+        long covered = 0;
+        for (long[] range : ranges) {
+            long[] last = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                covered += Math.max(0, range[1] - last[1]);
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                merged.add(range);
+                covered += range[1] - range[0] + 1;
+            }
+        }
+        if (covered >= length || merged.size() > MAX_RANGES) {
+            return null;
+        }
+        return merged;
+    }
+
+    private static ResponseEntity.BodyBuilder withMaterialHeaders(ResponseEntity.BodyBuilder builder,
+                                                                  EducationalMaterialService.DownloadedMaterial d) {
+        return builder
                 .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + d.filename() + "\"")
-                .contentType(MediaType.parseMediaType(d.contentType()))
-                .body(d.bytes());
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(d.etag())
+                .lastModified(d.lastModified())
+                .cacheControl(CacheControl.noCache().cachePrivate());
+    }
+
+    // a Range is only honoured if If-Range is absent or still names the current representation
+    private static boolean ifRangeMatches(HttpHeaders headers, EducationalMaterialService.DownloadedMaterial d) {
+        String ifRange = headers.getFirst(HttpHeaders.IF_RANGE);
+        if (ifRange == null) {
+            return true;
+        }
+        if (ifRange.startsWith("\"")) {
+            return ifRange.equals(d.etag());
+        }
+        try {
+            long since = headers.getFirstDate(HttpHeaders.IF_RANGE);
+            return since / 1000 == d.lastModified().toEpochMilli() / 1000;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,65 @@
+package stucanii.backend.api;
+
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.multipart.MultipartFile;
+import stucanii.backend.domain.MaterialLibraryItem;
+import stucanii.backend.service.MaterialLibraryService;
+
+import java.io.InputStream;
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/materials/library")
+public class MaterialLibraryController {
+
+    private final MaterialLibraryService service;
+
+    public MaterialLibraryController(MaterialLibraryService service) {
+        this.service = service;
+    }
+
+    public record LibraryItem(Integer id, String filename, String contentType, long sizeBytes, String uploadedAt, int assignedCount) {}
+    public record LibraryResponse(List<LibraryItem> items) {}
+    public record AssignRequest(List<Integer> clientIds) {}
+    public record AssignResponse(List<Integer> materialIds) {}
+
+    @PostMapping(consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public LibraryItem upload(Authentication auth, @RequestPart("file") MultipartFile file) throws Exception {
+        String filename = file.getOriginalFilename() == null ? "material" : file.getOriginalFilename();
+        String ct = file.getContentType() == null ? "application/octet-stream" : file.getContentType();
+
+        try (InputStream in = file.getInputStream()) {
+            return toItem(service.upload(auth.getName(), filename, ct, in));
+        }
+    }
+
+    @GetMapping
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public LibraryResponse list(Authentication auth) {
+        return new LibraryResponse(service.list(auth.getName()).stream()
+                .map(MaterialLibraryController::toItem)
+                .toList());
+    }
+
+    // bulk distribution: one stored file, one material row per client
+    @PostMapping("/{id}/assign")
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public AssignResponse assign(Authentication auth, @PathVariable Integer id, @RequestBody AssignRequest req) {
+        return new AssignResponse(service.assignToClients(auth.getName(), id, req.clientIds()));
+    }
+
+    @DeleteMapping("/{id}")
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public void delete(Authentication auth, @PathVariable Integer id) {
+        service.delete(auth.getName(), id);
+    }
+
+    private static LibraryItem toItem(MaterialLibraryItem i) {
+        return new LibraryItem(i.getId(), i.getOriginalFilename(), i.getContentType(), i.getSizeBytes(),
+                i.getCreatedAt().toString(), i.getRefCount());
+    }
+}
@@ -0,0 +1,89 @@
+package stucanii.backend.api;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.security.core.Authentication;
+import org.springframework.web.bind.annotation.*;
+import stucanii.backend.domain.MaterialUploadSession;
+import stucanii.backend.service.MaterialUploadService;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+@RestController
+@RequestMapping("/api/materials")
+public class MaterialUploadController {
+
+    private final MaterialUploadService service;
+
+    public MaterialUploadController(MaterialUploadService service) {
+        this.service = service;
+    }
+
+    public record StartUploadRequest(String filename, String contentType, long totalBytes) {}
+
+    public record UploadSessionResponse(
+            String sessionId,
+            String status,
+            long totalBytes,
+            int chunkSize,
+            long receivedBytes,
+            long nextChunkIndex,
+            Integer materialId
+    ) {}
+
+    public record CompleteUploadResponse(Integer id) {}
+
+    @PostMapping("/clients/{clientId}/uploads")
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    @ResponseStatus(HttpStatus.CREATED)
+    public UploadSessionResponse start(Authentication auth,
+                                       @PathVariable Integer clientId,
+                                       @RequestBody StartUploadRequest req) throws IOException {
+        String filename = req.filename() == null || req.filename().isBlank() ? "material" : req.filename();
+        String ct = req.contentType() == null || req.contentType().isBlank() ? "application/octet-stream" : req.contentType();
+
+        return toResponse(service.start(auth.getName(), clientId, filename, ct, req.totalBytes()));
+    }
+
+    @PutMapping(value = "/uploads/{sessionId}/chunks/{index}", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public UploadSessionResponse putChunk(Authentication auth,
+                                          @PathVariable String sessionId,
+                                          @PathVariable long index,
+                                          InputStream body) throws IOException {
+        return toResponse(service.putChunk(auth.getName(), sessionId, index, body));
+    }
+
+    // where to resume after a dropped connection
+    @GetMapping("/uploads/{sessionId}")
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public UploadSessionResponse status(Authentication auth, @PathVariable String sessionId) {
+        return toResponse(service.status(auth.getName(), sessionId));
+    }
+
+    @PostMapping("/uploads/{sessionId}/complete")
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public CompleteUploadResponse complete(Authentication auth, @PathVariable String sessionId) throws IOException {
+        return new CompleteUploadResponse(service.complete(auth.getName(), sessionId));
+    }
+
+    @DeleteMapping("/uploads/{sessionId}")
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public void abort(Authentication auth, @PathVariable String sessionId) {
+        service.abort(auth.getName(), sessionId);
+    }
+
+    private static UploadSessionResponse toResponse(MaterialUploadSession s) {
+        return new UploadSessionResponse(
+                s.getId(),
+                s.getStatus().name(),
+                s.getTotalBytes(),
+                s.getChunkSize(),
+                s.getReceivedBytes(),
+                s.getNextChunkIndex(),
+                s.getMaterialId()
+        );
+    }
+}
@@ -3,7 +3,6 @@ package stucanii.backend.api;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
-import stucanii.backend.domain.PanicAlert;
 import stucanii.backend.service.PanicAlertService;
 
 import java.time.Instant;
@@ -20,7 +19,8 @@ public class PanicAlertController {
     }
 
     public record TriggerRequest(boolean longPress) {}
-    public record TriggerResponse(Integer id, String videoRoomId) {}
+    // coalesced: a repeat tap that joined the alert already raised (always a committed one)
+    public record TriggerResponse(Integer id, String videoRoomId, boolean coalesced) {}
 
     public record PanicAlertItem(
             Integer id,
@@ -32,7 +32,8 @@ public class PanicAlertController {
             String videoRoomId
     ) {}
 
-    public record InboxResponse(List<PanicAlertItem> items) {}
+    // nextCursor goes back as ?since= to get only what was created or changed after this response
+    public record InboxResponse(List<PanicAlertItem> items, String nextCursor, boolean hasMore) {}
 
     public record AckRequest(boolean withVideo) {}
 
@@ -40,19 +41,21 @@ public class PanicAlertController {
     @PreAuthorize("hasRole('CLIENT')")
     public TriggerResponse trigger(Authentication auth, @RequestBody(required = false) TriggerRequest req) {
         boolean longPress = req != null && req.longPress();
-        PanicAlert alert = service.trigger(auth.getName(), longPress);
-        return new TriggerResponse(alert.getId(), alert.getVideoRoomId());
+        PanicAlertService.TriggerResult result = service.trigger(auth.getName(), longPress);
+        return new TriggerResponse(result.alertId(), result.videoRoomId(), result.coalesced());
     }
 
     @GetMapping("/inbox")
     @PreAuthorize("hasRole('PSYCHOLOGIST')")
-    public InboxResponse inbox(Authentication auth) {
-        List<PanicAlert> alerts = service.psychologistInbox(auth.getName());
+    public InboxResponse inbox(Authentication auth,
+                               @RequestParam(required = false) String since,
+                               @RequestParam(defaultValue = "50") int limit) {
+        PanicAlertService.InboxPage page = service.psychologistInbox(auth.getName(), since, limit);
 
-        List<PanicAlertItem> items = alerts.stream()
+        List<PanicAlertItem> items = page.items().stream()
                 .map(a -> new PanicAlertItem(
                         a.getId(),
-                        a.getClient().getUsername(),
+                        a.getClientUsername(),
                         a.getStatus().name(),
                         a.isTriggeredByLongPress(),
                         a.getCreatedAt(),
@@ -61,7 +64,7 @@ public class PanicAlertController {
                 ))
                 .toList();
 
-        return new InboxResponse(items);
+        return new InboxResponse(items, page.nextCursor(), page.hasMore());
     }
 
     @PostMapping("/{id}/ack")
@@ -70,4 +73,10 @@ public class PanicAlertController {
         boolean withVideo = req != null && req.withVideo();
         service.acknowledge(auth.getName(), id, withVideo);
     }
-}
\ No newline at end of file
+
+    @PostMapping("/{id}/resolve")
+    @PreAuthorize("hasRole('PSYCHOLOGIST')")
+    public void resolve(Authentication auth, @PathVariable Integer id) {
+        service.resolve(auth.getName(), id);
+    }
+}
@@ -0,0 +1,27 @@
+package stucanii.backend.api;
+
+import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.stereotype.Controller;
+import stucanii.backend.service.PanicOutboxRelay;
+
+import java.security.Principal;
+
+@Controller
+public class PanicReceiptController {
+
+    private final PanicOutboxRelay relay;
+
+    public PanicReceiptController(PanicOutboxRelay relay) {
+        this.relay = relay;
+    }
+
+    public record Receipt(String receiptId) {}
+
+    // STOMP SEND /app/panic/receipt {"receiptId": "..."}
+    @MessageMapping("/panic/receipt")
+    public void receipt(Receipt receipt, Principal user) {
+        if (receipt != null && receipt.receiptId() != null) {
+            relay.confirm(receipt.receiptId(), user);
+        }
+    }
+}
@@ -9,6 +9,7 @@ import stucanii.backend.security.CryptoService;
 import stucanii.backend.service.PsychologistClientsService;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -37,13 +38,16 @@ public class PsychologistClientEmotionsController {
     public EmotionListResponse get(Authentication auth, @PathVariable Integer clientId) {
         access.requireMyClient(auth.getName(), clientId);
 
-        List<EmotionItem> items = emotionRepo.findTop50ByUserIdOrderByCreatedAtDesc(clientId).stream()
-                .map(e -> new EmotionItem(
-                        e.getId(),
-                        e.getCreatedAt(),
-                        crypto.decrypt(e.getIv(), e.getCiphertext())
-                ))
-                .toList();
+        List<EmotionLog> logs = emotionRepo.findTop50ByUserIdOrderByCreatedAtDesc(clientId);
+        List<String> texts = crypto.decryptAll(logs.stream()
+                .map(e -> new CryptoService.EncryptedPayload(e.getIv(), e.getCiphertext()))
+                .toList());
+
+        List<EmotionItem> items = new ArrayList<>(logs.size());
+        for (int i = 0; i < logs.size(); i++) {
+            EmotionLog e = logs.get(i);
+            items.add(new EmotionItem(e.getId(), e.getCreatedAt(), texts.get(i)));
+        }
 
         return new EmotionListResponse(items);
     }
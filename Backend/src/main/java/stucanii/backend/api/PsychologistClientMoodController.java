@@ -9,6 +9,7 @@ import stucanii.backend.security.CryptoService;
 import stucanii.backend.service.PsychologistClientsService;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
@@ -46,13 +47,15 @@ public class PsychologistClientMoodController {
         List<MoodEntry> entries = moodRepo.findTop30ByUserIdOrderByCreatedAtDesc(clientId);
         // dacă vrei limit real: schimbăm repo-ul cu findTopX custom query; momentan e top30
 
-        List<MoodPoint> items = entries.stream()
-                .limit(safeLimit)
-                .map(e -> new MoodPoint(
-                        e.getCreatedAt(),
-                        Integer.parseInt(crypto.decrypt(e.getIv(), e.getCiphertext()))
-                ))
-                .toList();
+        List<MoodEntry> limited = entries.subList(0, Math.min(safeLimit, entries.size()));
+        List<String> scores = crypto.decryptAll(limited.stream()
+                .map(e -> new CryptoService.EncryptedPayload(e.getIv(), e.getCiphertext()))
+                .toList());
+
+        List<MoodPoint> items = new ArrayList<>(limited.size());
+        for (int i = 0; i < limited.size(); i++) {
+            items.add(new MoodPoint(limited.get(i).getCreatedAt(), Integer.parseInt(scores.get(i))));
+        }
 
         return new MoodSeriesResponse(items);
     }
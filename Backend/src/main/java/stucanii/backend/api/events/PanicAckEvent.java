@@ -5,5 +5,7 @@ public record PanicAckEvent(
         boolean withVideo,
         String psychologistUsername,
         String videoRoomId,
-        String jitsiToken
+        String jitsiToken,
+        // send back to /app/panic/receipt to confirm delivery
+        String receiptId
 ) {}
\ No newline at end of file
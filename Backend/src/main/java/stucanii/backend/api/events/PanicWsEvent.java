@@ -8,5 +8,7 @@ public record PanicWsEvent(
         boolean triggeredByLongPress,
         Instant createdAt,
         String videoRoomId,
-        String jitsiToken
+        String jitsiToken,
+        // send back to /app/panic/receipt to confirm delivery
+        String receiptId
 ) {}
@@ -0,0 +1,35 @@
+package stucanii.backend.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+@EnableAsync
+public class AsyncConfig {
+
+    public static final String PANIC_EXECUTOR = "panicExecutor";
+
+    /**
+     * Dedicated pool for panic notifications, so they never queue behind other async work.
+     * When it is saturated the committing thread sends the notification itself instead of dropping it.
+     */
+    @Bean(name = PANIC_EXECUTOR)
+    public ThreadPoolTaskExecutor panicExecutor(@Value("${app.panic.delivery.pool-size:4}") int poolSize,
+                                                @Value("${app.panic.delivery.queue-capacity:500}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("panic-");
+        executor.setThreadPriority(Thread.MAX_PRIORITY);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+}
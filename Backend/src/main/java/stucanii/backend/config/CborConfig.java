@@ -0,0 +1,39 @@
+package stucanii.backend.config;
+
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.converter.cbor.JacksonCborHttpMessageConverter;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import stucanii.backend.messaging.CborStompEncoder;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+/**
+ * Compact binary payloads for mobile clients: REST responses in CBOR for {@code Accept: application/cbor}
+ * (same Jackson settings as JSON), and the STOMP encoder behind per-session CBOR on {@code /ws-native}.
+ */
+@Configuration
+public class CborConfig {
+
+    @Bean
+    public JacksonCborHttpMessageConverter cborHttpMessageConverter(CBORMapper cborMapper) {
+        return new JacksonCborHttpMessageConverter(cborMapper);
+    }
+
+    @Bean
+    public SmartInitializingSingleton cborStompEncoderInstaller(
+            @Qualifier("subProtocolWebSocketHandler") WebSocketHandler handler) {
+        return () -> {
+            WebSocketHandler h = handler instanceof WebSocketHandlerDecorator d ? d.getLastHandler() : handler;
+            if (h instanceof SubProtocolWebSocketHandler sub) {
+                sub.getProtocolHandlers().stream()
+                        .filter(StompSubProtocolHandler.class::isInstance)
+                        .forEach(p -> ((StompSubProtocolHandler) p).setEncoder(new CborStompEncoder()));
+            }
+        };
+    }
+}
@@ -18,6 +18,7 @@ public class CorsConfig {
                         .allowedOriginPatterns("http://localhost:*")
                         .allowedMethods("GET", "POST", "PUT", "PATCH","DELETE", "OPTIONS")
                         .allowedHeaders("*")
+                        .exposedHeaders("Content-Disposition", "ETag", "Last-Modified", "Accept-Ranges", "Content-Range")
                         .allowCredentials(true);
             }
         };
@@ -0,0 +1,49 @@
+package stucanii.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Data fixes for {@code panic_alerts} that ddl-auto=update cannot express. Runs after Hibernate has
+ * updated the schema; every statement is idempotent.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class PanicSchemaMigration {
+
+    private final JdbcTemplate jdbc;
+
+    public PanicSchemaMigration(JdbcTemplate jdbc) {
+        this.jdbc = jdbc;
+    }
+
+    @PostConstruct
+    void migrate() {
+        // rows from before the inbox cursor existed
+        jdbc.update("update panic_alerts set updated_at = coalesce(escalated_at, acknowledged_at, created_at) " +
+                "where updated_at is null");
+
+        // resolved alerts past app.panic.lifecycle.archive-after are moved here by PanicLifecycleJob;
+        // no foreign keys, so archived rows never block deleting a user
+        jdbc.execute("""
+                create table if not exists panic_alerts_archive (
+                    id integer primary key,
+                    client_id integer not null,
+                    psychologist_id integer not null,
+                    status varchar(30) not null,
+                    triggered_by_long_press boolean not null,
+                    video_room_id varchar(255) not null,
+                    created_at timestamp(6) with time zone not null,
+                    updated_at timestamp(6) with time zone,
+                    acknowledged_at timestamp(6) with time zone,
+                    escalated_at timestamp(6) with time zone,
+                    escalated_to varchar(255),
+                    resolved_at timestamp(6) with time zone,
+                    archived_at timestamp(6) with time zone not null default now()
+                )""");
+        jdbc.execute("create index if not exists idx_panic_archive_psych_created " +
+                "on panic_alerts_archive (psychologist_id, created_at)");
+    }
+}
@@ -0,0 +1,47 @@
+package stucanii.backend.config;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.DependsOn;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Moves {@code refresh_tokens} from plaintext tokens to {@code token_hash}: hashes the rows issued before,
+ * then drops the {@code token} column and its unique index. Runs after Hibernate has added
+ * {@code token_hash}; every statement is idempotent.
+ */
+@Component
+@DependsOn("entityManagerFactory")
+public class RefreshTokenSchemaMigration {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenSchemaMigration.class);
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+
+    public RefreshTokenSchemaMigration(JdbcTemplate jdbc, TransactionTemplate tx) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+    }
+
+    @PostConstruct
+    void migrate() {
+        Integer plaintext = jdbc.queryForObject("""
+                select count(*) from information_schema.columns
+                where table_schema = current_schema() and table_name = 'refresh_tokens' and column_name = 'token'
+                """, Integer.class);
+        if (plaintext != null && plaintext > 0) {
+            // one transaction, so no concurrent login sees a row with neither column
+            tx.executeWithoutResult(status -> {
+                int hashed = jdbc.update("update refresh_tokens " +
+                        "set token_hash = encode(sha256(convert_to(token, 'UTF8')), 'hex') where token_hash is null");
+                jdbc.execute("alter table refresh_tokens drop column token");
+                log.info("Hashed {} refresh tokens and dropped the plaintext column", hashed);
+            });
+        }
+        jdbc.execute("alter table refresh_tokens alter column token_hash set not null");
+    }
+}
@@ -1,26 +1,220 @@
 package stucanii.backend.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.messaging.converter.MessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.util.unit.DataSize;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+import stucanii.backend.messaging.CborMessageConverter;
+import stucanii.backend.messaging.CborTranscodingInterceptor;
+import stucanii.backend.messaging.DestinationMetricsInterceptor;
+import stucanii.backend.messaging.PresenceRegistry;
+import stucanii.backend.messaging.StompAuthInterceptor;
+import stucanii.backend.messaging.SubscriptionBatcher;
+import stucanii.backend.security.CachingJwtAuthenticationManager;
+import stucanii.backend.service.PanicOutboxRelay;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private final ApplicationEventPublisher events;
+    private final PresenceRegistry presence;
+    private final SubscriptionBatcher batcher;
+    private final StompAuthInterceptor auth;
+    private final TaskScheduler heartbeatScheduler;
+    private final MeterRegistry meters;
+    private final CborTranscodingInterceptor cbor;
+    private final CBORMapper cborMapper;
+    private final int inboundPoolSize;
+    private final int inboundQueueCapacity;
+    private final int outboundPoolSize;
+    private final int outboundQueueCapacity;
+    private final Duration sendTimeLimit;
+    private final DataSize sendBufferSizeLimit;
+    private final DataSize messageSizeLimit;
+    private final Duration timeToFirstMessage;
+
+    public WebSocketConfig(ApplicationEventPublisher events,
+                           PresenceRegistry presence,
+                           SubscriptionBatcher batcher,
+                           CachingJwtAuthenticationManager jwtManager,
+                           @Value("${app.panic.escalation.admin-topic:/topic/panic-admin}") String adminTopic,
+                           @Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler heartbeatScheduler,
+                           MeterRegistry meters,
+                           CborTranscodingInterceptor cbor,
+                           CBORMapper cborMapper,
+                           @Value("${app.ws.broker.inbound.pool-size:8}") int inboundPoolSize,
+                           @Value("${app.ws.broker.inbound.queue-capacity:2000}") int inboundQueueCapacity,
+                           @Value("${app.ws.broker.outbound.pool-size:8}") int outboundPoolSize,
+                           @Value("${app.ws.broker.outbound.queue-capacity:5000}") int outboundQueueCapacity,
+                           @Value("${app.ws.broker.send-time-limit:PT5S}") Duration sendTimeLimit,
+                           @Value("${app.ws.broker.send-buffer-size-limit:256KB}") DataSize sendBufferSizeLimit,
+                           @Value("${app.ws.broker.message-size-limit:64KB}") DataSize messageSizeLimit,
+                           @Value("${app.ws.broker.time-to-first-message:PT30S}") Duration timeToFirstMessage) {
+        this.events = events;
+        this.presence = presence;
+        this.batcher = batcher;
+        this.auth = new StompAuthInterceptor(jwtManager, adminTopic);
+        this.heartbeatScheduler = heartbeatScheduler;
+        this.meters = meters;
+        this.cbor = cbor;
+        this.cborMapper = cborMapper;
+        this.inboundPoolSize = inboundPoolSize;
+        this.inboundQueueCapacity = inboundQueueCapacity;
+        this.outboundPoolSize = outboundPoolSize;
+        this.outboundQueueCapacity = outboundQueueCapacity;
+        this.sendTimeLimit = sendTimeLimit;
+        this.sendBufferSizeLimit = sendBufferSizeLimit;
+        this.messageSizeLimit = messageSizeLimit;
+        this.timeToFirstMessage = timeToFirstMessage;
+    }
+
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
         registry
                 .addEndpoint("/ws")
                 .setAllowedOriginPatterns("*")
                 .withSockJS();
+
+        // plain WebSocket for clients that can use it (mobile); the only endpoint that can carry CBOR frames
+        registry
+                .addEndpoint("/ws-native")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(new HandshakeInterceptor() {
+                    @Override
+                    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                                   WebSocketHandler wsHandler, Map<String, Object> attributes) {
+                        attributes.put(CborTranscodingInterceptor.NATIVE_TRANSPORT, Boolean.TRUE);
+                        return true;
+                    }
+
+                    @Override
+                    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response,
+                                               WebSocketHandler wsHandler, Exception exception) {
+                    }
+                });
+    }
+
+    @Override
+    public boolean configureMessageConverters(List<MessageConverter> messageConverters) {
+        // only for content-type:application/cbor; the defaults (JSON included) follow
+        messageConverters.add(new CborMessageConverter(cborMapper));
+        return true;
     }
 
     @Override
     public void configureMessageBroker(MessageBrokerRegistry registry) {
-        registry.enableSimpleBroker("/topic");
+        // heartbeats both ways keep PresenceRegistry current for idle dashboards
+        registry.enableSimpleBroker("/topic")
+                .setHeartbeatValue(new long[]{10_000, 10_000})
+                .setTaskScheduler(heartbeatScheduler);
         registry.setApplicationDestinationPrefixes("/app");
+        // the outbound channel is a pool: without this, frames for one session can overtake each other
+        // (an ack before its alert, a replayed event after a live one)
+        registry.setPreservePublishOrder(true);
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        // a session whose sends stall past the time limit or whose backlog outgrows the buffer is closed
+        // (slow consumer); the client reconnects and the outbox replays what it had not confirmed
+        registration
+                .setSendTimeLimit((int) sendTimeLimit.toMillis())
+                .setSendBufferSizeLimit((int) sendBufferSizeLimit.toBytes())
+                .setMessageSizeLimit((int) messageSizeLimit.toBytes())
+                .setTimeToFirstMessage((int) timeToFirstMessage.toMillis());
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor("ws-outbound-", outboundPoolSize, outboundQueueCapacity));
+        // batching before CBOR, so a batch frame is re-encoded as a whole, and before the metrics, so a
+        // batch counts as the one frame it is sent as
+        registration.interceptors(batcher,
+                new DestinationMetricsInterceptor(meters),
+                cbor);
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        registration.taskExecutor(channelExecutor("ws-inbound-", inboundPoolSize, inboundQueueCapacity));
+        // authentication first: the interceptors after it and the broker only see permitted frames
+        registration.interceptors(auth, new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> preSend(Message<?> message, MessageChannel channel) {
+                // every inbound frame, heartbeats included, proves the session is alive
+                String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                if (sessionId != null) {
+                    presence.touch(sessionId);
+                }
+                if (StompHeaderAccessor.wrap(message).getCommand() == StompCommand.CONNECT) {
+                    cbor.negotiate(message);
+                }
+                return message;
+            }
+
+            // after the broker has registered the subscription, so replayed events reach it
+            @Override
+            public void afterMessageHandled(Message<?> message, MessageChannel channel, MessageHandler handler, Exception ex) {
+                if (ex != null || !(handler instanceof AbstractBrokerMessageHandler)) {
+                    return;
+                }
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.SUBSCRIBE) {
+                    return;
+                }
+                String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                // /topic/panic/{user}, /topic/panic-updates/{user} and the escalation admin topic;
+                // StompAuthInterceptor already refused subscriptions to someone else's
+                if (destination != null && destination.startsWith("/topic/panic")) {
+                    events.publishEvent(new PanicOutboxRelay.Subscribed(destination));
+                }
+            }
+        });
+    }
+
+    /**
+     * Bounded pool; when the queue is full the submitting thread handles the message itself, which
+     * slows that connection's reads (inbound) or the publisher (outbound) instead of queueing without limit.
+     */
+    private static ThreadPoolTaskExecutor channelExecutor(String prefix, int poolSize, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix(prefix);
+        executor.setCorePoolSize(poolSize);
+        executor.setMaxPoolSize(poolSize);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setAllowCoreThreadTimeOut(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        return executor;
     }
-}
\ No newline at end of file
+}
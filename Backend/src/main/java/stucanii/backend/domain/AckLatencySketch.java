@@ -0,0 +1,51 @@
+package stucanii.backend.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/** Persisted time-to-acknowledge sketch for one scope ("all", or "psychologist:{id}"). */
+@Entity
+@Table(name = "ack_latency_sketches")
+public class AckLatencySketch {
+
+    @Id
+    @Column(length = 40)
+    private String scope;
+
+    // QuantileSketch.toBytes()
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+
+    @Column(nullable = false)
+    private long sampleCount;
+
+    @Column(nullable = false)
+    private Instant updatedAt;
+
+    // "all" row only: acknowledgements before this were counted by the one-off backfill, not by any node
+    private Instant backfilledUntil;
+
+    protected AckLatencySketch() {}
+
+    public AckLatencySketch(String scope, byte[] data, long sampleCount) {
+        this.scope = scope;
+        update(data, sampleCount);
+    }
+
+    public String getScope() { return scope; }
+    public byte[] getData() { return data; }
+    public long getSampleCount() { return sampleCount; }
+    public Instant getUpdatedAt() { return updatedAt; }
+    public Instant getBackfilledUntil() { return backfilledUntil; }
+
+    public void update(byte[] data, long sampleCount) {
+        this.data = data;
+        this.sampleCount = sampleCount;
+        this.updatedAt = Instant.now();
+    }
+
+    public void markBackfilled(Instant until) {
+        this.backfilledUntil = until;
+    }
+}
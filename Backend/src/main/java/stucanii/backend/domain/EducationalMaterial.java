@@ -4,7 +4,10 @@ import jakarta.persistence.*;
 import java.time.Instant;
 
 @Entity
-@Table(name = "educational_materials")
+@Table(name = "educational_materials",
+        indexes = {
+                @Index(name = "idx_materials_client_uploaded", columnList = "client_id, uploaded_at")
+        })
 public class EducationalMaterial {
 
     @Id
@@ -28,22 +31,38 @@ public class EducationalMaterial {
     @Column(nullable = false)
     private long sizeBytes;
 
-    // IMPORTANT: bytea, not Large Object
-    @Column(nullable = false, columnDefinition = "bytea")
+    // Legacy inline storage (bytea, not Large Object). Null once the blob lives in the MaterialBlobStore.
+    @Column(columnDefinition = "bytea")
     private byte[] encryptedData;
 
+    // content address in the MaterialBlobStore
+    @Column(name = "storage_key", length = 64)
+    private String storageKey;
+
+    // shared library file this material was assigned from; null for materials uploaded before the library
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "library_item_id")
+    private MaterialLibraryItem libraryItem;
+
+    // FileCryptoService.FORMAT_*; null for rows written before the segmented format
+    @Column(name = "format_version")
+    private Integer formatVersion;
+
     @Column(nullable = false)
     private Instant uploadedAt = Instant.now();
 
     protected EducationalMaterial() {}
 
-    public EducationalMaterial(User client, User psychologist, String originalFilename, String contentType, long sizeBytes, byte[] encryptedData) {
+    public EducationalMaterial(User client, User psychologist, MaterialLibraryItem libraryItem, String originalFilename,
+                               String contentType, int formatVersion) {
         this.client = client;
         this.psychologist = psychologist;
+        this.libraryItem = libraryItem;
         this.originalFilename = originalFilename;
         this.contentType = contentType;
-        this.sizeBytes = sizeBytes;
-        this.encryptedData = encryptedData;
+        this.sizeBytes = libraryItem.getSizeBytes();
+        this.storageKey = libraryItem.getStorageKey();
+        this.formatVersion = formatVersion;
     }
 
     public Integer getId() { return id; }
@@ -53,5 +72,14 @@ public class EducationalMaterial {
     public String getContentType() { return contentType; }
     public long getSizeBytes() { return sizeBytes; }
     public byte[] getEncryptedData() { return encryptedData; }
+    public int getFormatVersion() { return formatVersion == null ? 0 : formatVersion; }
+    public String getStorageKey() { return storageKey; }
+    public MaterialLibraryItem getLibraryItem() { return libraryItem; }
     public Instant getUploadedAt() { return uploadedAt; }
+
+    public void moveToBlobStore(String storageKey, int formatVersion) {
+        this.storageKey = storageKey;
+        this.formatVersion = formatVersion;
+        this.encryptedData = null;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,79 @@
+package stucanii.backend.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+/**
+ * A file in a psychologist's material library. The encrypted blob is stored once and shared by
+ * every {@link EducationalMaterial} assigned from it; {@code refCount} counts those assignments.
+ */
+@Entity
+@Table(name = "material_library_items",
+        uniqueConstraints = @UniqueConstraint(
+                name = "uq_material_library_psych_hash",
+                columnNames = {"psychologist_id", "content_hash"}
+        ))
+public class MaterialLibraryItem {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "psychologist_id", nullable = false)
+    private User psychologist;
+
+    @Column(nullable = false, length = 260)
+    private String originalFilename;
+
+    @Column(nullable = false, length = 120)
+    private String contentType;
+
+    @Column(nullable = false)
+    private long sizeBytes;
+
+    // keyed hash of the plaintext (FileCryptoService.contentHash), used for deduplication
+    @Column(name = "content_hash", nullable = false, length = 64)
+    private String contentHash;
+
+    @Column(name = "storage_key", nullable = false, length = 64)
+    private String storageKey;
+
+    @Column(nullable = false)
+    private int refCount;
+
+    // uploaded to the library itself rather than with a client's material; kept when nobody has it assigned
+    @Column(nullable = false, columnDefinition = "boolean default false")
+    private boolean curated;
+
+    @Column(nullable = false)
+    private Instant createdAt = Instant.now();
+
+    protected MaterialLibraryItem() {}
+
+    public MaterialLibraryItem(User psychologist, String originalFilename, String contentType, long sizeBytes,
+                               String contentHash, String storageKey) {
+        this.psychologist = psychologist;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.sizeBytes = sizeBytes;
+        this.contentHash = contentHash;
+        this.storageKey = storageKey;
+    }
+
+    public Integer getId() { return id; }
+    public User getPsychologist() { return psychologist; }
+    public String getOriginalFilename() { return originalFilename; }
+    public String getContentType() { return contentType; }
+    public long getSizeBytes() { return sizeBytes; }
+    public String getContentHash() { return contentHash; }
+    public String getStorageKey() { return storageKey; }
+    public int getRefCount() { return refCount; }
+    public boolean isCurated() { return curated; }
+    public Instant getCreatedAt() { return createdAt; }
+
+    public void addReferences(int n) { this.refCount += n; }
+    public void removeReference() { this.refCount--; }
+    public void markCurated() { this.curated = true; }
+}
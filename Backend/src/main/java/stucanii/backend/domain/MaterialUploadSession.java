@@ -0,0 +1,147 @@
+package stucanii.backend.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Instant;
+
+@Entity
+@Table(name = "material_upload_sessions",
+        indexes = {
+                @Index(name = "idx_upload_sessions_status_updated", columnList = "status, updated_at")
+        })
+public class MaterialUploadSession {
+
+    // also names the staging blob
+    @Id
+    @Column(length = 36)
+    private String id;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "psychologist_id", nullable = false)
+    private User psychologist;
+
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
+    @JoinColumn(name = "client_id", nullable = false)
+    private User client;
+
+    @Column(nullable = false, length = 260)
+    private String originalFilename;
+
+    @Column(nullable = false, length = 120)
+    private String contentType;
+
+    @Column(nullable = false)
+    private long totalBytes;
+
+    @Column(nullable = false)
+    private int chunkSize;
+
+    // segmented-format header (carries the nonce prefix) so chunks can be encrypted as they arrive
+    @Column(nullable = false, columnDefinition = "bytea")
+    private byte[] cryptoHeader;
+
+    // plaintext bytes received and acknowledged so far; always a whole number of chunks until the last one
+    @Column(nullable = false)
+    private long receivedBytes;
+
+    // the chunk being sealed into the staging blob: its index and plaintext digest outlive a failed attempt, so
+    // the index is never sealed again under the same nonces with other content
+    @Column(name = "pending_chunk")
+    private Long pendingChunk;
+
+    @Column(name = "pending_digest", columnDefinition = "bytea")
+    private byte[] pendingDigest;
+
+    // the attempt writing it, until it acknowledges, fails or its lease runs out
+    @Column(name = "pending_writer", length = 36)
+    private String pendingWriter;
+
+    @Column(name = "pending_since")
+    private Instant pendingSince;
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private UploadSessionStatus status = UploadSessionStatus.OPEN;
+
+    @Column(name = "material_id")
+    private Integer materialId;
+
+    @Column(nullable = false)
+    private Instant createdAt = Instant.now();
+
+    @Column(name = "updated_at", nullable = false)
+    private Instant updatedAt = Instant.now();
+
+    protected MaterialUploadSession() {}
+
+    public MaterialUploadSession(String id, User psychologist, User client, String originalFilename, String contentType,
+                                 long totalBytes, int chunkSize, byte[] cryptoHeader) {
+        this.id = id;
+        this.psychologist = psychologist;
+        this.client = client;
+        this.originalFilename = originalFilename;
+        this.contentType = contentType;
+        this.totalBytes = totalBytes;
+        this.chunkSize = chunkSize;
+        this.cryptoHeader = cryptoHeader;
+    }
+
+    public String getId() { return id; }
+    public User getPsychologist() { return psychologist; }
+    public User getClient() { return client; }
+    public String getOriginalFilename() { return originalFilename; }
+    public String getContentType() { return contentType; }
+    public long getTotalBytes() { return totalBytes; }
+    public int getChunkSize() { return chunkSize; }
+    public byte[] getCryptoHeader() { return cryptoHeader; }
+    public long getReceivedBytes() { return receivedBytes; }
+    public UploadSessionStatus getStatus() { return status; }
+    public Integer getMaterialId() { return materialId; }
+    public Instant getCreatedAt() { return createdAt; }
+    public Instant getUpdatedAt() { return updatedAt; }
+
+    public Long getPendingChunk() { return pendingChunk; }
+    public byte[] getPendingDigest() { return pendingDigest; }
+    public String getPendingWriter() { return pendingWriter; }
+    public Instant getPendingSince() { return pendingSince; }
+
+    public long getNextChunkIndex() {
+        return receivedBytes / chunkSize + (receivedBytes == totalBytes && totalBytes % chunkSize != 0 ? 1 : 0);
+    }
+
+    public void claim(long chunk, byte[] digest, String writer, Instant now) {
+        this.pendingChunk = chunk;
+        this.pendingDigest = digest;
+        this.pendingWriter = writer;
+        this.pendingSince = now;
+        this.updatedAt = now;
+    }
+
+    // the write failed before any ciphertext was acknowledged; the digest stays bound to the chunk
+    public void release(String writer) {
+        if (writer.equals(pendingWriter)) {
+            this.pendingWriter = null;
+            this.pendingSince = null;
+        }
+    }
+
+    public void acknowledge(long bytes) {
+        this.receivedBytes += bytes;
+        this.pendingChunk = null;
+        this.pendingDigest = null;
+        this.pendingWriter = null;
+        this.pendingSince = null;
+        this.updatedAt = Instant.now();
+    }
+
+    public void complete(Integer materialId) {
+        this.status = UploadSessionStatus.COMPLETED;
+        this.materialId = materialId;
+        this.updatedAt = Instant.now();
+    }
+
+    public void abort() {
+        this.status = UploadSessionStatus.ABORTED;
+        this.updatedAt = Instant.now();
+    }
+}
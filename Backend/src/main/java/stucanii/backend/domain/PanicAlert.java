@@ -5,18 +5,26 @@ import java.time.Instant;
 import java.util.UUID;
 
 @Entity
-@Table(name = "panic_alerts")
+@Table(name = "panic_alerts",
+        indexes = {
+                @Index(name = "idx_panic_alerts_psych_created", columnList = "psychologist_id, created_at"),
+                // inbox sync cursor
+                @Index(name = "idx_panic_alerts_psych_updated", columnList = "psychologist_id, updated_at, id"),
+                // lifecycle job: auto-resolve and archive scans
+                @Index(name = "idx_panic_alerts_status_acked", columnList = "status, acknowledged_at"),
+                @Index(name = "idx_panic_alerts_status_resolved", columnList = "status, resolved_at")
+        })
 public class PanicAlert {
 
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "client_id", nullable = false)
     private User client;
 
-    @ManyToOne(optional = false)
+    @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "psychologist_id", nullable = false)
     private User psychologist;
 
@@ -24,12 +32,27 @@ public class PanicAlert {
     @Column(nullable = false, length = 30)
     private PanicStatus status = PanicStatus.OPEN;
 
-    @Column(nullable = false)
+    @Column(name = "created_at", nullable = false)
     private Instant createdAt = Instant.now();
 
+    // bumped on every state change; the inbox sync cursor is (updated_at, id)
+    @Column(name = "updated_at")
+    private Instant updatedAt = createdAt;
+
     @Column(nullable = true)
     private Instant acknowledgedAt;
 
+    // set when nobody acknowledged in time and the alert was re-routed
+    @Column(nullable = true)
+    private Instant escalatedAt;
+
+    // backup psychologist's username, or null when it went to the admin topic
+    @Column(nullable = true)
+    private String escalatedTo;
+
+    @Column(name = "resolved_at", nullable = true)
+    private Instant resolvedAt;
+
     // optional metadata
     @Column(nullable = false)
     private boolean triggeredByLongPress;
@@ -51,16 +74,29 @@ public class PanicAlert {
     public User getPsychologist() { return psychologist; }
     public PanicStatus getStatus() { return status; }
     public Instant getCreatedAt() { return createdAt; }
+    public Instant getUpdatedAt() { return updatedAt; }
     public Instant getAcknowledgedAt() { return acknowledgedAt; }
     public boolean isTriggeredByLongPress() { return triggeredByLongPress; }
     public String getVideoRoomId() { return videoRoomId; }
+    public Instant getResolvedAt() { return resolvedAt; }
+    public Instant getEscalatedAt() { return escalatedAt; }
+    public String getEscalatedTo() { return escalatedTo; }
 
     public void acknowledge() {
         this.status = PanicStatus.ACKNOWLEDGED;
         this.acknowledgedAt = Instant.now();
+        this.updatedAt = acknowledgedAt;
+    }
+
+    public void escalate(String escalatedTo) {
+        this.escalatedAt = Instant.now();
+        this.escalatedTo = escalatedTo;
+        this.updatedAt = escalatedAt;
     }
 
     public void resolve() {
         this.status = PanicStatus.RESOLVED;
+        this.resolvedAt = Instant.now();
+        this.updatedAt = resolvedAt;
     }
 }
\ No newline at end of file
@@ -0,0 +1,7 @@
+package stucanii.backend.domain;
+
+public enum PanicEventType {
+    TRIGGERED,
+    ACKNOWLEDGED,
+    ESCALATED
+}
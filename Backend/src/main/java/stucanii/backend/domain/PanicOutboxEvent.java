@@ -0,0 +1,140 @@
+package stucanii.backend.domain;
+
+import jakarta.persistence.*;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * A panic notification waiting to be confirmed by the recipient's socket.
+ * Written in the same transaction as the alert change it announces; copies what it needs
+ * from the alert so it can be sent without loading it.
+ */
+@Entity
+@Table(name = "panic_outbox",
+        indexes = {
+                @Index(name = "idx_panic_outbox_pending", columnList = "delivered_at, next_attempt_at"),
+                @Index(name = "idx_panic_outbox_destination", columnList = "destination, delivered_at")
+        })
+public class PanicOutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    // echoed back by the recipient to confirm delivery; random so receipts cannot be forged by id
+    @Column(name = "receipt_id", nullable = false, unique = true, length = 36)
+    private String receiptId = UUID.randomUUID().toString();
+
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private PanicEventType type;
+
+    @Column(name = "alert_id", nullable = false)
+    private Integer alertId;
+
+    @Column(nullable = false)
+    private String destination;
+
+    // who the Jitsi token is signed for; null for broadcast destinations (admin topic)
+    @Column(name = "recipient_username")
+    private String recipientUsername;
+
+    @Column(nullable = false)
+    private String clientUsername;
+
+    @Column(nullable = false)
+    private String psychologistUsername;
+
+    @Column(nullable = false)
+    private String videoRoomId;
+
+    @Column(nullable = false)
+    private boolean triggeredByLongPress;
+
+    @Column(nullable = false)
+    private boolean withVideo;
+
+    // alert createdAt / acknowledgedAt
+    @Column(nullable = false)
+    private Instant occurredAt;
+
+    @Column(nullable = false)
+    private Instant createdAt = Instant.now();
+
+    @Column(nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt = Instant.now();
+
+    private Instant lastSentAt;
+
+    @Column(name = "delivered_at")
+    private Instant deliveredAt;
+
+    protected PanicOutboxEvent() {}
+
+    private PanicOutboxEvent(PanicEventType type, PanicAlert alert, String destination, String recipientUsername,
+                             Instant occurredAt) {
+        this.type = type;
+        this.alertId = alert.getId();
+        this.destination = destination;
+        this.recipientUsername = recipientUsername;
+        this.clientUsername = alert.getClient().getUsername();
+        this.psychologistUsername = alert.getPsychologist().getUsername();
+        this.videoRoomId = alert.getVideoRoomId();
+        this.triggeredByLongPress = alert.isTriggeredByLongPress();
+        this.occurredAt = occurredAt;
+    }
+
+    public static PanicOutboxEvent triggered(PanicAlert alert) {
+        String psych = alert.getPsychologist().getUsername();
+        return new PanicOutboxEvent(PanicEventType.TRIGGERED, alert, "/topic/panic/" + psych, psych,
+                alert.getCreatedAt());
+    }
+
+    public static PanicOutboxEvent acknowledged(PanicAlert alert, String acknowledgedBy, boolean withVideo) {
+        String client = alert.getClient().getUsername();
+        PanicOutboxEvent e = new PanicOutboxEvent(PanicEventType.ACKNOWLEDGED, alert, "/topic/panic-updates/" + client,
+                client, alert.getAcknowledgedAt());
+        e.psychologistUsername = acknowledgedBy;
+        e.withVideo = withVideo;
+        return e;
+    }
+
+    /** Same payload as the original alert, re-routed to a backup psychologist or a broadcast topic. */
+    public static PanicOutboxEvent escalated(PanicAlert alert, String destination, String recipientUsername) {
+        return new PanicOutboxEvent(PanicEventType.ESCALATED, alert, destination, recipientUsername,
+                alert.getEscalatedAt());
+    }
+
+    public Long getId() { return id; }
+    public String getReceiptId() { return receiptId; }
+    public PanicEventType getType() { return type; }
+    public Integer getAlertId() { return alertId; }
+    public String getDestination() { return destination; }
+    public String getRecipientUsername() { return recipientUsername; }
+    public String getClientUsername() { return clientUsername; }
+    public String getPsychologistUsername() { return psychologistUsername; }
+    public String getVideoRoomId() { return videoRoomId; }
+    public boolean isTriggeredByLongPress() { return triggeredByLongPress; }
+    public boolean isWithVideo() { return withVideo; }
+    public Instant getOccurredAt() { return occurredAt; }
+    public Instant getCreatedAt() { return createdAt; }
+    public int getAttempts() { return attempts; }
+    public Instant getNextAttemptAt() { return nextAttemptAt; }
+    public Instant getLastSentAt() { return lastSentAt; }
+    public Instant getDeliveredAt() { return deliveredAt; }
+
+    public void sent(Instant now, Duration retryAfter) {
+        this.attempts++;
+        this.lastSentAt = now;
+        this.nextAttemptAt = now.plus(retryAfter);
+    }
+
+    public void delivered(Instant now) {
+        this.deliveredAt = now;
+    }
+}
@@ -8,7 +8,7 @@ import java.time.Instant;
 @Table(
         name = "refresh_tokens",
         indexes = {
-                @Index(name = "idx_refresh_token_token", columnList = "token", unique = true),
+                @Index(name = "idx_refresh_token_hash", columnList = "token_hash", unique = true),
                 @Index(name = "idx_refresh_token_user", columnList = "user_id")
         }
 )
@@ -18,8 +18,9 @@ public class RefreshToken {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(nullable = false, length = 120, unique = true)
-    private String token;
+    // hex SHA-256 of the token; the token itself is never stored. NOT NULL is set by RefreshTokenSchemaMigration
+    @Column(name = "token_hash", length = 64, columnDefinition = "char(64)")
+    private String tokenHash;
 
     @ManyToOne(optional = false, fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id", nullable = false,
@@ -32,20 +33,28 @@ public class RefreshToken {
     @Column(nullable = false)
     private boolean revoked = false;
 
+    private Instant revokedAt;
+
     protected RefreshToken() {}
 
-    public RefreshToken(String token, User user, Instant expiresAt) {
-        this.token = token;
+    public RefreshToken(String tokenHash, User user, Instant expiresAt) {
+        this.tokenHash = tokenHash;
         this.user = user;
         this.expiresAt = expiresAt;
         this.revoked = false;
     }
 
     public Long getId() { return id; }
-    public String getToken() { return token; }
+    public String getTokenHash() { return tokenHash; }
     public User getUser() { return user; }
     public Instant getExpiresAt() { return expiresAt; }
     public boolean isRevoked() { return revoked; }
+    public Instant getRevokedAt() { return revokedAt; }
 
-    public void revoke() { this.revoked = true; }
+    public void revoke() {
+        if (!revoked) {
+            this.revoked = true;
+            this.revokedAt = Instant.now();
+        }
+    }
 }
@@ -0,0 +1,7 @@
+package stucanii.backend.domain;
+
+public enum UploadSessionStatus {
+    OPEN,
+    COMPLETED,
+    ABORTED
+}
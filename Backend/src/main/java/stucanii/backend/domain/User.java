@@ -23,8 +23,17 @@ public class User {
     @JoinColumn(name = "psychologist_id", foreignKey = @ForeignKey(name = "fk_user_psychologist"))
     private User psychologist;
 
+    // bumped on every role or psychologist change; access tokens carry it as "rv"
+    @Column(name = "role_version", nullable = false, columnDefinition = "integer default 0")
+    private int roleVersion;
+
     public User getPsychologist() { return psychologist; }
-    public void setPsychologist(User psychologist) { this.psychologist = psychologist; }
+    public void setPsychologist(User psychologist) {
+        if (this.psychologist != psychologist) {
+            roleVersion++;
+        }
+        this.psychologist = psychologist;
+    }
 
     protected User() {
     }
@@ -53,6 +62,9 @@ public class User {
     public Role getRole() {
         return role;
     }
+    public int getRoleVersion() {
+        return roleVersion;
+    }
 
     public void setUsername(String username) {
         this.username = username;
@@ -61,6 +73,9 @@ public class User {
         this.password = password;
     }
     public void setRole(Role role) {
+        if (this.role != role) {
+            roleVersion++;
+        }
         this.role = role;
     }
 }
@@ -0,0 +1,59 @@
+package stucanii.backend.messaging;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.config.WebSocketMessageBrokerStats;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import java.util.function.ToIntFunction;
+
+/**
+ * Micrometer view of the STOMP broker: work queued on the client channels, open sessions, and sessions
+ * closed for exceeding the send-time/buffer limits (slow consumers), for never sending CONNECT, or on
+ * transport errors. Per-destination throughput is counted by {@link DestinationMetricsInterceptor}.
+ */
+@Component
+public class BrokerMetrics {
+
+    public BrokerMetrics(MeterRegistry meters,
+                         WebSocketMessageBrokerStats stats,
+                         @Qualifier("clientInboundChannelExecutor") ThreadPoolTaskExecutor inbound,
+                         @Qualifier("clientOutboundChannelExecutor") ThreadPoolTaskExecutor outbound) {
+        channel(meters, "inbound", inbound);
+        channel(meters, "outbound", outbound);
+
+        Gauge.builder("ws.sessions", stats, s -> session(s, SubProtocolWebSocketHandler.Stats::getTotalSessions))
+                .description("Open WebSocket/SockJS sessions")
+                .register(meters);
+        dropped(meters, stats, "slow-consumer", SubProtocolWebSocketHandler.Stats::getLimitExceededSessions);
+        dropped(meters, stats, "no-connect", SubProtocolWebSocketHandler.Stats::getNoMessagesReceivedSessions);
+        dropped(meters, stats, "transport-error", SubProtocolWebSocketHandler.Stats::getTransportErrorSessions);
+    }
+
+    private static void channel(MeterRegistry meters, String name, ThreadPoolTaskExecutor executor) {
+        Gauge.builder("ws.channel.queued", executor, e -> e.getQueueSize())
+                .description("Messages waiting for a client channel thread")
+                .tag("channel", name)
+                .register(meters);
+        Gauge.builder("ws.channel.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                .tag("channel", name)
+                .register(meters);
+    }
+
+    private static void dropped(MeterRegistry meters, WebSocketMessageBrokerStats stats, String reason,
+                                ToIntFunction<SubProtocolWebSocketHandler.Stats> count) {
+        FunctionCounter.builder("ws.sessions.dropped", stats, s -> session(s, count))
+                .description("Sessions the server closed")
+                .tag("reason", reason)
+                .register(meters);
+    }
+
+    private static double session(WebSocketMessageBrokerStats stats, ToIntFunction<SubProtocolWebSocketHandler.Stats> f) {
+        SubProtocolWebSocketHandler.Stats s = stats.getWebSocketSessionStats();
+        return s == null ? 0 : f.applyAsInt(s);
+    }
+}
@@ -0,0 +1,52 @@
+package stucanii.backend.messaging;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.AbstractMessageConverter;
+import org.springframework.messaging.converter.MessageConversionException;
+import org.springframework.util.MimeType;
+import tools.jackson.core.JacksonException;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+/**
+ * CBOR payloads for {@code @MessageMapping} methods and {@code convertAndSend}. Only used when the
+ * message says {@code content-type:application/cbor}; everything else still goes through the JSON converter.
+ */
+public class CborMessageConverter extends AbstractMessageConverter {
+
+    public static final MimeType APPLICATION_CBOR = new MimeType("application", "cbor");
+
+    private final CBORMapper mapper;
+
+    public CborMessageConverter(CBORMapper mapper) {
+        super(APPLICATION_CBOR);
+        this.mapper = mapper;
+        setStrictContentTypeMatch(true);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return true;
+    }
+
+    @Override
+    protected Object convertFromInternal(Message<?> message, Class<?> targetClass, Object conversionHint) {
+        if (!(message.getPayload() instanceof byte[] bytes)) {
+            return null;
+        }
+        try {
+            return mapper.readValue(bytes, targetClass);
+        } catch (JacksonException e) {
+            throw new MessageConversionException(message, "Could not read CBOR: " + e.getOriginalMessage(), e);
+        }
+    }
+
+    @Override
+    protected Object convertToInternal(Object payload, MessageHeaders headers, Object conversionHint) {
+        try {
+            return mapper.writeValueAsBytes(payload);
+        } catch (JacksonException e) {
+            throw new MessageConversionException("Could not write CBOR: " + e.getOriginalMessage(), e);
+        }
+    }
+}
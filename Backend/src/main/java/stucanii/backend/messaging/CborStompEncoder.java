@@ -0,0 +1,37 @@
+package stucanii.backend.messaging;
+
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes {@code content-type:application/cbor} on frames {@link CborTranscodingInterceptor} re-encoded;
+ * they travel as {@code application/octet-stream} inside Spring only so they go out as binary frames.
+ */
+public class CborStompEncoder extends StompEncoder {
+
+    static final String CBOR_FRAME = "cborFrame";
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public byte[] encode(Map<String, Object> headers, byte[] payload) {
+        if (!Boolean.TRUE.equals(headers.get(CBOR_FRAME))) {
+            return super.encode(headers, payload);
+        }
+        Map<String, List<String>> nativeHeaders =
+                (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        MultiValueMap<String, String> rewritten = new LinkedMultiValueMap<>();
+        if (nativeHeaders != null) {
+            rewritten.putAll(nativeHeaders);
+        }
+        rewritten.put("content-type", List.of(CborMessageConverter.APPLICATION_CBOR.toString()));
+        Map<String, Object> copy = new HashMap<>(headers);
+        copy.put(NativeMessageHeaderAccessor.NATIVE_HEADERS, rewritten);
+        return super.encode(copy, payload);
+    }
+}
@@ -0,0 +1,101 @@
+package stucanii.backend.messaging;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MimeType;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-session CBOR for STOMP over the native WebSocket endpoint. A client opts in with
+ * {@code accept:application/cbor} on CONNECT; the broker still publishes JSON once per destination, and
+ * this interceptor re-encodes each MESSAGE frame to CBOR on its way to a session that asked for it.
+ * SockJS only carries text, so sessions on {@code /ws} always get JSON.
+ * <p>
+ * Spring only writes binary WebSocket frames for {@code application/octet-stream}; the frame is marked
+ * that way here and {@link CborStompEncoder} puts {@code application/cbor} back in the STOMP header.
+ * <p>
+ * The broker's MESSAGE frames carry the session id but not the session attributes, so the sessions that
+ * negotiated CBOR are kept here by id, from their CONNECT until they disconnect.
+ */
+@Component
+public class CborTranscodingInterceptor implements ChannelInterceptor {
+
+    /** Handshake attribute set by the native endpoint. */
+    public static final String NATIVE_TRANSPORT = "ws.native";
+
+    private final JsonMapper json;
+    private final CBORMapper cbor;
+    private final Set<String> cborSessions = ConcurrentHashMap.newKeySet();
+
+    public CborTranscodingInterceptor(JsonMapper json, CBORMapper cbor) {
+        this.json = json;
+        this.cbor = cbor;
+    }
+
+    /** Inbound CONNECT: remembers whether this session wants CBOR. */
+    public void negotiate(Message<?> message) {
+        StompHeaderAccessor h = StompHeaderAccessor.wrap(message);
+        Map<String, Object> attributes = h.getSessionAttributes();
+        if (h.getSessionId() == null || attributes == null || !Boolean.TRUE.equals(attributes.get(NATIVE_TRANSPORT))) {
+            return;
+        }
+        List<String> accept = h.getNativeHeader("accept");
+        if (accept != null && accept.stream()
+                .flatMap(v -> MimeTypeUtils.parseMimeTypes(v).stream())
+                .anyMatch(CborMessageConverter.APPLICATION_CBOR::equalsTypeAndSubtype)) {
+            cborSessions.add(h.getSessionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        cborSessions.remove(e.getSessionId());
+    }
+
+    int cborSessions() {
+        return cborSessions.size();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] payload) || payload.length == 0) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null || !cborSessions.contains(sessionId)) {
+            return message;
+        }
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.wrap(message);
+        MimeType contentType = h.getContentType();
+        if (contentType == null || !MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(contentType)) {
+            return message;
+        }
+        byte[] encoded;
+        try {
+            encoded = cbor.writeValueAsBytes(json.readTree(payload));
+        } catch (JacksonException e) {
+            // not worth losing the frame over
+            return message;
+        }
+        h.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        h.setHeader(CborStompEncoder.CBOR_FRAME, Boolean.TRUE);
+        return MessageBuilder.createMessage(encoded, h.getMessageHeaders());
+    }
+}
@@ -0,0 +1,47 @@
+package stucanii.backend.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Counts MESSAGE frames handed to sessions on the client outbound channel, as {@code ws.messages.sent}
+ * tagged with the destination's first two segments ({@code /topic/panic/ana} counts as {@code /topic/panic}),
+ * so per-user topics don't explode the tag space.
+ */
+public class DestinationMetricsInterceptor implements ChannelInterceptor {
+
+    private final MeterRegistry meters;
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public DestinationMetricsInterceptor(MeterRegistry meters) {
+        this.meters = meters;
+    }
+
+    @Override
+    public void afterSendCompletion(Message<?> message, MessageChannel channel, boolean sent, Exception ex) {
+        if (!sent || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination != null) {
+            counters.computeIfAbsent(group(destination), d -> Counter.builder("ws.messages.sent")
+                    .description("Frames delivered to subscribers")
+                    .tag("destination", d)
+                    .register(meters)).increment();
+        }
+    }
+
+    static String group(String destination) {
+        int second = destination.indexOf('/', 1);
+        int third = second < 0 ? -1 : destination.indexOf('/', second + 1);
+        return third < 0 ? destination : destination.substring(0, third);
+    }
+}
@@ -0,0 +1,75 @@
+package stucanii.backend.messaging;
+
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Which destinations have a subscriber on this node, fed by the STOMP session events. */
+@Component
+public class LocalSubscriptions {
+
+    // sessionId -> subscriptionId -> destination
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> destinations = new ConcurrentHashMap<>();
+
+    public boolean hasSubscribers(String destination) {
+        AtomicInteger n = destinations.get(destination);
+        return n != null && n.get() > 0;
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent e) {
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.wrap(e.getMessage());
+        if (h.getSessionId() != null && h.getSubscriptionId() != null && h.getDestination() != null) {
+            subscribed(h.getSessionId(), h.getSubscriptionId(), h.getDestination());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent e) {
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.wrap(e.getMessage());
+        if (h.getSessionId() != null && h.getSubscriptionId() != null) {
+            unsubscribed(h.getSessionId(), h.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        disconnected(e.getSessionId());
+    }
+
+    void subscribed(String sessionId, String subscriptionId, String destination) {
+        String previous = sessions.computeIfAbsent(sessionId, k -> new ConcurrentHashMap<>())
+                .put(subscriptionId, destination);
+        if (previous != null) {
+            release(previous);
+        }
+        destinations.computeIfAbsent(destination, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    void unsubscribed(String sessionId, String subscriptionId) {
+        Map<String, String> subs = sessions.get(sessionId);
+        String destination = subs == null ? null : subs.remove(subscriptionId);
+        if (destination != null) {
+            release(destination);
+        }
+    }
+
+    void disconnected(String sessionId) {
+        Map<String, String> subs = sessions.remove(sessionId);
+        if (subs != null) {
+            subs.values().forEach(this::release);
+        }
+    }
+
+    private void release(String destination) {
+        destinations.computeIfPresent(destination, (k, n) -> n.decrementAndGet() <= 0 ? null : n);
+    }
+}
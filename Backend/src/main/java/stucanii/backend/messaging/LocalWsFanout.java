@@ -0,0 +1,21 @@
+package stucanii.backend.messaging;
+
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Component;
+
+@Component
+@ConditionalOnProperty(name = "app.ws.fanout.mode", havingValue = "local", matchIfMissing = true)
+public class LocalWsFanout implements WsFanout {
+
+    private final SimpMessagingTemplate messaging;
+
+    public LocalWsFanout(SimpMessagingTemplate messaging) {
+        this.messaging = messaging;
+    }
+
+    @Override
+    public void send(String destination, Object payload) {
+        messaging.convertAndSend(destination, payload);
+    }
+}
@@ -0,0 +1,187 @@
+package stucanii.backend.messaging;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+
+/**
+ * Cluster fan-out over Postgres {@code LISTEN/NOTIFY}: every send is delivered to local subscribers right
+ * away and announced on a notify channel; each other node picks it up and delivers it only if it holds a
+ * session subscribed to that destination. Called inside a transaction, the notification goes out on
+ * commit, together with the rows that caused it.
+ * <p>
+ * Notifications missed while a node's listener reconnects are not replayed here; panic events are
+ * covered by the outbox, which resends until the recipient confirms.
+ */
+@Component
+@ConditionalOnProperty(name = "app.ws.fanout.mode", havingValue = "postgres")
+public class PostgresWsFanout implements WsFanout {
+
+    private static final Logger log = LoggerFactory.getLogger(PostgresWsFanout.class);
+
+    // NOTIFY payloads must stay under 8000 bytes
+    private static final int MAX_PAYLOAD_BYTES = 7900;
+
+    private final DataSource dataSource;
+    private final JdbcTemplate jdbc;
+    private final SimpMessagingTemplate messaging;
+    private final LocalSubscriptions subscriptions;
+    private final String channel;
+    private final String nodeId;
+
+    private volatile boolean running;
+    private volatile boolean listening;
+    private Thread listener;
+
+    @Autowired
+    public PostgresWsFanout(DataSource dataSource,
+                            JdbcTemplate jdbc,
+                            SimpMessagingTemplate messaging,
+                            LocalSubscriptions subscriptions,
+                            @Value("${app.ws.fanout.channel:ws_fanout}") String channel) {
+        this(dataSource, jdbc, messaging, subscriptions, channel, UUID.randomUUID().toString());
+    }
+
+    PostgresWsFanout(DataSource dataSource, JdbcTemplate jdbc, SimpMessagingTemplate messaging,
+                     LocalSubscriptions subscriptions, String channel, String nodeId) {
+        if (!channel.matches("[a-z_][a-z0-9_]*")) {
+            throw new IllegalArgumentException("app.ws.fanout.channel must be a plain lower-case identifier");
+        }
+        this.dataSource = dataSource;
+        this.jdbc = jdbc;
+        this.messaging = messaging;
+        this.subscriptions = subscriptions;
+        this.channel = channel;
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public void send(String destination, Object payload) {
+        String json = toJson(payload);
+        if (subscriptions.hasSubscribers(destination)) {
+            deliverLocally(destination, json);
+        }
+
+        // <node>\n<destination>\n<json>
+        String notification = nodeId + "\n" + destination + "\n" + json;
+        if (notification.getBytes(StandardCharsets.UTF_8).length > MAX_PAYLOAD_BYTES) {
+            log.error("WebSocket payload for {} is too large for NOTIFY; delivered on this node only", destination);
+            return;
+        }
+        jdbc.query("select pg_notify(?, ?)", rs -> {}, channel, notification);
+    }
+
+    @PostConstruct
+    public void start() {
+        running = true;
+        listener = new Thread(this::listen, "ws-fanout-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        if (listener != null) {
+            listener.interrupt();
+            listener.join(2_000);
+        }
+        listening = false;
+    }
+
+    private void listen() {
+        while (running) {
+            // holds one pooled connection for as long as the node runs
+            try (Connection c = dataSource.getConnection()) {
+                try (Statement st = c.createStatement()) {
+                    st.execute("LISTEN " + channel);
+                }
+                PGConnection pg = c.unwrap(PGConnection.class);
+                listening = true;
+                log.info("Listening for WebSocket fan-out on '{}' as node {}", channel, nodeId);
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(500);
+                    if (notifications != null) {
+                        for (PGNotification n : notifications) {
+                            onNotification(n.getParameter());
+                        }
+                    }
+                }
+            } catch (SQLException | RuntimeException e) {
+                listening = false;
+                if (!running) {
+                    return;
+                }
+                log.warn("WebSocket fan-out listener lost its connection, reconnecting", e);
+                try {
+                    Thread.sleep(1_000);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    /** Whether LISTEN is in place, i.e. notifications sent from now on reach this node. */
+    boolean isListening() {
+        return listening;
+    }
+
+    void onNotification(String notification) {
+        int first = notification.indexOf('\n');
+        int second = notification.indexOf('\n', first + 1);
+        if (first < 0 || second < 0) {
+            return;
+        }
+        if (notification.substring(0, first).equals(nodeId)) {
+            // already delivered locally by send()
+            return;
+        }
+        String destination = notification.substring(first + 1, second);
+        if (subscriptions.hasSubscribers(destination)) {
+            deliverLocally(destination, notification.substring(second + 1));
+        }
+    }
+
+    private String toJson(Object payload) {
+        MessageHeaderAccessor headers = new MessageHeaderAccessor();
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        Message<?> m = messaging.getMessageConverter().toMessage(payload, headers.getMessageHeaders());
+        if (m == null) {
+            throw new IllegalArgumentException("Cannot convert " + payload.getClass() + " to JSON");
+        }
+        Object body = m.getPayload();
+        return body instanceof byte[] bytes ? new String(bytes, StandardCharsets.UTF_8) : body.toString();
+    }
+
+    private void deliverLocally(String destination, String json) {
+        SimpMessageHeaderAccessor headers = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        headers.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        headers.setLeaveMutable(true);
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        messaging.send(destination, MessageBuilder.createMessage(body, headers.getMessageHeaders()));
+    }
+}
@@ -0,0 +1,206 @@
+package stucanii.backend.messaging;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionConnectEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+import stucanii.backend.domain.Role;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Who has a live STOMP session on this node. A user counts as online while some session authenticated
+ * as them (see {@link StompAuthInterceptor}) is subscribed to their personal panic topic
+ * ({@code /topic/panic/{psychologist}} or {@code /topic/panic-updates/{client}}) and has sent anything,
+ * heartbeats included, within {@code app.ws.presence.stale-after}. Sessions that go quiet without a
+ * DISCONNECT are dropped by the sweep.
+ * <p>
+ * Node-local: with {@code app.ws.fanout.mode=postgres} another node may hold a user's session.
+ */
+@Component
+public class PresenceRegistry {
+
+    private record Presence(Role role, String username) {}
+
+    private static final class Session {
+        volatile long lastSeen;
+        // subscriptionId -> who it makes present
+        final Map<String, Presence> subscriptions = new ConcurrentHashMap<>();
+
+        Session(long now) {
+            this.lastSeen = now;
+        }
+    }
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    // who -> their live session ids
+    private final Map<Presence, Set<String>> online = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final long staleAfterMillis;
+
+    @Autowired
+    public PresenceRegistry(MeterRegistry meters,
+                            @Value("${app.ws.presence.stale-after:PT30S}") Duration staleAfter) {
+        this(staleAfter, System::currentTimeMillis);
+        for (Role role : List.of(Role.PSYCHOLOGIST, Role.CLIENT)) {
+            Gauge.builder("ws.presence.online", this, r -> r.onlineCount(role))
+                    .description("Users with a live panic-topic session on this node")
+                    .tag("role", role.name())
+                    .register(meters);
+        }
+    }
+
+    PresenceRegistry(Duration staleAfter, LongSupplier clock) {
+        this.staleAfterMillis = staleAfter.toMillis();
+        this.clock = clock;
+    }
+
+    public boolean isOnline(Role role, String username) {
+        Set<String> ids = online.get(new Presence(role, username));
+        return ids != null && !ids.isEmpty();
+    }
+
+    public List<String> onlineUsernames(Role role) {
+        return online.entrySet().stream()
+                .filter(e -> e.getKey().role() == role && !e.getValue().isEmpty())
+                .map(e -> e.getKey().username())
+                .sorted()
+                .toList();
+    }
+
+    public long onlineCount(Role role) {
+        return online.entrySet().stream()
+                .filter(e -> e.getKey().role() == role && !e.getValue().isEmpty())
+                .count();
+    }
+
+    public Map<Role, Long> onlineCounts() {
+        Map<Role, Long> counts = new EnumMap<>(Role.class);
+        counts.put(Role.PSYCHOLOGIST, onlineCount(Role.PSYCHOLOGIST));
+        counts.put(Role.CLIENT, onlineCount(Role.CLIENT));
+        return counts;
+    }
+
+    /** Any inbound frame, heartbeats included. */
+    public void touch(String sessionId) {
+        Session s = sessions.get(sessionId);
+        if (s != null) {
+            s.lastSeen = clock.getAsLong();
+        }
+    }
+
+    @EventListener
+    public void onConnect(SessionConnectEvent e) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(e.getMessage().getHeaders());
+        if (sessionId != null) {
+            connected(sessionId);
+        }
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent e) {
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.wrap(e.getMessage());
+        if (h.getSessionId() != null && h.getSubscriptionId() != null && h.getDestination() != null) {
+            subscribed(h.getSessionId(), h.getSubscriptionId(), h.getDestination(), e.getUser());
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent e) {
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.wrap(e.getMessage());
+        if (h.getSessionId() != null && h.getSubscriptionId() != null) {
+            unsubscribed(h.getSessionId(), h.getSubscriptionId());
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        disconnected(e.getSessionId());
+    }
+
+    @Scheduled(fixedDelayString = "${app.ws.presence.sweep-interval:PT10S}")
+    public void sweep() {
+        long cutoff = clock.getAsLong() - staleAfterMillis;
+        sessions.forEach((id, s) -> {
+            if (s.lastSeen < cutoff) {
+                disconnected(id);
+            }
+        });
+    }
+
+    void connected(String sessionId) {
+        sessions.putIfAbsent(sessionId, new Session(clock.getAsLong()));
+    }
+
+    void subscribed(String sessionId, String subscriptionId, String destination, Principal user) {
+        Presence p = presenceFor(destination, user);
+        if (p == null) {
+            return;
+        }
+        Session s = sessions.computeIfAbsent(sessionId, k -> new Session(clock.getAsLong()));
+        s.lastSeen = clock.getAsLong();
+        Presence previous = s.subscriptions.put(subscriptionId, p);
+        if (previous != null) {
+            leave(previous, sessionId, s);
+        }
+        online.computeIfAbsent(p, k -> ConcurrentHashMap.newKeySet()).add(sessionId);
+    }
+
+    void unsubscribed(String sessionId, String subscriptionId) {
+        Session s = sessions.get(sessionId);
+        Presence p = s == null ? null : s.subscriptions.remove(subscriptionId);
+        if (p != null) {
+            leave(p, sessionId, s);
+        }
+    }
+
+    void disconnected(String sessionId) {
+        Session s = sessions.remove(sessionId);
+        if (s != null) {
+            s.subscriptions.values().forEach(p -> release(p, sessionId));
+        }
+    }
+
+    // only drops the session if no other subscription of it still points at the same user
+    private void leave(Presence p, String sessionId, Session s) {
+        if (!s.subscriptions.containsValue(p)) {
+            release(p, sessionId);
+        }
+    }
+
+    private void release(Presence p, String sessionId) {
+        online.computeIfPresent(p, (k, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    // the session's own user only: the destination alone proves nothing about who is listening
+    private static Presence presenceFor(String destination, Principal user) {
+        if (user == null) {
+            return null;
+        }
+        if (destination.equals(StompAuthInterceptor.PSYCHOLOGIST_TOPIC + user.getName())) {
+            return new Presence(Role.PSYCHOLOGIST, user.getName());
+        }
+        if (destination.equals(StompAuthInterceptor.CLIENT_TOPIC + user.getName())) {
+            return new Presence(Role.CLIENT, user.getName());
+        }
+        return null;
+    }
+}
@@ -0,0 +1,86 @@
+package stucanii.backend.messaging;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+
+import java.security.Principal;
+
+/**
+ * Authenticates STOMP sessions with the REST API's access token and keeps each one to its own panic topics.
+ * CONNECT must carry {@code Authorization: Bearer <token>}; the result becomes the session's user. A session
+ * may subscribe to {@code /topic/panic/{u}} and {@code /topic/panic-updates/{u}} only as {@code u}, and to
+ * the escalation admin topic only as an admin. A rejected frame ends in an ERROR frame.
+ */
+public class StompAuthInterceptor implements ChannelInterceptor {
+
+    public static final String PSYCHOLOGIST_TOPIC = "/topic/panic/";
+    public static final String CLIENT_TOPIC = "/topic/panic-updates/";
+
+    private static final String BEARER = "Bearer ";
+
+    private final AuthenticationManager authentication;
+    private final String adminTopic;
+
+    public StompAuthInterceptor(AuthenticationManager authentication, String adminTopic) {
+        this.authentication = authentication;
+        this.adminTopic = adminTopic;
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || accessor.getCommand() == null) {
+            return message;
+        }
+        switch (accessor.getCommand()) {
+            case CONNECT -> {
+                String header = accessor.getFirstNativeHeader("Authorization");
+                if (header == null || !header.startsWith(BEARER)) {
+                    throw new MessageDeliveryException(message, "CONNECT needs an Authorization: Bearer header");
+                }
+                // an invalid or expired token throws here and the session is closed
+                accessor.setUser(authentication.authenticate(
+                        new BearerTokenAuthenticationToken(header.substring(BEARER.length()).trim())));
+            }
+            case SUBSCRIBE -> {
+                if (!mayReceive(accessor.getUser(), accessor.getDestination(), adminTopic)) {
+                    throw new MessageDeliveryException(message, "Not allowed to subscribe to " + accessor.getDestination());
+                }
+            }
+            case SEND -> {
+                if (accessor.getUser() == null) {
+                    throw new MessageDeliveryException(message, "Not authenticated");
+                }
+            }
+            default -> {
+            }
+        }
+        return message;
+    }
+
+    /** Whether {@code user} may receive, and so confirm, what is sent to {@code destination}. */
+    public static boolean mayReceive(Principal user, String destination, String adminTopic) {
+        if (user == null || destination == null) {
+            return false;
+        }
+        if (destination.equals(adminTopic)) {
+            return user instanceof Authentication auth && auth.getAuthorities().stream()
+                    .anyMatch(a -> "ROLE_ADMIN".equals(a.getAuthority()));
+        }
+        if (destination.startsWith(PSYCHOLOGIST_TOPIC)) {
+            return destination.substring(PSYCHOLOGIST_TOPIC.length()).equals(user.getName());
+        }
+        if (destination.startsWith(CLIENT_TOPIC)) {
+            return destination.substring(CLIENT_TOPIC.length()).equals(user.getName());
+        }
+        // no other panic topic exists; anything else under /topic carries nothing user-specific
+        return !destination.startsWith("/topic/panic");
+    }
+}
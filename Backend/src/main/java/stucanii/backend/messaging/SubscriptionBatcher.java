@@ -0,0 +1,204 @@
+package stucanii.backend.messaging;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+import org.springframework.web.socket.messaging.SessionUnsubscribeEvent;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * Opt-in batching on the client outbound channel. A subscription made with a {@code batch-window:<ms>}
+ * header gets the JSON messages sent to it within that window as one MESSAGE frame whose body is a JSON
+ * array (and {@code batch-size:<n>}); the window starts at the first message and is capped by
+ * {@code app.ws.batch.max-window}. {@code /topic/panic*} subscriptions ignore the header and are never delayed.
+ */
+@Component
+public class SubscriptionBatcher implements ChannelInterceptor {
+
+    static final String BATCH_WINDOW_HEADER = "batch-window";
+    static final String BATCH_SIZE_HEADER = "batch-size";
+    private static final String FLUSHED = "batchFlushed";
+
+    private record Key(String sessionId, String subscriptionId) {}
+
+    private static final class Batch {
+        final Message<?> first;
+        final MessageChannel channel;
+        final List<byte[]> payloads = new ArrayList<>();
+        ScheduledFuture<?> timer;
+
+        Batch(Message<?> first, MessageChannel channel) {
+            this.first = first;
+            this.channel = channel;
+        }
+    }
+
+    // subscriptions that asked for batching -> their window
+    private final Map<Key, Duration> windows = new ConcurrentHashMap<>();
+    private final Map<Key, Batch> pending = new ConcurrentHashMap<>();
+    private final TaskScheduler scheduler;
+    private final Duration maxWindow;
+    private final int maxSize;
+    private final Counter batchedEvents;
+    private final Counter batchFrames;
+
+    public SubscriptionBatcher(@Lazy @Qualifier("messageBrokerTaskScheduler") TaskScheduler scheduler,
+                               MeterRegistry meters,
+                               @Value("${app.ws.batch.max-window:PT0.25S}") Duration maxWindow,
+                               @Value("${app.ws.batch.max-size:100}") int maxSize) {
+        this.scheduler = scheduler;
+        this.maxWindow = maxWindow;
+        this.maxSize = maxSize;
+        this.batchedEvents = Counter.builder("ws.batch.events")
+                .description("Messages delivered inside a batch frame")
+                .register(meters);
+        this.batchFrames = Counter.builder("ws.batch.frames")
+                .description("Batch frames sent")
+                .register(meters);
+    }
+
+    @EventListener
+    public void onSubscribe(SessionSubscribeEvent e) {
+        StompHeaderAccessor h = StompHeaderAccessor.wrap(e.getMessage());
+        String window = h.getFirstNativeHeader(BATCH_WINDOW_HEADER);
+        if (window != null && h.getSessionId() != null && h.getSubscriptionId() != null && h.getDestination() != null) {
+            subscribed(h.getSessionId(), h.getSubscriptionId(), h.getDestination(), window);
+        }
+    }
+
+    @EventListener
+    public void onUnsubscribe(SessionUnsubscribeEvent e) {
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.wrap(e.getMessage());
+        if (h.getSessionId() != null && h.getSubscriptionId() != null) {
+            Key key = new Key(h.getSessionId(), h.getSubscriptionId());
+            windows.remove(key);
+            pending.remove(key);
+        }
+    }
+
+    @EventListener
+    public void onDisconnect(SessionDisconnectEvent e) {
+        windows.keySet().removeIf(k -> k.sessionId().equals(e.getSessionId()));
+        pending.keySet().removeIf(k -> k.sessionId().equals(e.getSessionId()));
+    }
+
+    void subscribed(String sessionId, String subscriptionId, String destination, String window) {
+        if (destination.startsWith("/topic/panic")) {
+            return;
+        }
+        long millis;
+        try {
+            millis = Long.parseLong(window.trim());
+        } catch (NumberFormatException ex) {
+            return;
+        }
+        if (millis > 0) {
+            Duration d = Duration.ofMillis(millis);
+            windows.put(new Key(sessionId, subscriptionId), d.compareTo(maxWindow) > 0 ? maxWindow : d);
+        }
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (windows.isEmpty() || message.getHeaders().containsKey(FLUSHED)
+                || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE
+                || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        if (sessionId == null || subscriptionId == null) {
+            return message;
+        }
+        Key key = new Key(sessionId, subscriptionId);
+        Duration window = windows.get(key);
+        if (window == null || !isJson(message)) {
+            return message;
+        }
+
+        boolean[] full = {false};
+        pending.compute(key, (k, b) -> {
+            if (b == null) {
+                Batch created = new Batch(message, channel);
+                // bound to this batch: a timer that fires anyway after a full flush leaves the next one alone
+                created.timer = scheduler.schedule(() -> flush(k, created), Instant.now().plus(window));
+                b = created;
+            }
+            b.payloads.add(payload);
+            full[0] = b.payloads.size() >= maxSize;
+            return b;
+        });
+        if (full[0]) {
+            flush(key);
+        }
+        // held back; flush() sends it as part of the batch
+        return null;
+    }
+
+    void flush(Key key) {
+        Batch b = pending.remove(key);
+        if (b != null) {
+            send(b);
+        }
+    }
+
+    private void flush(Key key, Batch b) {
+        if (pending.remove(key, b)) {
+            send(b);
+        }
+    }
+
+    private void send(Batch b) {
+        if (b.timer != null) {
+            b.timer.cancel(false);
+        }
+        if (b.payloads.isEmpty()) {
+            return;
+        }
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        body.write('[');
+        for (int i = 0; i < b.payloads.size(); i++) {
+            if (i > 0) {
+                body.write(',');
+            }
+            body.writeBytes(b.payloads.get(i));
+        }
+        body.write(']');
+
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.wrap(b.first);
+        h.setHeader(FLUSHED, Boolean.TRUE);
+        h.setNativeHeader(BATCH_SIZE_HEADER, String.valueOf(b.payloads.size()));
+        b.channel.send(MessageBuilder.createMessage(body.toByteArray(), h.getMessageHeaders()));
+        batchFrames.increment();
+        batchedEvents.increment(b.payloads.size());
+    }
+
+    private static boolean isJson(Message<?> message) {
+        MimeType contentType = SimpMessageHeaderAccessor.wrap(message).getContentType();
+        return contentType != null && MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(contentType);
+    }
+}
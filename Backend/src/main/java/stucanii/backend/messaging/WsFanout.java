@@ -0,0 +1,10 @@
+package stucanii.backend.messaging;
+
+/**
+ * Publishes to a broker destination on whichever node holds the subscribers. Single-node setups deliver
+ * straight to the local simple broker; {@code app.ws.fanout.mode=postgres} also reaches other nodes.
+ */
+public interface WsFanout {
+
+    void send(String destination, Object payload);
+}
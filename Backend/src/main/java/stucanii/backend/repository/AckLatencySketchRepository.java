@@ -0,0 +1,26 @@
+package stucanii.backend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import stucanii.backend.domain.AckLatencySketch;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface AckLatencySketchRepository extends JpaRepository<AckLatencySketch, String> {
+
+    // a missing scope is created empty first, so two nodes never both insert it and one overwrite the other
+    @Modifying
+    @Query(value = "insert into ack_latency_sketches (scope, data, sample_count, updated_at) " +
+            "values (:scope, :data, 0, now()) on conflict (scope) do nothing", nativeQuery = true)
+    int insertIfAbsent(@Param("scope") String scope, @Param("data") byte[] data);
+
+    // every node merges its own acknowledgements into the same rows
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from AckLatencySketch s where s.scope in :scopes")
+    List<AckLatencySketch> findForUpdate(@Param("scopes") Collection<String> scopes);
+}
@@ -1,13 +1,52 @@
 package stucanii.backend.repository;
 
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import stucanii.backend.domain.EducationalMaterial;
 
+import java.time.Instant;
 import java.util.List;
 
 public interface EducationalMaterialRepository extends JpaRepository<EducationalMaterial, Integer> {
 
-    List<EducationalMaterial> findByClient_IdOrderByUploadedAtDesc(Integer clientId);
+    // listings: metadata columns only, never the blob
+    @Query("""
+            select m.id as id, m.originalFilename as originalFilename, m.contentType as contentType,
+                   m.sizeBytes as sizeBytes, m.uploadedAt as uploadedAt
+            from EducationalMaterial m
+            where m.client.id = :clientId
+            order by m.uploadedAt desc
+            """)
+    List<MaterialSummary> findSummariesByClientId(@Param("clientId") Integer clientId);
 
-    List<EducationalMaterial> findByPsychologist_UsernameAndClient_IdOrderByUploadedAtDesc(String psychologistUsername, Integer clientId);
+    @Query("""
+            select m.id as id, m.originalFilename as originalFilename, m.contentType as contentType,
+                   m.sizeBytes as sizeBytes, m.uploadedAt as uploadedAt
+            from EducationalMaterial m
+            where m.psychologist.username = :psychologistUsername and m.client.id = :clientId
+            order by m.uploadedAt desc
+            """)
+    List<MaterialSummary> findSummariesByPsychologistAndClient(@Param("psychologistUsername") String psychologistUsername,
+                                                               @Param("clientId") Integer clientId);
+
+    @Query("select m.client.id as clientId, m.id as materialId from EducationalMaterial m where m.libraryItem.id = :itemId")
+    List<Assignment> findAssignmentsByLibraryItemId(@Param("itemId") Integer itemId);
+
+    @Query("select m.id from EducationalMaterial m where m.storageKey is null order by m.id")
+    List<Integer> findIdsStoredInline(Pageable pageable);
+
+    interface Assignment {
+        Integer getClientId();
+        Integer getMaterialId();
+    }
+
+    interface MaterialSummary {
+        Integer getId();
+        String getOriginalFilename();
+        String getContentType();
+        long getSizeBytes();
+        Instant getUploadedAt();
+    }
 }
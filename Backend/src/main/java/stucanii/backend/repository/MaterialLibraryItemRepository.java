@@ -0,0 +1,42 @@
+package stucanii.backend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import stucanii.backend.domain.MaterialLibraryItem;
+
+import java.util.List;
+import java.util.Optional;
+
+public interface MaterialLibraryItemRepository extends JpaRepository<MaterialLibraryItem, Integer> {
+
+    List<MaterialLibraryItem> findByPsychologist_UsernameOrderByCreatedAtDesc(String psychologistUsername);
+
+    // a concurrent upload of the same file inserts nothing here instead of failing on the unique constraint
+    @Modifying
+    @Query(value = """
+            insert into material_library_items
+                (psychologist_id, original_filename, content_type, size_bytes, content_hash, storage_key, ref_count, curated, created_at)
+            values (:psychologistId, :filename, :contentType, :sizeBytes, :contentHash, :storageKey, 0, false, now())
+            on conflict (psychologist_id, content_hash) do nothing
+            """, nativeQuery = true)
+    int insertIfAbsent(@Param("psychologistId") Integer psychologistId,
+                       @Param("filename") String filename,
+                       @Param("contentType") String contentType,
+                       @Param("sizeBytes") long sizeBytes,
+                       @Param("contentHash") String contentHash,
+                       @Param("storageKey") String storageKey);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from MaterialLibraryItem i where i.psychologist.id = :psychologistId and i.contentHash = :contentHash")
+    Optional<MaterialLibraryItem> findByContentHashForUpdate(@Param("psychologistId") Integer psychologistId,
+                                                             @Param("contentHash") String contentHash);
+
+    // reference counts are only changed under this lock
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select i from MaterialLibraryItem i where i.id = :id")
+    Optional<MaterialLibraryItem> findForUpdate(@Param("id") Integer id);
+}
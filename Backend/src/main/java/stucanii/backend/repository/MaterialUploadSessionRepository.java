@@ -0,0 +1,23 @@
+package stucanii.backend.repository;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import stucanii.backend.domain.MaterialUploadSession;
+import stucanii.backend.domain.UploadSessionStatus;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface MaterialUploadSessionRepository extends JpaRepository<MaterialUploadSession, String> {
+
+    // serializes chunk writes to the same session
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from MaterialUploadSession s where s.id = :id")
+    Optional<MaterialUploadSession> findForUpdate(@Param("id") String id);
+
+    List<MaterialUploadSession> findTop100ByStatusAndUpdatedAtBefore(UploadSessionStatus status, Instant before);
+}
@@ -1,16 +1,73 @@
 package stucanii.backend.repository;
 
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import stucanii.backend.domain.PanicAlert;
 import stucanii.backend.domain.PanicStatus;
 
+import java.time.Instant;
 import java.util.List;
+import java.util.Optional;
 
 public interface PanicAlertRepository extends JpaRepository<PanicAlert, Integer> {
 
     List<PanicAlert> findByPsychologist_UsernameAndStatusOrderByCreatedAtDesc(String psychologistUsername, PanicStatus status);
 
-    List<PanicAlert> findTop50ByPsychologist_UsernameOrderByCreatedAtDesc(String psychologistUsername);
-
     List<PanicAlert> findTop50ByClient_IdOrderByCreatedAtDesc(Integer clientId);
+
+    // inbox: one statement, users joined in, no entity loading
+    @Query("""
+            select a.id as id, c.username as clientUsername, a.status as status,
+                   a.triggeredByLongPress as triggeredByLongPress, a.createdAt as createdAt,
+                   a.acknowledgedAt as acknowledgedAt, a.videoRoomId as videoRoomId, a.updatedAt as updatedAt
+            from PanicAlert a join a.client c join a.psychologist p
+            where p.username = :psychologistUsername
+            order by a.createdAt desc
+            """)
+    List<InboxRow> findInbox(@Param("psychologistUsername") String psychologistUsername, Pageable pageable);
+
+    // keyset on (updated_at, id): everything created or changed after the cursor, oldest change first
+    @Query("""
+            select a.id as id, c.username as clientUsername, a.status as status,
+                   a.triggeredByLongPress as triggeredByLongPress, a.createdAt as createdAt,
+                   a.acknowledgedAt as acknowledgedAt, a.videoRoomId as videoRoomId, a.updatedAt as updatedAt
+            from PanicAlert a join a.client c join a.psychologist p
+            where p.username = :psychologistUsername
+              and (a.updatedAt > :updatedAt or (a.updatedAt = :updatedAt and a.id > :id))
+            order by a.updatedAt, a.id
+            """)
+    List<InboxRow> findInboxChangesAfter(@Param("psychologistUsername") String psychologistUsername,
+                                         @Param("updatedAt") Instant updatedAt,
+                                         @Param("id") Integer id,
+                                         Pageable pageable);
+
+    // what the escalation wheel is rebuilt from on startup; older open alerts are past escalating
+    @Query("select a.id as id, a.createdAt as createdAt from PanicAlert a " +
+            "where a.status = stucanii.backend.domain.PanicStatus.OPEN and a.escalatedAt is null " +
+            "and a.createdAt >= :since")
+    List<PendingEscalation> findPendingEscalations(@Param("since") Instant since);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select a from PanicAlert a where a.id = :id")
+    Optional<PanicAlert> findForUpdate(@Param("id") Integer id);
+
+    interface InboxRow {
+        Integer getId();
+        String getClientUsername();
+        PanicStatus getStatus();
+        boolean isTriggeredByLongPress();
+        Instant getCreatedAt();
+        Instant getAcknowledgedAt();
+        String getVideoRoomId();
+        Instant getUpdatedAt();
+    }
+
+    interface PendingEscalation {
+        Integer getId();
+        Instant getCreatedAt();
+    }
 }
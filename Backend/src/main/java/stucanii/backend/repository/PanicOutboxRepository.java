@@ -0,0 +1,40 @@
+package stucanii.backend.repository;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import stucanii.backend.domain.PanicOutboxEvent;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+
+public interface PanicOutboxRepository extends JpaRepository<PanicOutboxEvent, Long> {
+
+    // rows claimed by another relay (thread or node) are skipped, not waited on
+    @Query(value = """
+            select * from panic_outbox
+            where delivered_at is null and next_attempt_at <= :now and attempts < :maxAttempts
+            order by id
+            limit :limit
+            for update skip locked
+            """, nativeQuery = true)
+    List<PanicOutboxEvent> claimDue(@Param("now") Instant now,
+                                    @Param("maxAttempts") int maxAttempts,
+                                    @Param("limit") int limit);
+
+    @Query(value = """
+            select * from panic_outbox
+            where delivered_at is null and destination = :destination
+              and occurred_at >= :since and attempts < :maxAttempts
+            order by id
+            for update skip locked
+            """, nativeQuery = true)
+    List<PanicOutboxEvent> claimUndelivered(@Param("destination") String destination,
+                                            @Param("since") Instant since,
+                                            @Param("maxAttempts") int maxAttempts);
+
+    Optional<PanicOutboxEvent> findByReceiptId(String receiptId);
+
+    long countByDeliveredAtIsNull();
+}
@@ -6,11 +6,21 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import stucanii.backend.domain.RefreshToken;
 
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 
 public interface RefreshTokenRepository extends JpaRepository<RefreshToken, Long> {
 
-    Optional<RefreshToken> findByToken(String token);
+    Optional<RefreshToken> findByTokenHash(String tokenHash);
+
+    @Query("select rt.tokenHash from RefreshToken rt where rt.user.id = :userId and rt.revoked = false")
+    List<String> findLiveHashesByUserId(@Param("userId") Integer userId);
+
+    @Modifying
+    @Query("update RefreshToken rt set rt.revoked = true, rt.revokedAt = :now " +
+            "where rt.user.id = :userId and rt.revoked = false")
+    int revokeAllByUserId(@Param("userId") Integer userId, @Param("now") Instant now);
 
     @Modifying
     @Query("delete from RefreshToken rt where rt.user.id = :userId")
@@ -1,6 +1,9 @@
 package stucanii.backend.repository;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import stucanii.backend.domain.Role;
 import stucanii.backend.domain.User;
 
 import java.util.Optional;
@@ -9,4 +12,18 @@ public interface UserRepository extends JpaRepository<User, Integer> {
     Optional<User> findByUsername(String username);
     boolean existsByUsername(String username);
     Optional<User> findById(Long id);
+
+    // one row, no entity: what request handling needs to know about the caller
+    @Query("select u.id as id, u.username as username, u.role as role, p.id as psychologistId, " +
+            "u.roleVersion as roleVersion " +
+            "from User u left join u.psychologist p where u.username = :username")
+    Optional<IdentityRow> findIdentity(@Param("username") String username);
+
+    interface IdentityRow {
+        Integer getId();
+        String getUsername();
+        Role getRole();
+        Integer getPsychologistId();
+        int getRoleVersion();
+    }
 }
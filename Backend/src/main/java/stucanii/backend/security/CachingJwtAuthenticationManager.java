@@ -0,0 +1,90 @@
+package stucanii.backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.security.authentication.AuthenticationManager;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Remembers bearer tokens that already passed signature and claim checks, so a client reusing its access
+ * token skips the HMAC verification, claims parsing and authority mapping until the token expires.
+ * Failed tokens are never cached. Each hit gets its own copy of the authentication carrying the current
+ * request's details.
+ */
+public class CachingJwtAuthenticationManager implements AuthenticationManager {
+
+    private final AuthenticationProvider delegate;
+    private final int maxEntries;
+    private final Supplier<Instant> clock;
+    private final Map<String, Verified> verified = new ConcurrentHashMap<>();
+    private volatile Instant nextSweep = Instant.MIN;
+
+    private final Counter hits;
+    private final Counter misses;
+
+    public CachingJwtAuthenticationManager(AuthenticationProvider delegate, MeterRegistry meters, int maxEntries) {
+        this(delegate, meters, maxEntries, Instant::now);
+    }
+
+    CachingJwtAuthenticationManager(AuthenticationProvider delegate, MeterRegistry meters, int maxEntries,
+                                    Supplier<Instant> clock) {
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.clock = clock;
+        this.hits = Counter.builder("auth.jwt.cache").tag("result", "hit").register(meters);
+        this.misses = Counter.builder("auth.jwt.cache").tag("result", "miss").register(meters);
+        Gauge.builder("auth.jwt.cache.size", verified, Map::size)
+                .description("Verified access tokens held in memory")
+                .register(meters);
+    }
+
+    @Override
+    public Authentication authenticate(Authentication authentication) throws AuthenticationException {
+        if (!(authentication instanceof BearerTokenAuthenticationToken bearer)) {
+            return delegate.authenticate(authentication);
+        }
+        Instant now = clock.get();
+        Verified v = verified.get(bearer.getToken());
+        if (v != null && now.isBefore(v.expiresAt())) {
+            hits.increment();
+            return v.authentication().toBuilder().details(bearer.getDetails()).build();
+        }
+
+        misses.increment();
+        Authentication result = delegate.authenticate(bearer);
+        if (result instanceof JwtAuthenticationToken jwt && jwt.getToken().getExpiresAt() != null) {
+            remember(bearer.getToken(), new Verified(jwt, jwt.getToken().getExpiresAt()), now);
+        }
+        return result;
+    }
+
+    int size() {
+        return verified.size();
+    }
+
+    private void remember(String token, Verified v, Instant now) {
+        if (verified.size() >= maxEntries) {
+            // at most one sweep a second, so a cache full of live tokens doesn't scan on every miss
+            if (now.isAfter(nextSweep)) {
+                nextSweep = now.plusSeconds(1);
+                verified.values().removeIf(e -> !now.isBefore(e.expiresAt()));
+            }
+            if (verified.size() >= maxEntries) {
+                return;
+            }
+        }
+        verified.put(token, v);
+    }
+
+    private record Verified(JwtAuthenticationToken authentication, Instant expiresAt) {}
+}
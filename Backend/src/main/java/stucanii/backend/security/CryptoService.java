@@ -4,11 +4,16 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.List;
 
 @Service
 public class CryptoService {
@@ -21,6 +26,10 @@ public class CryptoService {
     private final SecretKey key;
     private final SecureRandom random = new SecureRandom();
 
+    // Cipher is not thread-safe, but it is reusable after init(): one instance per thread
+    // avoids the provider lookup that Cipher.getInstance does on every call.
+    private final ThreadLocal<Cipher> ciphers = ThreadLocal.withInitial(CryptoService::newCipher);
+
     public CryptoService(@Value("${app.crypto.aesKeyBase64}") String aesKeyBase64) {
         byte[] keyBytes = Base64.getDecoder().decode(aesKeyBase64);
         if (keyBytes.length != 32) {
@@ -34,10 +43,10 @@ public class CryptoService {
             byte[] iv = new byte[IV_BYTES];
             random.nextBytes(iv);
 
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
+            Cipher cipher = ciphers.get();
             cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
 
-            byte[] ciphertext = cipher.doFinal(plaintext.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+            byte[] ciphertext = cipher.doFinal(plaintext.getBytes(StandardCharsets.UTF_8));
             return new EncryptedPayload(iv, ciphertext);
         } catch (Exception e) {
             throw new RuntimeException("Encryption failed", e);
@@ -46,15 +55,45 @@ public class CryptoService {
 
     public String decrypt(byte[] iv, byte[] ciphertext) {
         try {
-            Cipher cipher = Cipher.getInstance(TRANSFORMATION);
-            cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+            return decryptWith(ciphers.get(), iv, ciphertext);
+        } catch (Exception e) {
+            throw new RuntimeException("Decryption failed", e);
+        }
+    }
 
-            byte[] plain = cipher.doFinal(ciphertext);
-            return new String(plain, java.nio.charset.StandardCharsets.UTF_8);
+    /**
+     * Decrypts a batch of payloads with a single cipher instance, preserving order.
+     * Used by the list endpoints so a page of rows costs one cipher lookup instead of one per row.
+     */
+    public List<String> decryptAll(List<EncryptedPayload> payloads) {
+        List<String> out = new ArrayList<>(payloads.size());
+        if (payloads.isEmpty()) {
+            return out;
+        }
+        try {
+            Cipher cipher = ciphers.get();
+            for (EncryptedPayload p : payloads) {
+                out.add(decryptWith(cipher, p.iv(), p.ciphertext()));
+            }
+            return out;
         } catch (Exception e) {
             throw new RuntimeException("Decryption failed", e);
         }
     }
 
+    private String decryptWith(Cipher cipher, byte[] iv, byte[] ciphertext) throws Exception {
+        cipher.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(GCM_TAG_BITS, iv));
+        byte[] plain = cipher.doFinal(ciphertext);
+        return new String(plain, StandardCharsets.UTF_8);
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+            throw new IllegalStateException(TRANSFORMATION + " not available", e);
+        }
+    }
+
     public record EncryptedPayload(byte[] iv, byte[] ciphertext) {}
-}
\ No newline at end of file
+}
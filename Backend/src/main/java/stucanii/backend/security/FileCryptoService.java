@@ -4,55 +4,368 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.Cipher;
+import javax.crypto.Mac;
 import javax.crypto.SecretKey;
 import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.SecretKeySpec;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.SecureRandom;
 import java.util.Base64;
+import java.util.HexFormat;
 
+/**
+ * Encryption for uploaded files.
+ *
+ * New files use a segmented AES-GCM format so they can be encrypted and decrypted as streams:
+ * <pre>
+ *   header:   version (1) | segment size (4) | nonce prefix (7)
+ *   segments: AES-GCM(plaintext[i * size .. (i + 1) * size]) + 16 byte tag
+ * </pre>
+ * The IV of segment {@code i} is {@code noncePrefix | i | lastFlag}, so segments cannot be
+ * reordered, dropped or truncated without failing authentication. Only the last segment may be
+ * shorter than the segment size; an empty file is a single empty last segment.
+ *
+ * Rows written before this format ({@link #FORMAT_LEGACY}) are a single {@code iv + ciphertext}.
+ */
 @Service
 public class FileCryptoService {
 
+    public static final int FORMAT_LEGACY = 0;
+    public static final int FORMAT_SEGMENTED = 1;
+
+    public static final int SEGMENT_SIZE = 64 * 1024;
+    public static final int TAG_BYTES = 16;
+    public static final int HEADER_BYTES = 1 + 4 + 7;
+
+    private static final byte HEADER_VERSION = 1;
+    private static final int NONCE_PREFIX_BYTES = 7;
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+    private static final String CONTENT_HASH_ALGO = "HmacSHA256";
+
     private final SecretKey key;
+    private final SecretKey contentHashKey;
     private final SecureRandom random = new SecureRandom();
 
     public FileCryptoService(@Value("${app.crypto.aesKeyBase64}") String keyBase64) {
         byte[] k = Base64.getDecoder().decode(keyBase64);
         this.key = new SecretKeySpec(k, "AES");
+        this.contentHashKey = deriveContentHashKey(k);
     }
 
-    public byte[] encrypt(byte[] plain) {
-        try {
-            byte[] iv = new byte[12];
-            random.nextBytes(iv);
+    /** Size of the segmented ciphertext (header included) for a plaintext of {@code plainSize} bytes. */
+    public static long encryptedSize(long plainSize) {
+        long segments = Math.max(1, (plainSize + SEGMENT_SIZE - 1) / SEGMENT_SIZE);
+        return HEADER_BYTES + plainSize + segments * TAG_BYTES;
+    }
 
-            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
-            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(128, iv));
-            byte[] ct = c.doFinal(plain);
+    /**
+     * Encrypts {@code in} into {@code out} one segment at a time, so memory stays constant
+     * regardless of the file size. Returns the number of plaintext bytes read.
+     */
+    public long encrypt(InputStream in, OutputStream out) throws IOException {
+        byte[] header = newHeader();
+        out.write(header);
+        byte[] noncePrefix = readHeader(new ByteArrayInputStream(header)).noncePrefix();
 
-            // store: iv + ct
-            byte[] out = new byte[iv.length + ct.length];
-            System.arraycopy(iv, 0, out, 0, iv.length);
-            System.arraycopy(ct, 0, out, iv.length, ct.length);
-            return out;
-        } catch (Exception e) {
-            throw new RuntimeException("Encrypt failed", e);
+        Cipher c = newCipher();
+        byte[] current = new byte[SEGMENT_SIZE];
+        byte[] next = new byte[SEGMENT_SIZE];
+        byte[] sealed = new byte[SEGMENT_SIZE + TAG_BYTES];
+
+        // one segment of look-ahead: a segment is only known to be the last once the next read is empty
+        int currentLen = in.readNBytes(current, 0, SEGMENT_SIZE);
+        long total = currentLen;
+        int index = 0;
+        while (true) {
+            int nextLen = currentLen < SEGMENT_SIZE ? 0 : in.readNBytes(next, 0, SEGMENT_SIZE);
+            boolean last = nextLen == 0;
+
+            int n = seal(c, noncePrefix, index, last, current, currentLen, sealed);
+            out.write(sealed, 0, n);
+
+            if (last) {
+                return total;
+            }
+            byte[] tmp = current;
+            current = next;
+            next = tmp;
+            currentLen = nextLen;
+            total += nextLen;
+            index++;
         }
     }
 
+    /**
+     * Like {@link #encrypt(InputStream, OutputStream)}, also computing the {@link #contentHash} of
+     * the plaintext on the way through.
+     */
+    public EncryptedFile encryptAndHash(InputStream in, OutputStream out) throws IOException {
+        Mac mac = newContentMac();
+        long size = encrypt(new MacInputStream(in, mac), out);
+        return new EncryptedFile(size, HexFormat.of().formatHex(mac.doFinal()));
+    }
+
+    /**
+     * Keyed hash of the plaintext of a segmented stream. Equal files hash equally, but the hash
+     * cannot be checked against a known file without the application key.
+     */
+    public String contentHash(InputStream encrypted) throws IOException {
+        Mac mac = newContentMac();
+        decrypt(encrypted, new OutputStream() {
+            @Override
+            public void write(int b) {
+                mac.update((byte) b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                mac.update(b, off, len);
+            }
+        });
+        return HexFormat.of().formatHex(mac.doFinal());
+    }
+
+    /** A fresh header (random nonce prefix) for a segmented file that will be written piecewise. */
+    public byte[] newHeader() {
+        byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+        random.nextBytes(noncePrefix);
+        return ByteBuffer.allocate(HEADER_BYTES)
+                .put(HEADER_VERSION)
+                .putInt(SEGMENT_SIZE)
+                .put(noncePrefix)
+                .array();
+    }
+
+    /**
+     * Encrypts exactly {@code length} bytes of {@code in} as segments {@code firstSegment..} of the
+     * file described by {@code header}. Unless {@code endsFile} is set, {@code length} must be a whole
+     * number of segments; when it is set, the final segment written is marked as the last one.
+     * Used to encrypt resumable uploads chunk by chunk as they arrive.
+     */
+    public void encryptSegments(byte[] header, long firstSegment, InputStream in, long length, boolean endsFile,
+                                OutputStream out) throws IOException {
+        SegmentHeader h = readHeader(new ByteArrayInputStream(header));
+        int segmentSize = h.segmentSize();
+        if (!endsFile && (length == 0 || length % segmentSize != 0)) {
+            throw new IllegalArgumentException("Non-final chunks must be a whole number of segments");
+        }
+
+        Cipher c = newCipher();
+        byte[] plain = new byte[segmentSize];
+        byte[] sealed = new byte[segmentSize + TAG_BYTES];
+        long remaining = length;
+        long index = firstSegment;
+        do {
+            int len = (int) Math.min(segmentSize, remaining);
+            if (in.readNBytes(plain, 0, len) != len) {
+                throw new EOFException("Chunk shorter than " + length + " bytes");
+            }
+            remaining -= len;
+            boolean last = endsFile && remaining == 0;
+
+            int n = seal(c, h.noncePrefix(), (int) index, last, plain, len, sealed);
+            out.write(sealed, 0, n);
+            index++;
+        } while (remaining > 0);
+    }
+
+    /** Decrypts a segmented stream produced by {@link #encrypt(InputStream, OutputStream)} into {@code out}. */
+    public void decrypt(InputStream in, OutputStream out) throws IOException {
+        SegmentHeader header = readHeader(in);
+        int sealedSize = header.segmentSize() + TAG_BYTES;
+
+        Cipher c = newCipher();
+        byte[] current = new byte[sealedSize];
+        byte[] next = new byte[sealedSize];
+        byte[] plain = new byte[header.segmentSize()];
+
+        int currentLen = in.readNBytes(current, 0, sealedSize);
+        int index = 0;
+        while (true) {
+            int nextLen = currentLen < sealedSize ? 0 : in.readNBytes(next, 0, sealedSize);
+            boolean last = nextLen == 0;
+
+            int n = open(c, header.noncePrefix(), index, last, current, currentLen, plain);
+            out.write(plain, 0, n);
+
+            if (last) {
+                return;
+            }
+            byte[] tmp = current;
+            current = next;
+            next = tmp;
+            currentLen = nextLen;
+            index++;
+        }
+    }
+
+    /**
+     * Decrypts plaintext bytes {@code start..endInclusive} of a segmented blob, reading and
+     * authenticating only the segments that cover the range.
+     */
+    public void decryptRange(SeekableByteChannel ch, long plainSize, long start, long endInclusive, OutputStream out) throws IOException {
+        if (start < 0 || endInclusive >= plainSize || start > endInclusive) {
+            throw new IllegalArgumentException("Invalid range " + start + "-" + endInclusive + " of " + plainSize);
+        }
+        ch.position(0);
+        SegmentHeader header = readHeader(Channels.newInputStream(ch));
+        int segmentSize = header.segmentSize();
+        long segmentCount = Math.max(1, (plainSize + segmentSize - 1) / segmentSize);
+
+        Cipher c = newCipher();
+        ByteBuffer sealed = ByteBuffer.allocate(segmentSize + TAG_BYTES);
+        byte[] plain = new byte[segmentSize];
+
+        for (long i = start / segmentSize; i <= endInclusive / segmentSize; i++) {
+            boolean last = i == segmentCount - 1;
+            long segmentStart = i * segmentSize;
+            int plainLen = (int) (last ? plainSize - segmentStart : segmentSize);
+
+            sealed.clear().limit(plainLen + TAG_BYTES);
+            long pos = HEADER_BYTES + i * (segmentSize + TAG_BYTES);
+            while (sealed.hasRemaining()) {
+                if (ch.position(pos + sealed.position()).read(sealed) < 0) {
+                    throw new EOFException("Truncated encrypted segment " + i);
+                }
+            }
+
+            int n = open(c, header.noncePrefix(), (int) i, last, sealed.array(), sealed.limit(), plain);
+            int from = (int) (Math.max(start, segmentStart) - segmentStart);
+            int to = (int) (Math.min(endInclusive, segmentStart + n - 1) - segmentStart);
+            out.write(plain, from, to - from + 1);
+        }
+    }
+
+    /** Legacy single-shot format: {@code iv (12) + ciphertext}. Only used for rows stored before segmentation. */
     public byte[] decrypt(byte[] data) {
         try {
             byte[] iv = new byte[12];
             System.arraycopy(data, 0, iv, 0, 12);
 
-            byte[] ct = new byte[data.length - 12];
-            System.arraycopy(data, 12, ct, 0, ct.length);
-
-            Cipher c = Cipher.getInstance("AES/GCM/NoPadding");
+            Cipher c = newCipher();
             c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(128, iv));
-            return c.doFinal(ct);
+            return c.doFinal(data, 12, data.length - 12);
         } catch (Exception e) {
             throw new RuntimeException("Decrypt failed", e);
         }
     }
+
+    private SegmentHeader readHeader(InputStream in) throws IOException {
+        byte[] raw = in.readNBytes(HEADER_BYTES);
+        if (raw.length != HEADER_BYTES) {
+            throw new EOFException("Truncated encrypted file header");
+        }
+        ByteBuffer b = ByteBuffer.wrap(raw);
+        if (b.get() != HEADER_VERSION) {
+            throw new IOException("Unsupported encrypted file version");
+        }
+        int segmentSize = b.getInt();
+        if (segmentSize <= 0 || segmentSize > 16 * 1024 * 1024) {
+            throw new IOException("Invalid segment size " + segmentSize);
+        }
+        byte[] noncePrefix = new byte[NONCE_PREFIX_BYTES];
+        b.get(noncePrefix);
+        return new SegmentHeader(segmentSize, noncePrefix);
+    }
+
+    private int seal(Cipher c, byte[] noncePrefix, int index, boolean last, byte[] in, int len, byte[] out) throws IOException {
+        try {
+            c.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, segmentIv(noncePrefix, index, last)));
+            return c.doFinal(in, 0, len, out, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Encrypt failed at segment " + index, e);
+        }
+    }
+
+    private int open(Cipher c, byte[] noncePrefix, int index, boolean last, byte[] in, int len, byte[] out) throws IOException {
+        if (len < TAG_BYTES) {
+            throw new EOFException("Truncated encrypted segment " + index);
+        }
+        try {
+            c.init(Cipher.DECRYPT_MODE, key, new GCMParameterSpec(TAG_BYTES * 8, segmentIv(noncePrefix, index, last)));
+            return c.doFinal(in, 0, len, out, 0);
+        } catch (GeneralSecurityException e) {
+            throw new IOException("Decrypt failed at segment " + index, e);
+        }
+    }
+
+    private static byte[] segmentIv(byte[] noncePrefix, int index, boolean last) {
+        return ByteBuffer.allocate(12)
+                .put(noncePrefix)
+                .putInt(index)
+                .put((byte) (last ? 1 : 0))
+                .array();
+    }
+
+    private static Cipher newCipher() throws IOException {
+        try {
+            return Cipher.getInstance(TRANSFORMATION);
+        } catch (GeneralSecurityException e) {
+            throw new IOException(TRANSFORMATION + " not available", e);
+        }
+    }
+
+    private Mac newContentMac() throws IOException {
+        try {
+            Mac mac = Mac.getInstance(CONTENT_HASH_ALGO);
+            mac.init(contentHashKey);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IOException(CONTENT_HASH_ALGO + " not available", e);
+        }
+    }
+
+    // separate key for content hashes, so they never reuse the encryption key directly
+    private static SecretKey deriveContentHashKey(byte[] aesKey) {
+        try {
+            Mac mac = Mac.getInstance(CONTENT_HASH_ALGO);
+            mac.init(new SecretKeySpec(aesKey, CONTENT_HASH_ALGO));
+            byte[] derived = mac.doFinal("therappy/material-content-hash".getBytes(StandardCharsets.US_ASCII));
+            return new SecretKeySpec(derived, CONTENT_HASH_ALGO);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public record EncryptedFile(long sizeBytes, String contentHash) {}
+
+    private record SegmentHeader(int segmentSize, byte[] noncePrefix) {}
+
+    private static final class MacInputStream extends FilterInputStream {
+        private final Mac mac;
+
+        MacInputStream(InputStream in, Mac mac) {
+            super(in);
+            this.mac = mac;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b >= 0) {
+                mac.update((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = in.read(b, off, len);
+            if (n > 0) {
+                mac.update(b, off, n);
+            }
+            return n;
+        }
+    }
 }
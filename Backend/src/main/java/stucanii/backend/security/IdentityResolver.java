@@ -0,0 +1,194 @@
+package stucanii.backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.server.ResponseStatusException;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * The caller's id, role and psychologist, without loading the {@code User} entity on every request.
+ * Resolved at most once per HTTP request, from a small near-cache kept for {@code app.identity.cache-ttl},
+ * otherwise from the database.
+ * <p>
+ * The caller's own access token is checked against the stored {@code role_version}: a token issued before
+ * a role or psychologist change, or for a user that no longer exists, gets a 401 and has to be refreshed.
+ * Whoever changes or deletes a user calls {@link #evict}, which makes that immediate on this node; other
+ * nodes see it once their cached entry runs out.
+ */
+@Component
+public class IdentityResolver {
+
+    private static final String REQUEST_ATTRIBUTE = IdentityResolver.class.getName() + ".";
+
+    public record Identity(Integer id, String username, Role role, Integer psychologistId, int roleVersion) {}
+
+    private record Cached(Identity identity, long expiresAt) {}
+
+    private final Function<String, Optional<Identity>> loader;
+    private final LongSupplier clock;
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Cached> cache = new ConcurrentHashMap<>();
+    private volatile long nextSweep;
+
+    private final Counter staleTokens;
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public IdentityResolver(UserRepository users,
+                            MeterRegistry meters,
+                            @Value("${app.identity.cache-ttl:PT30S}") Duration ttl,
+                            @Value("${app.identity.cache-size:10000}") int maxEntries) {
+        this(username -> users.findIdentity(username)
+                        .map(r -> new Identity(r.getId(), r.getUsername(), r.getRole(), r.getPsychologistId(),
+                                r.getRoleVersion())),
+                meters, ttl, maxEntries, System::currentTimeMillis);
+    }
+
+    IdentityResolver(Function<String, Optional<Identity>> loader, MeterRegistry meters, Duration ttl,
+                     int maxEntries, LongSupplier clock) {
+        this.loader = loader;
+        this.clock = clock;
+        this.ttlMillis = ttl.toMillis();
+        this.maxEntries = maxEntries;
+        this.staleTokens = Counter.builder("identity.tokens.stale")
+                .description("Requests refused because the access token predates a role change or deletion")
+                .register(meters);
+        this.hits = Counter.builder("identity.cache").tag("result", "hit").register(meters);
+        this.misses = Counter.builder("identity.cache").tag("result", "miss").register(meters);
+        Gauge.builder("identity.cache.size", cache, Map::size)
+                .description("User identities held in memory")
+                .register(meters);
+    }
+
+    /**
+     * @throws ResponseStatusException 401 when no such user exists (e.g. deleted while its token is still valid),
+     * or when it is the caller and its access token is older than its current role
+     */
+    public Identity resolve(String username) {
+        RequestAttributes request = RequestContextHolder.getRequestAttributes();
+        if (request != null
+                && request.getAttribute(REQUEST_ATTRIBUTE + username, RequestAttributes.SCOPE_REQUEST) instanceof Identity i) {
+            return i;
+        }
+        Jwt token = callerToken(username);
+        Identity identity = lookup(username);
+        if (token != null && !matches(token, identity, false)) {
+            // this node's entry may be the stale side: ask the database before refusing the token
+            cache.remove(username);
+            identity = lookup(username);
+            if (!matches(token, identity, true)) {
+                staleTokens.increment();
+                throw new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Access token is out of date");
+            }
+        }
+        if (request != null) {
+            request.setAttribute(REQUEST_ATTRIBUTE + username, identity, RequestAttributes.SCOPE_REQUEST);
+        }
+        return identity;
+    }
+
+    /**
+     * After a role or psychologist change: forgets the cached identity now and again when the transaction
+     * ends, so a concurrent read can't re-cache the old state.
+     */
+    public void evict(User user) {
+        String username = user.getUsername();
+        cache.remove(username);
+        afterTransaction(() -> cache.remove(username));
+    }
+
+    /** After deleting a user: the next request finds it gone. */
+    public void evict(Integer userId) {
+        cache.values().removeIf(c -> c.identity().id().equals(userId));
+        afterTransaction(() -> cache.values().removeIf(c -> c.identity().id().equals(userId)));
+    }
+
+    int size() {
+        return cache.size();
+    }
+
+    // the caller's access token, when it is the caller being resolved
+    private static Jwt callerToken(String username) {
+        return SecurityContextHolder.getContext().getAuthentication() instanceof JwtAuthenticationToken auth
+                && username.equals(auth.getName()) ? auth.getToken() : null;
+    }
+
+    // newerAllowed: once the row comes straight from the database, a newer token is no reason to refuse
+    private static boolean matches(Jwt token, Identity identity, boolean newerAllowed) {
+        // tokens issued before the claims existed carry no role version and expire on their own
+        if (!(token.getClaim(JwtService.ROLE_VERSION) instanceof Number roleVersion)) {
+            return true;
+        }
+        // a different id: the user was deleted and the name taken again
+        if (token.getClaim(JwtService.USER_ID) instanceof Number id && id.intValue() != identity.id()) {
+            return false;
+        }
+        return newerAllowed ? roleVersion.intValue() >= identity.roleVersion()
+                : roleVersion.intValue() == identity.roleVersion();
+    }
+
+    private Identity lookup(String username) {
+        long now = clock.getAsLong();
+        Cached c = cache.get(username);
+        if (c != null && now < c.expiresAt()) {
+            hits.increment();
+            return c.identity();
+        }
+        misses.increment();
+        Identity identity = loader.apply(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        remember(username, new Cached(identity, now + ttlMillis), now);
+        return identity;
+    }
+
+    private void remember(String username, Cached c, long now) {
+        if (cache.size() >= maxEntries) {
+            // at most one sweep a second, so a cache full of live entries doesn't scan on every miss
+            if (now > nextSweep) {
+                nextSweep = now + 1_000;
+                cache.values().removeIf(e -> now >= e.expiresAt());
+            }
+            if (cache.size() >= maxEntries) {
+                return;
+            }
+        }
+        cache.put(username, c);
+    }
+
+    // runs at once outside a transaction, where the change is already committed
+    private static void afterTransaction(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
@@ -11,6 +11,11 @@ import static org.springframework.security.oauth2.jose.jws.MacAlgorithm.HS256;
 
 @Service
 public class JwtService {
+
+    // checked by IdentityResolver against the stored user: its id and User.roleVersion when issued
+    public static final String USER_ID = "uid";
+    public static final String ROLE_VERSION = "rv";
+
     private final JwtEncoder encoder;
     private final long ttlSeconds;
 
@@ -30,6 +35,8 @@ public class JwtService {
                 .expiresAt(exp)
                 .subject(user.getUsername())
                 .claim("role", user.getRole().name())
+                .claim(USER_ID, user.getId())
+                .claim(ROLE_VERSION, user.getRoleVersion())
                 .build();
 
         JwsHeader header = JwsHeader.with(HS256).build();
@@ -0,0 +1,125 @@
+package stucanii.backend.security;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Deletes refresh tokens nobody can use any more: expired ones. Revoked rows stay until they expire too,
+ * so a replay of a rotated or logged-out token is recognised for as long as the token would have been
+ * valid. Walks the table in primary-key order, one short
+ * transaction per batch, skipping rows a login or refresh is holding, so it never locks more than a batch.
+ */
+@Component
+public class RefreshTokenPurgeJob {
+
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenPurgeJob.class);
+
+    // keyset on id: each batch starts where the last one stopped instead of rescanning the rows kept
+    private static final String PURGE = """
+            with batch as (
+                select id from refresh_tokens
+                where id > ?
+                  and expires_at < ?
+                order by id limit ?
+                for update skip locked),
+            deleted as (
+                delete from refresh_tokens t using batch where t.id = batch.id
+                returning t.id)
+            select count(*), coalesce(max(id), 0) from deleted
+            """;
+
+    private static final String TABLE_SIZE = """
+            select greatest(c.reltuples, 0)::bigint, pg_total_relation_size(c.oid)
+            from pg_class c where c.oid = to_regclass('refresh_tokens')
+            """;
+
+    private record Batch(int deleted, long lastId) {}
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final int batchSize;
+
+    private final Counter purged;
+    private final Timer runs;
+    private final AtomicLong tableRows = new AtomicLong();
+    private final AtomicLong tableBytes = new AtomicLong();
+
+    public RefreshTokenPurgeJob(JdbcTemplate jdbc,
+                                TransactionTemplate tx,
+                                MeterRegistry meters,
+                                @Value("${app.refresh.purge.enabled:true}") boolean enabled,
+                                @Value("${app.refresh.purge.batch-size:1000}") int batchSize) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+
+        this.purged = Counter.builder("refresh.tokens.purged")
+                .description("Expired refresh tokens deleted")
+                .register(meters);
+        this.runs = Timer.builder("refresh.tokens.purge")
+                .description("Duration of a full purge pass")
+                .register(meters);
+        // planner estimates, refreshed after each pass: exact counts would scan the table
+        Gauge.builder("refresh.tokens.table.rows", tableRows, AtomicLong::get).register(meters);
+        Gauge.builder("refresh.tokens.table.bytes", tableBytes, AtomicLong::get)
+                .baseUnit("bytes")
+                .register(meters);
+    }
+
+    @Scheduled(initialDelayString = "${app.refresh.purge.initial-delay:PT2M}",
+            fixedDelayString = "${app.refresh.purge.delay:PT15M}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        Timestamp expiredBefore = Timestamp.from(Instant.now());
+
+        long started = System.nanoTime();
+        int total = 0;
+        long lastId = 0;
+        while (true) {
+            long after = lastId;
+            Batch b = tx.execute(status -> jdbc.queryForObject(PURGE,
+                    (rs, i) -> new Batch(rs.getInt(1), rs.getLong(2)),
+                    after, expiredBefore, batchSize));
+            if (b == null || b.deleted() == 0) {
+                break;
+            }
+            total += b.deleted();
+            purged.increment(b.deleted());
+            lastId = b.lastId();
+            if (b.deleted() < batchSize) {
+                break;
+            }
+        }
+        runs.record(Duration.ofNanos(System.nanoTime() - started));
+        refreshTableSize();
+
+        if (total > 0) {
+            log.info("Purged {} refresh tokens", total);
+        }
+    }
+
+    private void refreshTableSize() {
+        jdbc.query(TABLE_SIZE, rs -> {
+            tableRows.set(rs.getLong(1));
+            tableBytes.set(rs.getLong(2));
+        });
+    }
+}
@@ -1,60 +1,177 @@
 package stucanii.backend.security;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import stucanii.backend.domain.RefreshToken;
 import stucanii.backend.domain.User;
 import stucanii.backend.repository.RefreshTokenRepository;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.time.Instant;
 import java.util.Base64;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * Refresh tokens rotate on every use. Presenting one that was already rotated or logged out means two
+ * parties hold it, so every live token of that user is revoked: whoever has the stolen one has to log in.
+ */
 @Service
 public class RefreshTokenService {
 
+    private static final Logger log = LoggerFactory.getLogger(RefreshTokenService.class);
+
     private final RefreshTokenRepository repo;
+    private final TransactionTemplate tx;
+    private final RevokedTokenFilter revokedTokens;
+    private final ApplicationEventPublisher events;
     private final long ttlSeconds;
 
     private final SecureRandom random = new SecureRandom();
     private final Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
 
+    // family revocations for replays the filter turned away; one at a time, each hash once
+    private final ThreadPoolExecutor reuseHandler = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(256), r -> {
+                Thread t = new Thread(r, "refresh-reuse");
+                t.setDaemon(true);
+                return t;
+            });
+    private final Set<String> pendingReuse = ConcurrentHashMap.newKeySet();
+
+    private final Counter reuseFromFilter;
+    private final Counter reuseFromDatabase;
+
     public RefreshTokenService(RefreshTokenRepository repo,
+                               TransactionTemplate tx,
+                               RevokedTokenFilter revokedTokens,
+                               ApplicationEventPublisher events,
+                               MeterRegistry meters,
                                @Value("${app.refresh.ttlSeconds}") long ttlSeconds) {
         this.repo = repo;
+        this.tx = tx;
+        this.revokedTokens = revokedTokens;
+        this.events = events;
         this.ttlSeconds = ttlSeconds;
+        this.reuseFromFilter = Counter.builder("refresh.tokens.reuse").tag("detected", "filter").register(meters);
+        this.reuseFromDatabase = Counter.builder("refresh.tokens.reuse").tag("detected", "database").register(meters);
+    }
+
+    @PreDestroy
+    void stop() {
+        reuseHandler.shutdownNow();
     }
 
     @Transactional
     public String issue(User user) {
         String token = generateToken();
         Instant exp = Instant.now().plusSeconds(ttlSeconds);
-        repo.save(new RefreshToken(token, user, exp));
+        repo.save(new RefreshToken(hash(token), user, exp));
         return token;
     }
 
-    @Transactional
     public User validateAndRotate(String refreshToken) {
-        RefreshToken rt = repo.findByToken(refreshToken)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid refresh token"));
-
-        if (rt.isRevoked() || rt.getExpiresAt().isBefore(Instant.now())) {
+        String hash = hash(refreshToken);
+        if (revokedTokens.mightContain(hash)) {
+            // a replay: refused without touching the database, the family is revoked in the background
+            reuseFromFilter.increment();
+            revokeFamilyLater(hash);
             throw new IllegalArgumentException("Invalid refresh token");
         }
 
-        // rotation: invalidează tokenul vechi
-        rt.revoke();
+        // no @Transactional: the filter check above must not take a connection, and a replay found
+        // here has to commit its family revocation while the request still fails
+        User user = tx.execute(status -> {
+            RefreshToken rt = repo.findByTokenHash(hash).orElse(null);
+            if (rt == null || rt.getExpiresAt().isBefore(Instant.now())) {
+                return null;
+            }
+            if (rt.isRevoked()) {
+                reuseFromDatabase.increment();
+                revokeFamily(rt.getUser().getId());
+                return null;
+            }
 
-        return rt.getUser(); // user e LAZY, dar suntem în tranzacție
+            // rotation: invalidează tokenul vechi
+            rt.revoke();
+            events.publishEvent(new RevokedTokenFilter.Revoked(List.of(hash)));
+            return rt.getUser(); // user e LAZY, dar suntem în tranzacție
+        });
+        if (user == null) {
+            throw new IllegalArgumentException("Invalid refresh token");
+        }
+        return user;
     }
 
-    @Transactional
     public void revoke(String refreshToken) {
-        RefreshToken rt = repo.findByToken(refreshToken)
-                .orElseThrow(() -> new IllegalArgumentException("Invalid refresh token"));
+        String hash = hash(refreshToken);
+        // no filter shortcut: a false positive would leave a live token usable after logout
+        tx.executeWithoutResult(status -> {
+            RefreshToken rt = repo.findByTokenHash(hash)
+                    .orElseThrow(() -> new IllegalArgumentException("Invalid refresh token"));
+            if (!rt.isRevoked()) {
+                rt.revoke();
+                events.publishEvent(new RevokedTokenFilter.Revoked(List.of(hash)));
+            }
+        });
+    }
 
-        rt.revoke();
+    // inside a transaction
+    private void revokeFamily(Integer userId) {
+        List<String> live = repo.findLiveHashesByUserId(userId);
+        repo.revokeAllByUserId(userId, Instant.now());
+        events.publishEvent(new RevokedTokenFilter.Revoked(live));
+        log.warn("Refresh token reuse for user {}: revoked {} live tokens", userId, live.size());
+    }
+
+    private void revokeFamilyLater(String hash) {
+        if (!pendingReuse.add(hash)) {
+            return;
+        }
+        try {
+            reuseHandler.execute(() -> {
+                try {
+                    // only if the row really is revoked: a false positive of the filter revokes nothing
+                    tx.executeWithoutResult(status -> repo.findByTokenHash(hash)
+                            .filter(RefreshToken::isRevoked)
+                            .ifPresent(rt -> revokeFamily(rt.getUser().getId())));
+                } catch (RuntimeException e) {
+                    log.warn("Could not revoke the token family after a refresh token replay", e);
+                } finally {
+                    pendingReuse.remove(hash);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingReuse.remove(hash);
+            log.warn("Refresh token replay backlog full; family revocation skipped");
+        }
+    }
+
+    /** Hex SHA-256, as stored in {@code refresh_tokens.token_hash}. */
+    public static String hash(String token) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
     }
 
     private String generateToken() {
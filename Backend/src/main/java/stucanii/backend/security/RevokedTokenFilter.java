@@ -0,0 +1,160 @@
+package stucanii.backend.security;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+
+/**
+ * Bloom filter of revoked refresh-token hashes, so a replayed token is turned away without a lookup.
+ * A miss proves nothing about tokens revoked on another node since the last rebuild; those still go to the
+ * database. A hit is wrong with probability {@code app.refresh.revoked-filter.false-positive-rate}, which
+ * is the odds of a valid refresh being refused.
+ * <p>
+ * Rebuilt from {@code refresh_tokens} at startup and every {@code rebuild-interval}, which also forgets
+ * the rows {@link RefreshTokenPurgeJob} deleted and resizes it to the current count.
+ */
+@Component
+public class RevokedTokenFilter {
+
+    private static final Logger log = LoggerFactory.getLogger(RevokedTokenFilter.class);
+
+    /** Published inside the revoking transaction; the hashes join the filter once it commits. */
+    public record Revoked(List<String> tokenHashes) {}
+
+    private final Consumer<Consumer<String>> revokedHashes;
+    private final int minCapacity;
+    private final double falsePositiveRate;
+
+    private volatile Bloom current;
+    // receives revocations made while a rebuild is reading the table
+    private volatile Bloom next;
+
+    @Autowired
+    public RevokedTokenFilter(JdbcTemplate jdbc,
+                              MeterRegistry meters,
+                              @Value("${app.refresh.revoked-filter.capacity:100000}") int minCapacity,
+                              @Value("${app.refresh.revoked-filter.false-positive-rate:0.000001}") double falsePositiveRate) {
+        this(sink -> jdbc.query("select token_hash from refresh_tokens where revoked and expires_at > now()",
+                        rs -> { sink.accept(rs.getString(1)); }),
+                minCapacity, falsePositiveRate);
+        Gauge.builder("refresh.tokens.revoked.filter.size", this, f -> f.current.size())
+                .description("Revoked refresh-token hashes in the filter")
+                .register(meters);
+    }
+
+    RevokedTokenFilter(Consumer<Consumer<String>> revokedHashes, int minCapacity, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("app.refresh.revoked-filter.false-positive-rate must be in (0, 1)");
+        }
+        this.revokedHashes = revokedHashes;
+        this.minCapacity = minCapacity;
+        this.falsePositiveRate = falsePositiveRate;
+        this.current = new Bloom(minCapacity, falsePositiveRate);
+    }
+
+    /** @param tokenHash as produced by {@link RefreshTokenService#hash} */
+    public boolean mightContain(String tokenHash) {
+        return current.mightContain(tokenHash);
+    }
+
+    public void add(String tokenHash) {
+        current.add(tokenHash);
+        Bloom pending = next;
+        if (pending != null) {
+            pending.add(tokenHash);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onRevoked(Revoked e) {
+        e.tokenHashes().forEach(this::add);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onStartup() {
+        rebuild();
+    }
+
+    @Scheduled(initialDelayString = "${app.refresh.revoked-filter.rebuild-interval:PT1H}",
+            fixedDelayString = "${app.refresh.revoked-filter.rebuild-interval:PT1H}")
+    public synchronized void rebuild() {
+        // room to double before the next rebuild without going past the configured rate
+        Bloom fresh = new Bloom((int) Math.min(Integer.MAX_VALUE / 64, Math.max(minCapacity, 2 * current.size())),
+                falsePositiveRate);
+        next = fresh;
+        try {
+            revokedHashes.accept(fresh::add);
+            current = fresh;
+            log.info("Revoked refresh-token filter rebuilt with {} hashes", fresh.size());
+        } catch (RuntimeException e) {
+            log.warn("Could not rebuild the revoked refresh-token filter, keeping the old one", e);
+        } finally {
+            next = null;
+        }
+    }
+
+    long size() {
+        return current.size();
+    }
+
+    static final class Bloom {
+        private final AtomicLongArray bits;
+        private final long bitCount;
+        private final int hashes;
+        private final AtomicLong inserted = new AtomicLong();
+
+        Bloom(int capacity, double falsePositiveRate) {
+            long m = (long) Math.ceil(-capacity * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2)));
+            this.bitCount = Math.max(64, m);
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * Math.log(2)));
+            this.bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        }
+
+        // the key is already a SHA-256: its first 128 bits give the two hashes of Kirsch-Mitzenmacher
+        void add(String tokenHash) {
+            long h1 = Long.parseUnsignedLong(tokenHash, 0, 16, 16);
+            long h2 = Long.parseUnsignedLong(tokenHash, 16, 32, 16);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old;
+                do {
+                    old = bits.get(word);
+                } while ((old & mask) == 0 && !bits.compareAndSet(word, old, old | mask));
+            }
+            inserted.incrementAndGet();
+        }
+
+        boolean mightContain(String tokenHash) {
+            long h1 = Long.parseUnsignedLong(tokenHash, 0, 16, 16);
+            long h2 = Long.parseUnsignedLong(tokenHash, 16, 32, 16);
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        long size() {
+            return inserted.get();
+        }
+    }
+}
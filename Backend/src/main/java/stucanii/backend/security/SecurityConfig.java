@@ -1,5 +1,7 @@
 package stucanii.backend.security;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.HttpMethod;
@@ -9,7 +11,9 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.oauth2.jwt.JwtDecoder;
 import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
 import stucanii.backend.config.CorsConfig;
 
 
@@ -17,16 +21,29 @@ import stucanii.backend.config.CorsConfig;
 @Configuration
 public class SecurityConfig {
 
+    // shared by the REST filter chain and the STOMP CONNECT frame
     @Bean
-    SecurityFilterChain securityFilterChain(HttpSecurity http) throws Exception {
+    CachingJwtAuthenticationManager jwtAuthenticationManager(JwtDecoder jwtDecoder,
+                                                             MeterRegistry meters,
+                                                             @Value("${app.jwt.verified-cache-size:10000}") int verifiedCacheSize) {
         JwtAuthenticationConverter jwtAuth = new JwtAuthenticationConverter();
         jwtAuth.setJwtGrantedAuthoritiesConverter(new JwtAuthConverter());
 
+        JwtAuthenticationProvider jwtProvider = new JwtAuthenticationProvider(jwtDecoder);
+        jwtProvider.setJwtAuthenticationConverter(jwtAuth);
+        return new CachingJwtAuthenticationManager(jwtProvider, meters, verifiedCacheSize);
+    }
+
+    @Bean
+    SecurityFilterChain securityFilterChain(HttpSecurity http,
+                                           CachingJwtAuthenticationManager jwtManager) throws Exception {
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .sessionManagement(sm -> sm.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/ws/**").permitAll()
+                        .requestMatchers("/ws/**", "/ws-native").permitAll()
+                        .requestMatchers("/actuator/health").permitAll()
+                        .requestMatchers("/actuator/**").hasRole("ADMIN")
                         .requestMatchers(HttpMethod.POST,
                                 "/api/auth/signup",
                                 "/api/auth/login",
@@ -36,7 +53,7 @@ public class SecurityConfig {
                         .anyRequest().authenticated()
                 )
                 .oauth2ResourceServer(oauth2 -> oauth2
-                        .jwt(jwt -> jwt.jwtAuthenticationConverter(jwtAuth))
+                        .jwt(jwt -> jwt.authenticationManager(jwtManager))
                 ).cors(Customizer.withDefaults());
 
         return http.build();
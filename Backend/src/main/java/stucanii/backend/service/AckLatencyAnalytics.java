@@ -0,0 +1,216 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import stucanii.backend.domain.AckLatencySketch;
+import stucanii.backend.repository.AckLatencySketchRepository;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Function;
+
+/**
+ * Time-to-acknowledge quantiles, overall and per psychologist, kept as {@link QuantileSketch}es so
+ * dashboards never aggregate over {@code panic_alerts}. Each node periodically merges the
+ * acknowledgements it saw since its last write into the {@code ack_latency_sketches} rows, under a row
+ * lock. The rows are built from the alert tables once, by the first node to start, up to a cutoff stored
+ * on the "all" row; acknowledgements before it are left to that backfill. A node's gauges show the rows
+ * as of its startup plus its own acknowledgements since.
+ */
+@Component
+public class AckLatencyAnalytics {
+
+    private static final Logger log = LoggerFactory.getLogger(AckLatencyAnalytics.class);
+
+    public static final String ALL = "all";
+    private static final String PSYCHOLOGIST = "psychologist:";
+    private static final double ACCURACY = 0.01;
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private static final String BACKFILL = """
+            select psychologist_id, extract(epoch from (acknowledged_at - created_at)) * 1000
+            from panic_alerts where acknowledged_at < ?
+            union all
+            select psychologist_id, extract(epoch from (acknowledged_at - created_at)) * 1000
+            from panic_alerts_archive where acknowledged_at < ?
+            """;
+
+    private record Ack(Integer psychologistId, double millis, Instant acknowledgedAt) {}
+
+    private final AckLatencySketchRepository repo;
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final MeterRegistry meters;
+
+    private final Map<String, QuantileSketch> sketches = new ConcurrentHashMap<>();
+    // acknowledgements not yet merged into the stored rows
+    private final Queue<Ack> pending = new ConcurrentLinkedQueue<>();
+    private volatile boolean loaded;
+    private volatile Instant backfilledUntil = Instant.EPOCH;
+
+    public AckLatencyAnalytics(AckLatencySketchRepository repo, JdbcTemplate jdbc, TransactionTemplate tx,
+                               MeterRegistry meters) {
+        this.repo = repo;
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.meters = meters;
+    }
+
+    public static String psychologistScope(Integer psychologistId) {
+        return PSYCHOLOGIST + psychologistId;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        tx.executeWithoutResult(status -> {
+            // nodes starting together queue here; only the first finds the table empty
+            jdbc.execute("lock table ack_latency_sketches in exclusive mode");
+            if (repo.count() == 0) {
+                backfill(Instant.now());
+            }
+        });
+        List<AckLatencySketch> stored = repo.findAll();
+        synchronized (sketches) {
+            for (AckLatencySketch s : stored) {
+                if (ALL.equals(s.getScope()) && s.getBackfilledUntil() != null) {
+                    backfilledUntil = s.getBackfilledUntil();
+                }
+                sketch(s.getScope()).merge(QuantileSketch.fromBytes(s.getData()));
+            }
+            // acknowledged since startup and not part of the backfill
+            for (Ack ack : pending) {
+                if (counted(ack)) {
+                    add(ack, this::sketch);
+                }
+            }
+            loaded = true;
+        }
+    }
+
+    private void backfill(Instant cutoff) {
+        Map<String, QuantileSketch> built = new HashMap<>();
+        long[] rows = {0};
+        jdbc.query(BACKFILL, rs -> {
+            add(new Ack(rs.getInt(1), rs.getDouble(2), cutoff),
+                    scope -> built.computeIfAbsent(scope, k -> new QuantileSketch(ACCURACY)));
+            rows[0]++;
+        }, Timestamp.from(cutoff), Timestamp.from(cutoff));
+        // always written: it carries the cutoff
+        built.computeIfAbsent(ALL, k -> new QuantileSketch(ACCURACY));
+
+        List<AckLatencySketch> created = new ArrayList<>(built.size());
+        built.forEach((scope, sketch) -> {
+            AckLatencySketch row = new AckLatencySketch(scope, sketch.toBytes(), sketch.count());
+            if (ALL.equals(scope)) {
+                row.markBackfilled(cutoff);
+            }
+            created.add(row);
+        });
+        repo.saveAll(created);
+        log.info("Built time-to-acknowledge sketches from {} acknowledged alerts", rows[0]);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onAcknowledged(Acknowledged e) {
+        Ack ack = new Ack(e.psychologistId(), Duration.between(e.createdAt(), e.acknowledgedAt()).toMillis(),
+                e.acknowledgedAt());
+        synchronized (sketches) {
+            pending.add(ack);
+            if (loaded && counted(ack)) {
+                add(ack, this::sketch);
+            }
+        }
+    }
+
+    // the backfill already holds everything acknowledged before its cutoff, on any node
+    private boolean counted(Ack ack) {
+        return !ack.acknowledgedAt().isBefore(backfilledUntil);
+    }
+
+    private static void add(Ack ack, Function<String, QuantileSketch> sketchFor) {
+        sketchFor.apply(ALL).add(ack.millis());
+        sketchFor.apply(psychologistScope(ack.psychologistId())).add(ack.millis());
+    }
+
+    private QuantileSketch sketch(String scope) {
+        return sketches.computeIfAbsent(scope, s -> {
+            QuantileSketch sketch = new QuantileSketch(ACCURACY);
+            for (double q : QUANTILES) {
+                Gauge.builder("panic.ack.latency", sketch, k -> k.quantile(q))
+                        .description("Time from panic alert to acknowledgement, by quantile")
+                        .baseUnit("milliseconds")
+                        .tag("scope", s)
+                        .tag("quantile", String.valueOf(q))
+                        .register(meters);
+            }
+            return sketch;
+        });
+    }
+
+    @Scheduled(initialDelayString = "${app.panic.analytics.persist-interval:PT1M}",
+            fixedDelayString = "${app.panic.analytics.persist-interval:PT1M}")
+    @PreDestroy
+    public void persist() {
+        if (!loaded) {
+            return;
+        }
+        List<Ack> batch = new ArrayList<>();
+        for (Ack ack = pending.poll(); ack != null; ack = pending.poll()) {
+            batch.add(ack);
+        }
+        Map<String, QuantileSketch> deltas = new HashMap<>();
+        for (Ack ack : batch) {
+            if (counted(ack)) {
+                add(ack, scope -> deltas.computeIfAbsent(scope, k -> new QuantileSketch(ACCURACY)));
+            }
+        }
+        if (deltas.isEmpty()) {
+            return;
+        }
+        try {
+            tx.executeWithoutResult(status -> {
+                byte[] empty = new QuantileSketch(ACCURACY).toBytes();
+                deltas.keySet().forEach(scope -> repo.insertIfAbsent(scope, empty));
+                for (AckLatencySketch row : repo.findForUpdate(deltas.keySet())) {
+                    QuantileSketch merged = QuantileSketch.fromBytes(row.getData());
+                    merged.merge(deltas.get(row.getScope()));
+                    row.update(merged.toBytes(), merged.count());
+                }
+            });
+        } catch (RuntimeException e) {
+            pending.addAll(batch);
+            log.warn("Could not persist time-to-acknowledge sketches", e);
+        }
+    }
+
+    /** Current quantiles per scope, in milliseconds. */
+    public Map<String, Stats> snapshot() {
+        Map<String, Stats> out = new HashMap<>();
+        sketches.forEach((scope, s) -> out.put(scope,
+                new Stats(s.count(), s.quantile(0.5), s.quantile(0.95), s.quantile(0.99))));
+        return out;
+    }
+
+    public record Stats(long count, double p50Millis, double p95Millis, double p99Millis) {}
+
+    public record Acknowledged(Integer psychologistId, Instant createdAt, Instant acknowledgedAt) {}
+}
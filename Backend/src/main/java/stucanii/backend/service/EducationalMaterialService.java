@@ -5,12 +5,25 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import stucanii.backend.domain.EducationalMaterial;
+import stucanii.backend.domain.MaterialLibraryItem;
 import stucanii.backend.domain.Role;
 import stucanii.backend.domain.User;
 import stucanii.backend.repository.EducationalMaterialRepository;
+import stucanii.backend.repository.EducationalMaterialRepository.MaterialSummary;
 import stucanii.backend.repository.UserRepository;
 import stucanii.backend.security.FileCryptoService;
-
+import stucanii.backend.security.IdentityResolver;
+import stucanii.backend.storage.BlobCleanup;
+import stucanii.backend.storage.MaterialBlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.time.Instant;
 import java.util.List;
 
 @Service
@@ -19,19 +32,29 @@ public class EducationalMaterialService {
     private final UserRepository users;
     private final EducationalMaterialRepository repo;
     private final FileCryptoService crypto;
-
-    public EducationalMaterialService(UserRepository users, EducationalMaterialRepository repo, FileCryptoService crypto) {
+    private final MaterialBlobStore blobs;
+    private final BlobCleanup cleanup;
+    private final MaterialLibraryService library;
+    private final IdentityResolver identities;
+
+    public EducationalMaterialService(UserRepository users, EducationalMaterialRepository repo, FileCryptoService crypto,
+                                      MaterialBlobStore blobs, BlobCleanup cleanup, MaterialLibraryService library,
+                                      IdentityResolver identities) {
         this.users = users;
         this.repo = repo;
         this.crypto = crypto;
+        this.blobs = blobs;
+        this.cleanup = cleanup;
+        this.library = library;
+        this.identities = identities;
     }
 
     @Transactional
-    public Integer uploadForClient(String psychologistUsername, Integer clientId, String filename, String contentType, byte[] bytes) {
-        User psych = users.findByUsername(psychologistUsername)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+    public Integer uploadForClient(String psychologistUsername, Integer clientId, String filename, String contentType,
+                                   InputStream content, long declaredSize) throws IOException {
+        IdentityResolver.Identity psych = identities.resolve(psychologistUsername);
 
-        if (psych.getRole() != Role.PSYCHOLOGIST) {
+        if (psych.role() != Role.PSYCHOLOGIST) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only psychologist can upload materials");
         }
 
@@ -42,35 +65,24 @@ public class EducationalMaterialService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Target is not a client");
         }
 
-        if (client.getPsychologist() == null || !client.getPsychologist().getId().equals(psych.getId())) {
+        if (client.getPsychologist() == null || !client.getPsychologist().getId().equals(psych.id())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "This client is not assigned to you");
         }
 
-        byte[] enc = crypto.encrypt(bytes);
-
-        EducationalMaterial m = new EducationalMaterial(
-                client,
-                psych,
-                filename,
-                contentType,
-                bytes.length,
-                enc
-        );
-
-        repo.save(m);
-        return m.getId();
+        // goes through the library, so a file this psychologist already stored is not stored again
+        User owner = client.getPsychologist();
+        MaterialLibraryItem item = library.store(owner, filename, contentType, content);
+        return library.assign(owner, item, List.of(client), filename, contentType).get(0);
     }
 
     @Transactional(readOnly = true)
-    public List<EducationalMaterial> listForClientAsPsychologist(String psychologistUsername, Integer clientId) {
-        return repo.findByPsychologist_UsernameAndClient_IdOrderByUploadedAtDesc(psychologistUsername, clientId);
+    public List<MaterialSummary> listForClientAsPsychologist(String psychologistUsername, Integer clientId) {
+        return repo.findSummariesByPsychologistAndClient(psychologistUsername, clientId);
     }
 
     @Transactional(readOnly = true)
-    public List<EducationalMaterial> listForSelfClient(String clientUsername) {
-        User client = users.findByUsername(clientUsername)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
-        return repo.findByClient_IdOrderByUploadedAtDesc(client.getId());
+    public List<MaterialSummary> listForSelfClient(String clientUsername) {
+        return repo.findSummariesByClientId(identities.resolve(clientUsername).id());
     }
 
     @Transactional(readOnly = true)
@@ -82,7 +94,7 @@ public class EducationalMaterialService {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your material");
         }
 
-        return new DownloadedMaterial(m.getOriginalFilename(), m.getContentType(), crypto.decrypt(m.getEncryptedData()));
+        return toDownload(m);
     }
 
     @Transactional
@@ -94,23 +106,104 @@ public class EducationalMaterialService {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your material");
         }
 
+        if (m.getLibraryItem() != null) {
+            library.release(m);
+            return;
+        }
         repo.delete(m);
+        if (m.getStorageKey() != null) {
+            cleanup.deleteAfterCommit(m.getStorageKey());
+        }
     }
 
     @Transactional(readOnly = true)
     public DownloadedMaterial downloadAsClient(String clientUsername, Integer materialId) {
-        User client = users.findByUsername(clientUsername)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        IdentityResolver.Identity client = identities.resolve(clientUsername);
 
         EducationalMaterial m = repo.findById(materialId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Material not found"));
 
-        if (!m.getClient().getId().equals(client.getId())) {
+        if (!m.getClient().getId().equals(client.id())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your material");
         }
 
-        return new DownloadedMaterial(m.getOriginalFilename(), m.getContentType(), crypto.decrypt(m.getEncryptedData()));
+        return toDownload(m);
+    }
+
+    private DownloadedMaterial toDownload(EducationalMaterial m) {
+        MaterialContent content;
+        String etag;
+        if (m.getStorageKey() != null) {
+            content = new BlobContent(m.getStorageKey(), m.getSizeBytes());
+            // the key is a hash of the stored bytes, so it changes whenever the content does
+            etag = "\"" + m.getStorageKey() + "\"";
+        } else {
+            // not migrated out of the bytea column yet; materials are immutable once uploaded
+            content = new InlineContent(m.getEncryptedData(), m.getFormatVersion());
+            etag = "\"m" + m.getId() + "-" + m.getUploadedAt().toEpochMilli() + "\"";
+        }
+        return new DownloadedMaterial(m.getOriginalFilename(), m.getContentType(), m.getSizeBytes(),
+                etag, m.getUploadedAt(), content);
+    }
+
+    private class BlobContent implements MaterialContent {
+        private final String key;
+        private final long size;
+
+        BlobContent(String key, long size) {
+            this.key = key;
+            this.size = size;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            try (SeekableByteChannel ch = blobs.open(key)) {
+                crypto.decrypt(Channels.newInputStream(ch), out);
+            }
+        }
+
+        @Override
+        public void writeRange(long start, long endInclusive, OutputStream out) throws IOException {
+            try (SeekableByteChannel ch = blobs.open(key)) {
+                crypto.decryptRange(ch, size, start, endInclusive, out);
+            }
+        }
+    }
+
+    private class InlineContent implements MaterialContent {
+        private final byte[] data;
+        private final int formatVersion;
+
+        InlineContent(byte[] data, int formatVersion) {
+            this.data = data;
+            this.formatVersion = formatVersion;
+        }
+
+        @Override
+        public void writeTo(OutputStream out) throws IOException {
+            if (formatVersion == FileCryptoService.FORMAT_SEGMENTED) {
+                crypto.decrypt(new ByteArrayInputStream(data), out);
+            } else {
+                out.write(crypto.decrypt(data));
+            }
+        }
+
+        @Override
+        public void writeRange(long start, long endInclusive, OutputStream out) throws IOException {
+            ByteArrayOutputStream plain = new ByteArrayOutputStream();
+            writeTo(plain);
+            out.write(plain.toByteArray(), (int) start, (int) (endInclusive - start + 1));
+        }
+    }
+
+    /** Decrypted file body, written lazily so it can go straight to the response stream. */
+    public interface MaterialContent {
+        void writeTo(OutputStream out) throws IOException;
+
+        /** Writes plaintext bytes {@code start..endInclusive}, decrypting only what covers them where possible. */
+        void writeRange(long start, long endInclusive, OutputStream out) throws IOException;
     }
 
-    public record DownloadedMaterial(String filename, String contentType, byte[] bytes) {}
+    public record DownloadedMaterial(String filename, String contentType, long sizeBytes,
+                                     String etag, Instant lastModified, MaterialContent content) {}
 }
@@ -6,12 +6,15 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import stucanii.backend.api.dto.EmotionLogItem;
 import stucanii.backend.domain.EmotionLog;
-import stucanii.backend.domain.User;
+import stucanii.backend.domain.Role;
 import stucanii.backend.repository.EmotionLogRepository;
 import stucanii.backend.repository.UserRepository;
 import stucanii.backend.security.CryptoService;
+import stucanii.backend.security.IdentityResolver;
+import stucanii.backend.security.IdentityResolver.Identity;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -20,15 +23,18 @@ public class EmotionLogService {
     private final EmotionLogRepository emotionLogRepository;
     private final UserRepository userRepository;
     private final CryptoService cryptoService;
+    private final IdentityResolver identities;
 
     public EmotionLogService(
             EmotionLogRepository emotionLogRepository,
             UserRepository userRepository,
-            CryptoService cryptoService
+            CryptoService cryptoService,
+            IdentityResolver identities
     ) {
         this.emotionLogRepository = emotionLogRepository;
         this.userRepository = userRepository;
         this.cryptoService = cryptoService;
+        this.identities = identities;
     }
 
     @Transactional
@@ -40,18 +46,17 @@ public class EmotionLogService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Text too long (max 5000 chars)");
         }
 
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        Identity user = identities.resolve(username);
 
         // IMPORTANT: only CLIENT can write emotions (as requested)
-        if (user.getRole() != stucanii.backend.domain.Role.CLIENT) {
+        if (user.role() != Role.CLIENT) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only CLIENT can create emotion logs");
         }
 
         var enc = cryptoService.encrypt(text.trim());
 
         EmotionLog log = new EmotionLog(
-                user,
+                userRepository.getReferenceById(user.id()),
                 Instant.now(),
                 enc.iv(),
                 enc.ciphertext()
@@ -63,19 +68,22 @@ public class EmotionLogService {
 
     @Transactional(readOnly = true)
     public List<EmotionLogItem> latestForUser(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        Identity user = identities.resolve(username);
 
-        if (user.getRole() != stucanii.backend.domain.Role.CLIENT) {
+        if (user.role() != Role.CLIENT) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only CLIENT can view emotion logs");
         }
 
-        return emotionLogRepository.findTop50ByUserIdOrderByCreatedAtDesc(user.getId()).stream()
-                .map(e -> new EmotionLogItem(
-                        e.getId(),
-                        e.getCreatedAt(),
-                        cryptoService.decrypt(e.getIv(), e.getCiphertext())
-                ))
-                .toList();
+        List<EmotionLog> logs = emotionLogRepository.findTop50ByUserIdOrderByCreatedAtDesc(user.id());
+        List<String> texts = cryptoService.decryptAll(logs.stream()
+                .map(e -> new CryptoService.EncryptedPayload(e.getIv(), e.getCiphertext()))
+                .toList());
+
+        List<EmotionLogItem> items = new ArrayList<>(logs.size());
+        for (int i = 0; i < logs.size(); i++) {
+            EmotionLog e = logs.get(i);
+            items.add(new EmotionLogItem(e.getId(), e.getCreatedAt(), texts.get(i)));
+        }
+        return items;
     }
 }
\ No newline at end of file
@@ -0,0 +1,133 @@
+package stucanii.backend.service;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.Consumer;
+import java.util.function.LongSupplier;
+
+/**
+ * Hashed timer wheel: deadlines are hashed by tick into a fixed ring of buckets, so scheduling and
+ * cancelling are O(1) and a single ticking thread serves any number of pending deadlines.
+ * Deadlines fire at the end of the tick they fall in, i.e. up to one tick late, never early.
+ * <p>
+ * {@link #schedule} and {@link #cancel} may be called from any thread; {@link #advance} must only be
+ * called from one thread at a time (it is synchronized). {@code onExpire} runs on the advancing
+ * thread and should hand real work off.
+ */
+public class HashedTimerWheel<K> {
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timeout<K>>> buckets;
+    private final LongSupplier clock;
+    private final Consumer<K> onExpire;
+    private final long startMillis;
+
+    private final Queue<Timeout<K>> incoming = new ConcurrentLinkedQueue<>();
+    private final Map<K, Timeout<K>> pending = new ConcurrentHashMap<>();
+
+    // next tick to process; only touched under advance()
+    private long tick;
+
+    public HashedTimerWheel(long tickMillis, int wheelSize, LongSupplier clock, Consumer<K> onExpire) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("tickMillis must be positive");
+        }
+        if (wheelSize <= 0 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize must be a power of two");
+        }
+        this.tickMillis = tickMillis;
+        this.mask = wheelSize - 1;
+        this.buckets = new ArrayList<>(wheelSize);
+        for (int i = 0; i < wheelSize; i++) {
+            buckets.add(new ArrayList<>());
+        }
+        this.clock = clock;
+        this.onExpire = onExpire;
+        this.startMillis = clock.getAsLong();
+    }
+
+    /** Schedules {@code key} to expire at {@code deadlineMillis}, replacing any deadline it already had. */
+    public void schedule(K key, long deadlineMillis) {
+        Timeout<K> t = new Timeout<>(key, deadlineMillis);
+        Timeout<K> previous = pending.put(key, t);
+        if (previous != null) {
+            previous.cancelled = true;
+        }
+        incoming.add(t);
+    }
+
+    /** @return whether {@code key} had a pending deadline */
+    public boolean cancel(K key) {
+        Timeout<K> t = pending.remove(key);
+        if (t == null) {
+            return false;
+        }
+        t.cancelled = true;
+        return true;
+    }
+
+    public int size() {
+        return pending.size();
+    }
+
+    /** Processes every tick that has fully elapsed. @return the number of keys that expired */
+    public synchronized int advance() {
+        long now = clock.getAsLong();
+        int expired = 0;
+        while (startMillis + (tick + 1) * tickMillis <= now) {
+            transferIncoming();
+            expired += expireBucket(buckets.get((int) (tick & mask)));
+            tick++;
+        }
+        return expired;
+    }
+
+    private void transferIncoming() {
+        Timeout<K> t;
+        while ((t = incoming.poll()) != null) {
+            if (t.cancelled) {
+                continue;
+            }
+            long due = Math.max((t.deadlineMillis - startMillis) / tickMillis, tick);
+            t.remainingRounds = (due - tick) / buckets.size();
+            buckets.get((int) (due & mask)).add(t);
+        }
+    }
+
+    private int expireBucket(List<Timeout<K>> bucket) {
+        int expired = 0;
+        for (Iterator<Timeout<K>> it = bucket.iterator(); it.hasNext(); ) {
+            Timeout<K> t = it.next();
+            if (t.cancelled) {
+                it.remove();
+            } else if (t.remainingRounds <= 0) {
+                it.remove();
+                if (pending.remove(t.key, t)) {
+                    expired++;
+                    onExpire.accept(t.key);
+                }
+            } else {
+                t.remainingRounds--;
+            }
+        }
+        return expired;
+    }
+
+    private static final class Timeout<K> {
+        final K key;
+        final long deadlineMillis;
+        long remainingRounds;
+        volatile boolean cancelled;
+
+        Timeout(K key, long deadlineMillis) {
+            this.key = key;
+            this.deadlineMillis = deadlineMillis;
+        }
+    }
+}
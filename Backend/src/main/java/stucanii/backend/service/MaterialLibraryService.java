@@ -0,0 +1,235 @@
+package stucanii.backend.service;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import stucanii.backend.domain.EducationalMaterial;
+import stucanii.backend.domain.MaterialLibraryItem;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.EducationalMaterialRepository;
+import stucanii.backend.repository.MaterialLibraryItemRepository;
+import stucanii.backend.repository.UserRepository;
+import stucanii.backend.security.FileCryptoService;
+import stucanii.backend.storage.BlobCleanup;
+import stucanii.backend.storage.MaterialBlobStore;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Psychologist-owned material library. Each distinct file (by keyed plaintext hash) is encrypted
+ * and stored once per psychologist; client materials reference it. An item uploaded to the library
+ * itself stays when its last assignment goes away and is freed only when the psychologist deletes it,
+ * which is refused while it is still assigned; one created by uploading a client's material is freed
+ * with its last assignment.
+ */
+@Service
+public class MaterialLibraryService {
+
+    private static final int MAX_CLIENTS_PER_ASSIGN = 500;
+    // an item deleted between our insert and our lock is inserted again; more than this is not a race
+    private static final int ADOPT_ATTEMPTS = 3;
+
+    private final UserRepository users;
+    private final MaterialLibraryItemRepository library;
+    private final EducationalMaterialRepository materials;
+    private final FileCryptoService crypto;
+    private final MaterialBlobStore blobs;
+    private final BlobCleanup cleanup;
+
+    public MaterialLibraryService(UserRepository users,
+                                  MaterialLibraryItemRepository library,
+                                  EducationalMaterialRepository materials,
+                                  FileCryptoService crypto,
+                                  MaterialBlobStore blobs,
+                                  BlobCleanup cleanup) {
+        this.users = users;
+        this.library = library;
+        this.materials = materials;
+        this.crypto = crypto;
+        this.blobs = blobs;
+        this.cleanup = cleanup;
+    }
+
+    @Transactional
+    public MaterialLibraryItem upload(String psychologistUsername, String filename, String contentType, InputStream content)
+            throws IOException {
+        MaterialLibraryItem item = store(requirePsychologist(psychologistUsername), filename, contentType, content);
+        item.markCurated();
+        return item;
+    }
+
+    @Transactional(readOnly = true)
+    public List<MaterialLibraryItem> list(String psychologistUsername) {
+        return library.findByPsychologist_UsernameOrderByCreatedAtDesc(psychologistUsername);
+    }
+
+    @Transactional
+    public List<Integer> assignToClients(String psychologistUsername, Integer itemId, List<Integer> clientIds) {
+        User psych = requirePsychologist(psychologistUsername);
+
+        if (clientIds == null || clientIds.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "clientIds is required");
+        }
+        List<Integer> ids = new ArrayList<>(new LinkedHashSet<>(clientIds));
+        if (ids.size() > MAX_CLIENTS_PER_ASSIGN) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "At most " + MAX_CLIENTS_PER_ASSIGN + " clients per request");
+        }
+
+        MaterialLibraryItem item = library.findById(itemId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Library item not found"));
+        if (!item.getPsychologist().getId().equals(psych.getId())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your library item");
+        }
+
+        Map<Integer, User> byId = new HashMap<>();
+        for (User u : users.findAllById(ids)) {
+            byId.put(u.getId(), u);
+        }
+        List<User> clients = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            User client = byId.get(id);
+            if (client == null) {
+                throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Client " + id + " not found");
+            }
+            if (client.getRole() != Role.CLIENT) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "User " + id + " is not a client");
+            }
+            if (client.getPsychologist() == null || !client.getPsychologist().getId().equals(psych.getId())) {
+                throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Client " + id + " is not assigned to you");
+            }
+            clients.add(client);
+        }
+
+        return assign(psych, item, clients);
+    }
+
+    @Transactional
+    public void delete(String psychologistUsername, Integer itemId) {
+        MaterialLibraryItem item = library.findForUpdate(itemId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Library item not found"));
+        if (!item.getPsychologist().getUsername().equalsIgnoreCase(psychologistUsername)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your library item");
+        }
+        if (item.getRefCount() > 0) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Still assigned to " + item.getRefCount() + " client(s)");
+        }
+        library.delete(item);
+        cleanup.deleteAfterCommit(item.getStorageKey());
+    }
+
+    /** Encrypts {@code content} into the library, or returns the existing item holding the same file. */
+    @Transactional
+    public MaterialLibraryItem store(User psych, String filename, String contentType, InputStream content) throws IOException {
+        FileCryptoService.EncryptedFile[] file = new FileCryptoService.EncryptedFile[1];
+        MaterialBlobStore.StoredBlob blob = blobs.write(out -> file[0] = crypto.encryptAndHash(content, out));
+        return adopt(psych, filename, contentType, file[0].sizeBytes(), file[0].contentHash(), blob.key());
+    }
+
+    /** Adds an already encrypted blob (e.g. a finished resumable upload) to the library. */
+    @Transactional
+    public MaterialLibraryItem storeEncrypted(User psych, String filename, String contentType, long sizeBytes,
+                                              String storageKey) throws IOException {
+        String hash;
+        try (SeekableByteChannel ch = blobs.open(storageKey)) {
+            hash = crypto.contentHash(Channels.newInputStream(ch));
+        }
+        return adopt(psych, filename, contentType, sizeBytes, hash, storageKey);
+    }
+
+    /**
+     * Creates one material per client that does not have this item yet and adds the references.
+     * Returns the material ids in client order, including already existing assignments.
+     */
+    @Transactional
+    public List<Integer> assign(User psych, MaterialLibraryItem item, List<User> clients) {
+        return assign(psych, item, clients, item.getOriginalFilename(), item.getContentType());
+    }
+
+    /** As {@link #assign(User, MaterialLibraryItem, List)}, naming new materials as uploaded rather than as the item. */
+    @Transactional
+    public List<Integer> assign(User psych, MaterialLibraryItem item, List<User> clients,
+                                String filename, String contentType) {
+        MaterialLibraryItem locked = library.findForUpdate(item.getId())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Library item not found"));
+
+        Map<Integer, Integer> existing = new HashMap<>();
+        for (EducationalMaterialRepository.Assignment a : materials.findAssignmentsByLibraryItemId(locked.getId())) {
+            existing.put(a.getClientId(), a.getMaterialId());
+        }
+
+        List<EducationalMaterial> created = new ArrayList<>();
+        for (User client : clients) {
+            if (!existing.containsKey(client.getId())) {
+                created.add(new EducationalMaterial(client, psych, locked, filename, contentType,
+                        FileCryptoService.FORMAT_SEGMENTED));
+            }
+        }
+        for (EducationalMaterial m : materials.saveAll(created)) {
+            existing.put(m.getClient().getId(), m.getId());
+        }
+        locked.addReferences(created.size());
+
+        return clients.stream().map(c -> existing.get(c.getId())).toList();
+    }
+
+    /**
+     * Deletes a library-backed material. The last assignment of an item that was not uploaded to the
+     * library itself takes the item and its blob with it.
+     */
+    @Transactional
+    public void release(EducationalMaterial m) {
+        MaterialLibraryItem item = library.findForUpdate(m.getLibraryItem().getId())
+                .orElseThrow(() -> new IllegalStateException("Library item missing for material " + m.getId()));
+
+        materials.delete(m);
+        item.removeReference();
+        if (item.getRefCount() <= 0 && !item.isCurated()) {
+            library.delete(item);
+            cleanup.deleteAfterCommit(item.getStorageKey());
+        }
+    }
+
+    // returns the item locked, so a concurrent delete waits for this transaction and sees the new references
+    private MaterialLibraryItem adopt(User psych, String filename, String contentType, long sizeBytes,
+                                      String contentHash, String storageKey) throws IOException {
+        for (int attempt = 0; attempt < ADOPT_ATTEMPTS; attempt++) {
+            boolean inserted = library.insertIfAbsent(psych.getId(), filename, contentType, sizeBytes,
+                    contentHash, storageKey) > 0;
+            Optional<MaterialLibraryItem> item = library.findByContentHashForUpdate(psych.getId(), contentHash);
+            if (item.isEmpty()) {
+                // deleted after our insert found it
+                continue;
+            }
+            if (inserted) {
+                cleanup.deleteIfRolledBack(storageKey);
+            } else if (!item.get().getStorageKey().equals(storageKey)) {
+                // same file already stored for this psychologist: keep that copy, drop the new one
+                blobs.delete(storageKey);
+            }
+            return item.get();
+        }
+        blobs.delete(storageKey);
+        throw new ResponseStatusException(HttpStatus.CONFLICT, "Library item is being deleted, try again");
+    }
+
+    private User requirePsychologist(String username) {
+        User psych = users.findByUsername(username)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        if (psych.getRole() != Role.PSYCHOLOGIST) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only psychologist can manage materials");
+        }
+        return psych;
+    }
+}
@@ -0,0 +1,268 @@
+package stucanii.backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import stucanii.backend.domain.MaterialLibraryItem;
+import stucanii.backend.domain.MaterialUploadSession;
+import stucanii.backend.domain.UploadSessionStatus;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.MaterialUploadSessionRepository;
+import stucanii.backend.security.FileCryptoService;
+import stucanii.backend.storage.BlobCleanup;
+import stucanii.backend.storage.MaterialBlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Resumable uploads: the client declares the file size, then sends fixed-size numbered chunks.
+ * Each chunk is encrypted once it has fully arrived and appended to a staging blob; the session row records
+ * how many bytes are durable, which is where an interrupted upload resumes.
+ */
+@Service
+public class MaterialUploadService {
+
+    private final MaterialUploadSessionRepository sessions;
+    private final PsychologistClientsService access;
+    private final MaterialLibraryService library;
+    private final FileCryptoService crypto;
+    private final MaterialBlobStore blobs;
+    private final BlobCleanup cleanup;
+    private final int chunkSize;
+    private final long maxBytes;
+    private final Duration sessionTtl;
+    private final Duration chunkLease;
+    private final TransactionTemplate tx;
+
+    public MaterialUploadService(MaterialUploadSessionRepository sessions,
+                                 PsychologistClientsService access,
+                                 MaterialLibraryService library,
+                                 FileCryptoService crypto,
+                                 MaterialBlobStore blobs,
+                                 BlobCleanup cleanup,
+                                 TransactionTemplate tx,
+                                 @Value("${app.materials.uploads.chunk-size:1048576}") int chunkSize,
+                                 @Value("${app.materials.uploads.max-bytes:2147483648}") long maxBytes,
+                                 @Value("${app.materials.uploads.session-ttl:PT24H}") Duration sessionTtl,
+                                 @Value("${app.materials.uploads.chunk-lease:PT2M}") Duration chunkLease) {
+        if (chunkSize <= 0 || chunkSize % FileCryptoService.SEGMENT_SIZE != 0) {
+            throw new IllegalArgumentException("app.materials.uploads.chunk-size must be a multiple of "
+                    + FileCryptoService.SEGMENT_SIZE);
+        }
+        this.sessions = sessions;
+        this.access = access;
+        this.library = library;
+        this.crypto = crypto;
+        this.blobs = blobs;
+        this.cleanup = cleanup;
+        this.chunkSize = chunkSize;
+        this.maxBytes = maxBytes;
+        this.sessionTtl = sessionTtl;
+        this.chunkLease = chunkLease;
+        this.tx = tx;
+    }
+
+    @Transactional
+    public MaterialUploadSession start(String psychologistUsername, Integer clientId, String filename,
+                                       String contentType, long totalBytes) throws IOException {
+        if (totalBytes < 0 || totalBytes > maxBytes) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "File size must be between 0 and " + maxBytes + " bytes");
+        }
+        User client = access.requireMyClient(psychologistUsername, clientId);
+
+        byte[] header = crypto.newHeader();
+        MaterialUploadSession session = new MaterialUploadSession(
+                UUID.randomUUID().toString(),
+                client.getPsychologist(),
+                client,
+                filename,
+                contentType,
+                totalBytes,
+                chunkSize,
+                header
+        );
+
+        try (OutputStream out = blobs.appendStaging(session.getId(), 0)) {
+            out.write(header);
+        }
+        cleanup.deleteStagingIfRolledBack(session.getId());
+
+        return sessions.save(session);
+    }
+
+    /**
+     * Reads and checks the whole chunk before sealing it, outside any transaction; the session row is locked
+     * only to claim the chunk and then to acknowledge it. A chunk index is sealed with one plaintext only:
+     * a retry must resend the same bytes, since other bytes under the same nonces would break AES-GCM.
+     */
+    public MaterialUploadSession putChunk(String psychologistUsername, String sessionId, long index, InputStream body)
+            throws IOException {
+        MaterialUploadSession current = tx.execute(status -> requireOwned(psychologistUsername, sessionId));
+        if (index < current.getNextChunkIndex()) {
+            // already acknowledged (e.g. the response to a retried chunk was lost)
+            return current;
+        }
+        requireNext(current, index);
+
+        long expected = Math.min(current.getChunkSize(), current.getTotalBytes() - current.getReceivedBytes());
+        byte[] chunk = body.readNBytes((int) expected);
+        if (chunk.length != expected || body.read() != -1) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Chunk " + index + " must be " + expected + " bytes");
+        }
+        byte[] digest = sha256(chunk);
+        String writer = UUID.randomUUID().toString();
+
+        MaterialUploadSession s = tx.execute(status -> {
+            MaterialUploadSession locked = requireOpenSession(psychologistUsername, sessionId);
+            requireNext(locked, index);
+            Instant now = Instant.now();
+            if (locked.getPendingChunk() != null && locked.getPendingChunk() == index) {
+                if (!MessageDigest.isEqual(digest, locked.getPendingDigest())) {
+                    throw new ResponseStatusException(HttpStatus.CONFLICT,
+                            "Chunk " + index + " was already sent with other content; abort and restart the upload");
+                }
+                if (locked.getPendingWriter() != null && now.isBefore(locked.getPendingSince().plus(chunkLease))) {
+                    throw new ResponseStatusException(HttpStatus.CONFLICT, "Chunk " + index + " is still being written");
+                }
+            }
+            locked.claim(index, digest, writer, now);
+            return locked;
+        });
+
+        long received = s.getReceivedBytes();
+        try (OutputStream out = blobs.appendStaging(s.getId(), stagedBytes(received))) {
+            crypto.encryptSegments(s.getCryptoHeader(), received / FileCryptoService.SEGMENT_SIZE,
+                    new ByteArrayInputStream(chunk), expected, received + expected == s.getTotalBytes(), out);
+        } catch (IOException | RuntimeException e) {
+            // the partial write past the acknowledged offset is discarded by the next append
+            tx.executeWithoutResult(status -> sessions.findForUpdate(sessionId).ifPresent(r -> r.release(writer)));
+            throw e;
+        }
+
+        return tx.execute(status -> {
+            MaterialUploadSession locked = sessions.findForUpdate(sessionId)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found"));
+            if (writer.equals(locked.getPendingWriter()) && locked.getStatus() == UploadSessionStatus.OPEN) {
+                locked.acknowledge(expected);
+            }
+            // otherwise aborted, or the lease ran out and a retry of the same bytes took over
+            return locked;
+        });
+    }
+
+    @Transactional(readOnly = true)
+    public MaterialUploadSession status(String psychologistUsername, String sessionId) {
+        MaterialUploadSession s = sessions.findById(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found"));
+        requireOwner(s, psychologistUsername);
+        return s;
+    }
+
+    @Transactional
+    public Integer complete(String psychologistUsername, String sessionId) throws IOException {
+        MaterialUploadSession s = requireOpenSession(psychologistUsername, sessionId);
+
+        if (s.getReceivedBytes() != s.getTotalBytes()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Upload incomplete: " + s.getReceivedBytes() + " of " + s.getTotalBytes() + " bytes received");
+        }
+        if (s.getTotalBytes() == 0) {
+            // an empty file is a single empty last segment
+            try (OutputStream out = blobs.appendStaging(s.getId(), FileCryptoService.HEADER_BYTES)) {
+                crypto.encryptSegments(s.getCryptoHeader(), 0, InputStream.nullInputStream(), 0, true, out);
+            }
+        }
+
+        MaterialBlobStore.StoredBlob blob = blobs.commitStaging(s.getId());
+        MaterialLibraryItem item = library.storeEncrypted(
+                s.getPsychologist(),
+                s.getOriginalFilename(),
+                s.getContentType(),
+                s.getTotalBytes(),
+                blob.key()
+        );
+        Integer materialId = library.assign(s.getPsychologist(), item, List.of(s.getClient()),
+                s.getOriginalFilename(), s.getContentType()).get(0);
+
+        s.complete(materialId);
+        return materialId;
+    }
+
+    @Transactional
+    public void abort(String psychologistUsername, String sessionId) {
+        MaterialUploadSession s = requireOpenSession(psychologistUsername, sessionId);
+        s.abort();
+        cleanup.deleteStagingAfterCommit(s.getId());
+    }
+
+    @Scheduled(fixedDelayString = "${app.materials.uploads.cleanup-delay:PT1H}")
+    @Transactional
+    public void abortStaleSessions() {
+        for (MaterialUploadSession s : sessions.findTop100ByStatusAndUpdatedAtBefore(
+                UploadSessionStatus.OPEN, Instant.now().minus(sessionTtl))) {
+            s.abort();
+            cleanup.deleteStagingAfterCommit(s.getId());
+        }
+    }
+
+    // ciphertext bytes in the staging blob once receivedBytes (a whole number of chunks) are acknowledged
+    private static long stagedBytes(long receivedBytes) {
+        return FileCryptoService.HEADER_BYTES
+                + receivedBytes
+                + receivedBytes / FileCryptoService.SEGMENT_SIZE * FileCryptoService.TAG_BYTES;
+    }
+
+    private static void requireNext(MaterialUploadSession s, long index) {
+        if (index != s.getNextChunkIndex() || s.getReceivedBytes() == s.getTotalBytes()) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT,
+                    "Expected chunk " + s.getNextChunkIndex() + " at offset " + s.getReceivedBytes());
+        }
+    }
+
+    private static byte[] sha256(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private MaterialUploadSession requireOwned(String psychologistUsername, String sessionId) {
+        MaterialUploadSession s = sessions.findById(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found"));
+        requireOwner(s, psychologistUsername);
+        if (s.getStatus() != UploadSessionStatus.OPEN) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload session is " + s.getStatus().name());
+        }
+        return s;
+    }
+
+    private MaterialUploadSession requireOpenSession(String psychologistUsername, String sessionId) {
+        MaterialUploadSession s = sessions.findForUpdate(sessionId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Upload session not found"));
+        requireOwner(s, psychologistUsername);
+        if (s.getStatus() != UploadSessionStatus.OPEN) {
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "Upload session is " + s.getStatus().name());
+        }
+        return s;
+    }
+
+    private static void requireOwner(MaterialUploadSession s, String psychologistUsername) {
+        if (!s.getPsychologist().getUsername().equalsIgnoreCase(psychologistUsername)) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your upload");
+        }
+    }
+}
@@ -6,12 +6,14 @@ import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.server.ResponseStatusException;
 import stucanii.backend.domain.MoodEntry;
 import stucanii.backend.domain.Role;
-import stucanii.backend.domain.User;
 import stucanii.backend.repository.MoodEntryRepository;
 import stucanii.backend.repository.UserRepository;
 import stucanii.backend.security.CryptoService;
+import stucanii.backend.security.IdentityResolver;
+import stucanii.backend.security.IdentityResolver.Identity;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
 
 @Service
@@ -20,11 +22,14 @@ public class MoodEntryService {
     private final MoodEntryRepository moodEntryRepository;
     private final UserRepository userRepository;
     private final CryptoService cryptoService;
+    private final IdentityResolver identities;
 
-    public MoodEntryService(MoodEntryRepository moodEntryRepository, UserRepository userRepository, CryptoService cryptoService) {
+    public MoodEntryService(MoodEntryRepository moodEntryRepository, UserRepository userRepository,
+                            CryptoService cryptoService, IdentityResolver identities) {
         this.moodEntryRepository = moodEntryRepository;
         this.userRepository = userRepository;
         this.cryptoService = cryptoService;
+        this.identities = identities;
     }
 
     @Transactional
@@ -33,17 +38,16 @@ public class MoodEntryService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Score must be between 1 and 5");
         }
 
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        Identity user = identities.resolve(username);
 
-        if (user.getRole() != Role.CLIENT) {
+        if (user.role() != Role.CLIENT) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only CLIENT can create mood entries");
         }
 
         var enc = cryptoService.encrypt(String.valueOf(score));
 
         MoodEntry saved = moodEntryRepository.save(new MoodEntry(
-                user,
+                userRepository.getReferenceById(user.id()),
                 Instant.now(),
                 enc.iv(),
                 enc.ciphertext()
@@ -54,20 +58,23 @@ public class MoodEntryService {
 
     @Transactional(readOnly = true)
     public List<MoodItem> latest(String username) {
-        User user = userRepository.findByUsername(username)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        Identity user = identities.resolve(username);
 
-        if (user.getRole() != Role.CLIENT) {
+        if (user.role() != Role.CLIENT) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only CLIENT can view mood entries");
         }
 
-        return moodEntryRepository.findTop30ByUserIdOrderByCreatedAtDesc(user.getId()).stream()
-                .map(e -> new MoodItem(
-                        e.getId(),
-                        e.getCreatedAt(),
-                        Integer.parseInt(cryptoService.decrypt(e.getIv(), e.getCiphertext()))
-                ))
-                .toList();
+        List<MoodEntry> entries = moodEntryRepository.findTop30ByUserIdOrderByCreatedAtDesc(user.id());
+        List<String> scores = cryptoService.decryptAll(entries.stream()
+                .map(e -> new CryptoService.EncryptedPayload(e.getIv(), e.getCiphertext()))
+                .toList());
+
+        List<MoodItem> items = new ArrayList<>(entries.size());
+        for (int i = 0; i < entries.size(); i++) {
+            MoodEntry e = entries.get(i);
+            items.add(new MoodItem(e.getId(), e.getCreatedAt(), Integer.parseInt(scores.get(i))));
+        }
+        return items;
     }
 
     public record MoodItem(Integer id, Instant createdAt, int score) {}
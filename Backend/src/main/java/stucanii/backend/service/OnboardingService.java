@@ -7,6 +7,7 @@ import org.springframework.web.server.ResponseStatusException;
 import stucanii.backend.domain.*;
 import stucanii.backend.repository.OnboardingRequestRepository;
 import stucanii.backend.repository.UserRepository;
+import stucanii.backend.security.IdentityResolver;
 import org.springframework.messaging.simp.SimpMessagingTemplate;
 
 import java.util.List;
@@ -16,10 +17,13 @@ public class OnboardingService {
 
     private final UserRepository userRepository;
     private final OnboardingRequestRepository requestRepository;
+    private final IdentityResolver identities;
 
-    public OnboardingService(UserRepository userRepository, OnboardingRequestRepository requestRepository) {
+    public OnboardingService(UserRepository userRepository, OnboardingRequestRepository requestRepository,
+                             IdentityResolver identities) {
         this.userRepository = userRepository;
         this.requestRepository = requestRepository;
+        this.identities = identities;
     }
 
     @Transactional
@@ -135,6 +139,7 @@ public class OnboardingService {
         req.approve();
         userRepository.save(requester);
         requestRepository.save(req);
+        identities.evict(requester);
     }
 
     @Transactional
@@ -1,42 +1,121 @@
 package stucanii.backend.service;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.http.HttpStatus;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.server.ResponseStatusException;
-import stucanii.backend.api.events.PanicAckEvent;
-import stucanii.backend.api.events.PanicWsEvent;
 import stucanii.backend.domain.*;
 import stucanii.backend.repository.PanicAlertRepository;
+import stucanii.backend.repository.PanicAlertRepository.InboxRow;
+import stucanii.backend.repository.PanicOutboxRepository;
 import stucanii.backend.repository.UserRepository;
-import stucanii.backend.security.JitsiTokenService;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 @Service
 public class PanicAlertService {
 
+    static final int MAX_INBOX_PAGE = 200;
+    static final Duration CURSOR_LOOKBACK = Duration.ofSeconds(5);
+    // a tap that waited on a RAISE which failed tries again, at most this many times in all
+    static final int TRIGGER_ATTEMPTS = 3;
+
     private final UserRepository userRepository;
     private final PanicAlertRepository panicRepo;
-    private final SimpMessagingTemplate messaging;
-    private final JitsiTokenService jitsiService;
+    private final PanicOutboxRepository outbox;
+    private final ApplicationEventPublisher events;
+    private final PanicTriggerGuard guard;
+    private final TransactionTemplate tx;
+    private final Duration raiseWait;
 
     public PanicAlertService(
             UserRepository userRepository,
             PanicAlertRepository panicRepo,
-            SimpMessagingTemplate messaging,
-            JitsiTokenService jitsiService
+            PanicOutboxRepository outbox,
+            ApplicationEventPublisher events,
+            PanicTriggerGuard guard,
+            TransactionTemplate tx,
+            @Value("${app.panic.trigger.raise-wait:PT10S}") Duration raiseWait
     ) {
         this.userRepository = userRepository;
         this.panicRepo = panicRepo;
-        this.messaging = messaging;
-        this.jitsiService = jitsiService;
+        this.outbox = outbox;
+        this.events = events;
+        this.guard = guard;
+        this.tx = tx;
+        this.raiseWait = raiseWait;
     }
 
 
-    @Transactional
-    public PanicAlert trigger(String clientUsername, boolean longPress) {
+    // no @Transactional: a tap waiting on another one's RAISE must not hold a connection meanwhile
+    public TriggerResult trigger(String clientUsername, boolean longPress) {
+        for (int attempt = 1; ; attempt++) {
+            PanicTriggerGuard.Decision decision = guard.tryTrigger(clientUsername);
+            switch (decision.outcome()) {
+                case COALESCED -> {
+                    return new TriggerResult(decision.alertId(), decision.videoRoomId(), true);
+                }
+                case REJECTED -> throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS,
+                        "Too many panic alerts, please wait before sending another");
+                case RAISE -> {
+                    AtomicBoolean reported = new AtomicBoolean();
+                    try {
+                        return tx.execute(status -> raise(clientUsername, longPress, reported));
+                    } catch (RuntimeException e) {
+                        if (!reported.get()) {
+                            // the transaction never started, so nothing told the guard
+                            guard.abandoned(clientUsername);
+                        }
+                        throw e;
+                    }
+                }
+                case WAIT -> {
+                    PanicTriggerGuard.Decision joined = awaitLeader(decision);
+                    if (joined != null) {
+                        return new TriggerResult(joined.alertId(), joined.videoRoomId(), true);
+                    }
+                    if (attempt == TRIGGER_ATTEMPTS) {
+                        throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                                "The panic alert could not be raised, please try again");
+                    }
+                    // the RAISE it waited on rolled back: try again, possibly as the one raising it
+                }
+            }
+        }
+    }
+
+    private PanicTriggerGuard.Decision awaitLeader(PanicTriggerGuard.Decision decision) {
+        try {
+            return decision.leader().get(raiseWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException | ExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "The panic alert is still being raised, please try again");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE,
+                    "The panic alert is still being raised, please try again");
+        }
+    }
+
+    // inside a transaction
+    private TriggerResult raise(String clientUsername, boolean longPress, AtomicBoolean reported) {
+        AtomicReference<PanicAlert> raised = reportToGuard(clientUsername, reported);
+
         User client = userRepository.findByUsername(clientUsername)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
 
@@ -52,41 +131,71 @@ public class PanicAlertService {
         PanicAlert alert = new PanicAlert(client, psych, longPress);
         panicRepo.save(alert);
 
-        String fullRoomName = alert.getVideoRoomId();
-
-        String jitsiToken = jitsiService.generateToken(
-                psych.getUsername(),
-                "",
-                "", // avatar url opțional
-                fullRoomName
-        );
-
-        messaging.convertAndSend(
-                "/topic/panic/" + psych.getUsername(),
-                new PanicWsEvent(
-                        alert.getId(),
-                        client.getUsername(),
-                        longPress,
-                        alert.getCreatedAt(),
-                        alert.getVideoRoomId(),
-                        jitsiToken
-                )
-        );
-
-        return alert;
+        // signed and sent by PanicOutboxRelay once this commits
+        outbox.save(PanicOutboxEvent.triggered(alert));
+        events.publishEvent(new PanicOutboxRelay.Written());
+        events.publishEvent(new PanicEscalationService.Opened(
+                alert.getId(), alert.getCreatedAt(), psych.getUsername()));
 
+        raised.set(alert);
+        return new TriggerResult(alert.getId(), alert.getVideoRoomId(), false);
     }
 
-    @Transactional(readOnly = true)
-    public List<PanicAlert> psychologistInbox(String psychologistUsername) {
-        User psych = userRepository.findByUsername(psychologistUsername)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+    // tells the guard how the RAISE it granted ended, once this transaction has
+    private AtomicReference<PanicAlert> reportToGuard(String clientUsername, AtomicBoolean reported) {
+        AtomicReference<PanicAlert> raised = new AtomicReference<>();
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                reported.set(true);
+                PanicAlert alert = raised.get();
+                if (status == STATUS_COMMITTED && alert != null) {
+                    guard.raised(clientUsername, alert.getId(), alert.getVideoRoomId());
+                } else {
+                    guard.abandoned(clientUsername);
+                }
+            }
+        });
+        return raised;
+    }
 
-        if (psych.getRole() != Role.PSYCHOLOGIST) {
-            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only PSYCHOLOGIST can view panic inbox");
+    /**
+     * Without a cursor: the newest alerts. With one: only alerts created or changed since it, oldest change
+     * first, so a dashboard can apply them in order. Either way {@code nextCursor} continues from here.
+     */
+    @Transactional(readOnly = true)
+    public InboxPage psychologistInbox(String psychologistUsername, String since, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_INBOX_PAGE));
+        List<InboxRow> rows;
+        boolean hasMore = false;
+        if (since == null || since.isBlank()) {
+            rows = panicRepo.findInbox(psychologistUsername, PageRequest.of(0, size));
+        } else {
+            InboxCursor cursor = InboxCursor.parse(since);
+            rows = panicRepo.findInboxChangesAfter(psychologistUsername, cursor.updatedAt(), cursor.id(),
+                    PageRequest.of(0, size + 1));
+            if (rows.size() > size) {
+                hasMore = true;
+                rows = rows.subList(0, size);
+            }
         }
 
-        return panicRepo.findTop50ByPsychologist_UsernameOrderByCreatedAtDesc(psychologistUsername);
+        InboxCursor next = null;
+        for (InboxRow r : rows) {
+            InboxCursor c = new InboxCursor(r.getUpdatedAt(), r.getId());
+            if (next == null || c.isAfter(next)) {
+                next = c;
+            }
+        }
+        if (!hasMore) {
+            // a transaction that started earlier may still commit an older updated_at;
+            // stay behind the last few seconds so the next sync picks it up (clients upsert by id)
+            InboxCursor settled = new InboxCursor(Instant.now().minus(CURSOR_LOOKBACK), 0);
+            if (next == null || next.isAfter(settled)) {
+                next = settled;
+            }
+        }
+        return new InboxPage(rows, next.encode(), hasMore);
     }
 
     @Transactional
@@ -94,32 +203,69 @@ public class PanicAlertService {
         PanicAlert alert = panicRepo.findById(alertId)
                 .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Alert not found"));
 
-        if (!alert.getPsychologist().getUsername().equalsIgnoreCase(psychologistUsername)) {
+        // once escalated, the backup psychologist may acknowledge it too
+        if (!alert.getPsychologist().getUsername().equalsIgnoreCase(psychologistUsername)
+                && !psychologistUsername.equalsIgnoreCase(alert.getEscalatedTo())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your alert");
         }
 
+        boolean firstAck = alert.getStatus() == PanicStatus.OPEN;
         alert.acknowledge();
         panicRepo.save(alert);
+        if (firstAck) {
+            events.publishEvent(new AckLatencyAnalytics.Acknowledged(
+                    alert.getPsychologist().getId(), alert.getCreatedAt(), alert.getAcknowledgedAt()));
+        }
+
+        outbox.save(PanicOutboxEvent.acknowledged(alert, psychologistUsername, withVideo));
+        events.publishEvent(new PanicOutboxRelay.Written());
+        events.publishEvent(new PanicEscalationService.Closed(alert.getId(), alert.getClient().getUsername()));
+    }
 
-        String clientToken = null;
-        if (withVideo) {
-            clientToken = jitsiService.generateToken(
-                    alert.getClient().getUsername(),
-                    "",
-                    "",
-                    alert.getVideoRoomId()
-            );
+    @Transactional
+    public void resolve(String psychologistUsername, Integer alertId) {
+        PanicAlert alert = panicRepo.findById(alertId)
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Alert not found"));
+
+        if (!alert.getPsychologist().getUsername().equalsIgnoreCase(psychologistUsername)
+                && !psychologistUsername.equalsIgnoreCase(alert.getEscalatedTo())) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your alert");
         }
 
-        messaging.convertAndSend(
-                "/topic/panic-updates/" + alert.getClient().getUsername(),
-                new PanicAckEvent(
-                        alert.getId(),
-                        withVideo,
-                        psychologistUsername,
-                        alert.getVideoRoomId(),
-                        clientToken
-                )
-        );
+        if (alert.getStatus() == PanicStatus.RESOLVED) {
+            return;
+        }
+        alert.resolve();
+        panicRepo.save(alert);
+        events.publishEvent(new PanicEscalationService.Closed(alert.getId(), alert.getClient().getUsername()));
+    }
+
+    /** {@code coalesced}: the tap joined the client's recent alert, which has committed. */
+    public record TriggerResult(Integer alertId, String videoRoomId, boolean coalesced) {}
+
+    public record InboxPage(List<InboxRow> items, String nextCursor, boolean hasMore) {}
+
+    record InboxCursor(Instant updatedAt, Integer id) {
+
+        boolean isAfter(InboxCursor other) {
+            int c = updatedAt.compareTo(other.updatedAt);
+            return c > 0 || (c == 0 && id > other.id);
+        }
+
+        // opaque to clients: base64url("<instant>|<id>")
+        String encode() {
+            String raw = updatedAt + "|" + id;
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        }
+
+        static InboxCursor parse(String cursor) {
+            try {
+                String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+                int sep = raw.indexOf('|');
+                return new InboxCursor(Instant.parse(raw.substring(0, sep)), Integer.parseInt(raw.substring(sep + 1)));
+            } catch (RuntimeException e) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid inbox cursor");
+            }
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,231 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import stucanii.backend.config.AsyncConfig;
+import stucanii.backend.domain.PanicAlert;
+import stucanii.backend.domain.PanicOutboxEvent;
+import stucanii.backend.domain.PanicStatus;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.messaging.PresenceRegistry;
+import stucanii.backend.repository.PanicAlertRepository;
+import stucanii.backend.repository.PanicOutboxRepository;
+import stucanii.backend.repository.UserRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-routes panic alerts nobody acknowledged within {@code app.panic.escalation.timeout} to a backup
+ * psychologist, or to the admin topic when none is configured. Deadlines live in one
+ * {@link HashedTimerWheel} ticked by a single thread and are rebuilt from {@code panic_alerts} on startup,
+ * for alerts raised within {@code app.panic.escalation.max-age}; older ones are never escalated.
+ * <p>
+ * With {@code app.panic.escalation.when-offline}, an alert whose psychologist has no live session in
+ * {@link PresenceRegistry} is escalated right away, and an offline backup is passed over for the admin topic.
+ * Presence is per node, so this is switched off with {@code app.ws.fanout.mode=postgres}.
+ */
+@Component
+public class PanicEscalationService {
+
+    private static final Logger log = LoggerFactory.getLogger(PanicEscalationService.class);
+
+    private final PanicAlertRepository alerts;
+    private final UserRepository users;
+    private final PanicOutboxRepository outbox;
+    private final ApplicationEventPublisher events;
+    private final TransactionTemplate tx;
+    private final TaskExecutor panicExecutor;
+    private final PresenceRegistry presence;
+    private final boolean enabled;
+    private final boolean whenOffline;
+    private final Duration timeout;
+    private final Duration maxAge;
+    private final Duration tick;
+    private final String backupUsername;
+    private final String adminTopic;
+
+    private final HashedTimerWheel<Integer> wheel;
+    private final Counter toBackup;
+    private final Counter toAdmins;
+    private final Counter offline;
+    private ScheduledExecutorService ticker;
+
+    public PanicEscalationService(PanicAlertRepository alerts,
+                                  UserRepository users,
+                                  PanicOutboxRepository outbox,
+                                  ApplicationEventPublisher events,
+                                  TransactionTemplate tx,
+                                  @Qualifier(AsyncConfig.PANIC_EXECUTOR) TaskExecutor panicExecutor,
+                                  PresenceRegistry presence,
+                                  MeterRegistry meters,
+                                  @Value("${app.panic.escalation.enabled:true}") boolean enabled,
+                                  @Value("${app.panic.escalation.when-offline:true}") boolean whenOffline,
+                                  @Value("${app.ws.fanout.mode:local}") String fanoutMode,
+                                  @Value("${app.panic.escalation.timeout:PT2M}") Duration timeout,
+                                  @Value("${app.panic.escalation.max-age:PT1H}") Duration maxAge,
+                                  @Value("${app.panic.escalation.tick:PT1S}") Duration tick,
+                                  @Value("${app.panic.escalation.wheel-size:512}") int wheelSize,
+                                  @Value("${app.panic.escalation.backup-username:}") String backupUsername,
+                                  @Value("${app.panic.escalation.admin-topic:/topic/panic-admin}") String adminTopic) {
+        this.alerts = alerts;
+        this.users = users;
+        this.outbox = outbox;
+        this.events = events;
+        this.tx = tx;
+        this.panicExecutor = panicExecutor;
+        this.presence = presence;
+        this.enabled = enabled;
+        // the psychologist may well be connected to another node
+        boolean multiNode = "postgres".equals(fanoutMode);
+        if (whenOffline && multiNode) {
+            log.warn("Ignoring app.panic.escalation.when-offline: presence is per node and app.ws.fanout.mode=postgres");
+        }
+        this.whenOffline = whenOffline && !multiNode;
+        this.timeout = timeout;
+        this.maxAge = maxAge;
+        this.tick = tick;
+        this.backupUsername = backupUsername;
+        this.adminTopic = adminTopic;
+
+        this.wheel = new HashedTimerWheel<>(tick.toMillis(), wheelSize, System::currentTimeMillis,
+                id -> panicExecutor.execute(() -> escalate(id)));
+        Gauge.builder("panic.escalation.pending", wheel, HashedTimerWheel::size)
+                .description("Open panic alerts waiting for their escalation deadline")
+                .register(meters);
+        this.toBackup = Counter.builder("panic.escalations").tag("target", "backup").register(meters);
+        this.toAdmins = Counter.builder("panic.escalations").tag("target", "admin").register(meters);
+        this.offline = Counter.builder("panic.escalations.offline")
+                .description("Panic alerts escalated at once because their psychologist had no live session")
+                .register(meters);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        int rebuilt = 0;
+        for (PanicAlertRepository.PendingEscalation p : alerts.findPendingEscalations(Instant.now().minus(maxAge))) {
+            wheel.schedule(p.getId(), deadline(p.getCreatedAt()));
+            rebuilt++;
+        }
+        log.info("Scheduled escalation for {} open panic alerts", rebuilt);
+
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "panic-escalation-wheel");
+            t.setDaemon(true);
+            t.setPriority(Thread.MAX_PRIORITY);
+            return t;
+        });
+        long ms = tick.toMillis();
+        ticker.scheduleAtFixedRate(this::advance, ms, ms, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+    }
+
+    private void advance() {
+        try {
+            wheel.advance();
+        } catch (RuntimeException e) {
+            // an exception would cancel the fixed-rate task and stop every escalation
+            log.error("Escalation wheel tick failed", e);
+        }
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onOpened(Opened e) {
+        if (!enabled) {
+            return;
+        }
+        if (whenOffline && !presence.isOnline(Role.PSYCHOLOGIST, e.psychologistUsername())) {
+            // nobody is there to acknowledge it: don't wait out the timeout
+            offline.increment();
+            log.warn("Psychologist {} is offline, escalating panic alert {} now", e.psychologistUsername(), e.alertId());
+            wheel.cancel(e.alertId());
+            panicExecutor.execute(() -> escalate(e.alertId()));
+            return;
+        }
+        wheel.schedule(e.alertId(), deadline(e.createdAt()));
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onClosed(Closed e) {
+        wheel.cancel(e.alertId());
+    }
+
+    void escalate(Integer alertId) {
+        try {
+            tx.executeWithoutResult(status -> {
+                // locked and re-checked: the alert may have been acknowledged, or escalated by another node
+                PanicAlert alert = alerts.findForUpdate(alertId).orElse(null);
+                if (alert == null || alert.getStatus() != PanicStatus.OPEN || alert.getEscalatedAt() != null) {
+                    return;
+                }
+                String backup = backupFor(alert);
+                alert.escalate(backup);
+                if (backup != null) {
+                    outbox.save(PanicOutboxEvent.escalated(alert, "/topic/panic/" + backup, backup));
+                    toBackup.increment();
+                } else {
+                    outbox.save(PanicOutboxEvent.escalated(alert, adminTopic, null));
+                    toAdmins.increment();
+                }
+                events.publishEvent(new PanicOutboxRelay.Written());
+                log.warn("Panic alert {} escalated to {}", alertId, backup != null ? backup : adminTopic);
+            });
+        } catch (RuntimeException e) {
+            log.error("Could not escalate panic alert {}", alertId, e);
+        }
+    }
+
+    private String backupFor(PanicAlert alert) {
+        if (backupUsername == null || backupUsername.isBlank()
+                || backupUsername.equalsIgnoreCase(alert.getPsychologist().getUsername())) {
+            return null;
+        }
+        String backup = users.findByUsername(backupUsername)
+                .filter(u -> u.getRole() == Role.PSYCHOLOGIST)
+                .map(User::getUsername)
+                .orElseGet(() -> {
+                    log.warn("Escalation backup '{}' is not a psychologist, using the admin topic", backupUsername);
+                    return null;
+                });
+        if (backup != null && whenOffline && !presence.isOnline(Role.PSYCHOLOGIST, backup)) {
+            log.warn("Escalation backup '{}' is offline, using the admin topic", backup);
+            return null;
+        }
+        return backup;
+    }
+
+    private long deadline(Instant createdAt) {
+        return createdAt.plus(timeout).toEpochMilli();
+    }
+
+    public record Opened(Integer alertId, Instant createdAt, String psychologistUsername) {}
+
+    public record Closed(Integer alertId, String clientUsername) {}
+}
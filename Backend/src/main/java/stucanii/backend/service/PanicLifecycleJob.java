@@ -0,0 +1,119 @@
+package stucanii.backend.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Keeps {@code panic_alerts} small: auto-resolves acknowledged alerts nobody closed, moves old resolved
+ * alerts into {@code panic_alerts_archive}, and drops confirmed outbox rows. Works in batches, one
+ * transaction each, skipping rows another node or request is holding.
+ */
+@Component
+public class PanicLifecycleJob {
+
+    private static final Logger log = LoggerFactory.getLogger(PanicLifecycleJob.class);
+
+    private static final String AUTO_RESOLVE = """
+            update panic_alerts set status = 'RESOLVED', resolved_at = ?, updated_at = ?
+            where id in (
+                select id from panic_alerts
+                where status = 'ACKNOWLEDGED' and acknowledged_at < ?
+                order by id limit ?
+                for update skip locked)
+            """;
+
+    private static final String ARCHIVE = """
+            with moved as (
+                delete from panic_alerts
+                where id in (
+                    select id from panic_alerts
+                    where status = 'RESOLVED' and resolved_at < ?
+                    order by id limit ?
+                    for update skip locked)
+                returning id, client_id, psychologist_id, status, triggered_by_long_press, video_room_id,
+                          created_at, updated_at, acknowledged_at, escalated_at, escalated_to, resolved_at)
+            insert into panic_alerts_archive (id, client_id, psychologist_id, status, triggered_by_long_press,
+                                              video_room_id, created_at, updated_at, acknowledged_at,
+                                              escalated_at, escalated_to, resolved_at)
+            select id, client_id, psychologist_id, status, triggered_by_long_press, video_room_id,
+                   created_at, updated_at, acknowledged_at, escalated_at, escalated_to, resolved_at
+            from moved
+            """;
+
+    private static final String PURGE_OUTBOX = """
+            delete from panic_outbox
+            where id in (
+                select id from panic_outbox
+                where delivered_at < ?
+                order by id limit ?
+                for update skip locked)
+            """;
+
+    private final JdbcTemplate jdbc;
+    private final TransactionTemplate tx;
+    private final boolean enabled;
+    private final Duration autoResolveAfter;
+    private final Duration archiveAfter;
+    private final Duration outboxRetention;
+    private final int batchSize;
+
+    public PanicLifecycleJob(JdbcTemplate jdbc,
+                             TransactionTemplate tx,
+                             @Value("${app.panic.lifecycle.enabled:true}") boolean enabled,
+                             @Value("${app.panic.lifecycle.auto-resolve-after:PT24H}") Duration autoResolveAfter,
+                             @Value("${app.panic.lifecycle.archive-after:P30D}") Duration archiveAfter,
+                             @Value("${app.panic.lifecycle.outbox-retention:P7D}") Duration outboxRetention,
+                             @Value("${app.panic.lifecycle.batch-size:500}") int batchSize) {
+        this.jdbc = jdbc;
+        this.tx = tx;
+        this.enabled = enabled;
+        this.autoResolveAfter = autoResolveAfter;
+        this.archiveAfter = archiveAfter;
+        this.outboxRetention = outboxRetention;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(initialDelayString = "${app.panic.lifecycle.initial-delay:PT1M}",
+            fixedDelayString = "${app.panic.lifecycle.delay:PT5M}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        Instant now = Instant.now();
+        Timestamp nowTs = Timestamp.from(now);
+
+        int resolved = inBatches(AUTO_RESOLVE, nowTs, nowTs, Timestamp.from(now.minus(autoResolveAfter)));
+        int archived = inBatches(ARCHIVE, Timestamp.from(now.minus(archiveAfter)));
+        int purged = inBatches(PURGE_OUTBOX, Timestamp.from(now.minus(outboxRetention)));
+
+        if (resolved + archived + purged > 0) {
+            log.info("Panic lifecycle: auto-resolved {}, archived {}, purged {} outbox rows", resolved, archived, purged);
+        }
+    }
+
+    // runs the statement (batch size bound last) until a batch comes back short
+    private int inBatches(String sql, Object... args) {
+        Object[] params = new Object[args.length + 1];
+        System.arraycopy(args, 0, params, 0, args.length);
+        params[args.length] = batchSize;
+
+        int total = 0;
+        while (true) {
+            Integer n = tx.execute(status -> jdbc.update(sql, params));
+            int count = n == null ? 0 : n;
+            total += count;
+            if (count < batchSize) {
+                return total;
+            }
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.transaction.support.TransactionTemplate;
+import stucanii.backend.api.events.PanicAckEvent;
+import stucanii.backend.api.events.PanicWsEvent;
+import stucanii.backend.config.AsyncConfig;
+import stucanii.backend.domain.PanicEventType;
+import stucanii.backend.domain.PanicOutboxEvent;
+import stucanii.backend.messaging.StompAuthInterceptor;
+import stucanii.backend.messaging.WsFanout;
+import stucanii.backend.repository.PanicOutboxRepository;
+import stucanii.backend.security.JitsiTokenService;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends {@code panic_outbox} rows to the recipient's topic and keeps resending them, with backoff,
+ * until the recipient confirms with a receipt frame. Kicked right after the writing transaction
+ * commits and polled as a fallback; rows are claimed with SKIP LOCKED so concurrent relays never
+ * send the same batch twice.
+ */
+@Component
+public class PanicOutboxRelay {
+
+    private static final Logger log = LoggerFactory.getLogger(PanicOutboxRelay.class);
+
+    // upper bound on batches per run, so one run cannot hog the panic executor
+    private static final int MAX_BATCHES_PER_RUN = 20;
+
+    private final PanicOutboxRepository outbox;
+    private final WsFanout fanout;
+    private final JitsiTokenService jitsiService;
+    private final TransactionTemplate tx;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration retryBase;
+    private final Duration retryMax;
+    private final Duration replayWindow;
+    private final String adminTopic;
+
+    private final Map<PanicEventType, Timer> sendLatency = new EnumMap<>(PanicEventType.class);
+    private final Timer deliveryLag;
+    private final AtomicLong pending = new AtomicLong();
+
+    public PanicOutboxRelay(PanicOutboxRepository outbox,
+                            WsFanout fanout,
+                            JitsiTokenService jitsiService,
+                            TransactionTemplate tx,
+                            MeterRegistry meters,
+                            @Value("${app.panic.outbox.batch-size:50}") int batchSize,
+                            @Value("${app.panic.outbox.max-attempts:30}") int maxAttempts,
+                            @Value("${app.panic.outbox.retry-base:PT2S}") Duration retryBase,
+                            @Value("${app.panic.outbox.retry-max:PT1M}") Duration retryMax,
+                            @Value("${app.panic.outbox.replay-window:PT1H}") Duration replayWindow,
+                            @Value("${app.panic.escalation.admin-topic:/topic/panic-admin}") String adminTopic) {
+        this.outbox = outbox;
+        this.fanout = fanout;
+        this.jitsiService = jitsiService;
+        this.tx = tx;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.retryBase = retryBase;
+        this.retryMax = retryMax;
+        this.replayWindow = replayWindow;
+        this.adminTopic = adminTopic;
+
+        sendLatency.put(PanicEventType.TRIGGERED, latencyTimer(meters, "trigger"));
+        sendLatency.put(PanicEventType.ACKNOWLEDGED, latencyTimer(meters, "acknowledge"));
+        sendLatency.put(PanicEventType.ESCALATED, latencyTimer(meters, "escalation"));
+        this.deliveryLag = Timer.builder("panic.outbox.delivery.lag")
+                .description("Time from a panic event occurring to the recipient confirming it")
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meters);
+        Gauge.builder("panic.outbox.pending", pending, AtomicLong::get)
+                .description("Panic events not yet confirmed by their recipient")
+                .register(meters);
+    }
+
+    private static Timer latencyTimer(MeterRegistry meters, String event) {
+        return Timer.builder("panic.delivery.latency")
+                .description("Time from a panic alert being created, acknowledged or escalated to its notification being sent")
+                .tag("event", event)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meters);
+    }
+
+    @Async(AsyncConfig.PANIC_EXECUTOR)
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onWritten(Written e) {
+        relayDue();
+    }
+
+    @Scheduled(fixedDelayString = "${app.panic.outbox.poll-interval:PT1S}")
+    public void poll() {
+        relayDue();
+        pending.set(outbox.countByDeliveredAtIsNull());
+    }
+
+    public void relayDue() {
+        for (int i = 0; i < MAX_BATCHES_PER_RUN; i++) {
+            Integer sent = tx.execute(status -> {
+                Instant now = Instant.now();
+                List<PanicOutboxEvent> due = outbox.claimDue(now, maxAttempts, batchSize);
+                due.forEach(e -> send(e, now));
+                return due.size();
+            });
+            if (sent == null || sent < batchSize) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Resends what is still unconfirmed for a destination when its owner (re)subscribes to it: events from
+     * the last {@code app.panic.outbox.replay-window} the relay has not given up on.
+     */
+    @Async(AsyncConfig.PANIC_EXECUTOR)
+    @EventListener
+    public void onSubscribed(Subscribed e) {
+        tx.executeWithoutResult(status -> {
+            Instant now = Instant.now();
+            outbox.claimUndelivered(e.destination(), now.minus(replayWindow), maxAttempts)
+                    .forEach(row -> send(row, now));
+        });
+    }
+
+    /** A receipt counts only from someone the event was sent to. */
+    @Transactional
+    public void confirm(String receiptId, Principal user) {
+        outbox.findByReceiptId(receiptId).ifPresent(e -> {
+            if (e.getDeliveredAt() != null
+                    || !StompAuthInterceptor.mayReceive(user, e.getDestination(), adminTopic)) {
+                return;
+            }
+            Instant now = Instant.now();
+            e.delivered(now);
+            deliveryLag.record(Duration.between(e.getOccurredAt(), now));
+        });
+    }
+
+    private void send(PanicOutboxEvent e, Instant now) {
+        boolean first = e.getAttempts() == 0;
+        try {
+            if (e.getType() == PanicEventType.ACKNOWLEDGED) {
+                String clientToken = e.isWithVideo()
+                        ? jitsiService.generateToken(e.getRecipientUsername(), "", "", e.getVideoRoomId())
+                        : null;
+                fanout.send(e.getDestination(), new PanicAckEvent(
+                        e.getAlertId(),
+                        e.isWithVideo(),
+                        e.getPsychologistUsername(),
+                        e.getVideoRoomId(),
+                        clientToken,
+                        e.getReceiptId()
+                ));
+            } else {
+                // TRIGGERED, or ESCALATED to a backup / the admin topic
+                String jitsiToken = e.getRecipientUsername() != null
+                        ? jitsiService.generateToken(e.getRecipientUsername(), "", "", e.getVideoRoomId())
+                        : null;
+                fanout.send(e.getDestination(), new PanicWsEvent(
+                        e.getAlertId(),
+                        e.getClientUsername(),
+                        e.isTriggeredByLongPress(),
+                        e.getOccurredAt(),
+                        e.getVideoRoomId(),
+                        jitsiToken,
+                        e.getReceiptId()
+                ));
+            }
+        } catch (RuntimeException ex) {
+            log.warn("Could not send panic outbox event {}", e.getId(), ex);
+        }
+        e.sent(now, backoff(e.getAttempts()));
+        if (first) {
+            sendLatency.get(e.getType()).record(Duration.between(e.getOccurredAt(), Instant.now()));
+        }
+    }
+
+    private Duration backoff(int attempts) {
+        Duration d = retryBase.multipliedBy(1L << Math.min(attempts, 16));
+        return d.compareTo(retryMax) > 0 ? retryMax : d;
+    }
+
+    /** Published by the writer inside its transaction; relays right after commit. */
+    public record Written() {}
+
+    public record Subscribed(String destination) {}
+}
@@ -0,0 +1,198 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionPhase;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Per-client debounce and token bucket in front of {@link PanicAlertService#trigger}. Taps within
+ * {@code debounce} of the previous one join the alert that one raised; past that, each new alert costs a
+ * token from a bucket of {@code burst} tokens refilled one per {@code refill-period}.
+ * <p>
+ * Each client's state is an immutable snapshot swapped with compare-and-set, so concurrent taps never
+ * block each other and exactly one of them wins the right to raise the alert. Taps arriving while it is
+ * being raised get {@link Outcome#WAIT} and the leader's outcome: the committed alert, or {@code null}
+ * if it rolled back, in which case they try again.
+ */
+@Component
+public class PanicTriggerGuard {
+
+    public enum Outcome { RAISE, COALESCED, WAIT, REJECTED }
+
+    /**
+     * For COALESCED: the committed alert being joined. For WAIT: {@code leader} completes with the
+     * COALESCED decision once the alert commits, or with {@code null} if raising it failed.
+     */
+    public record Decision(Outcome outcome, Integer alertId, String videoRoomId, CompletableFuture<Decision> leader) {
+
+        public Decision(Outcome outcome, Integer alertId, String videoRoomId) {
+            this(outcome, alertId, videoRoomId, null);
+        }
+    }
+
+    // leader: set while a RAISE is in flight
+    private record State(double tokens, long refilledAt, long lastTriggerAt,
+                         Integer alertId, String videoRoomId, CompletableFuture<Decision> leader, boolean retired) {
+
+        State withTokensAt(long now, int burst, double tokensPerMilli) {
+            double t = Math.min(burst, tokens + (now - refilledAt) * tokensPerMilli);
+            return new State(t, now, lastTriggerAt, alertId, videoRoomId, leader, retired);
+        }
+    }
+
+    private static final State RETIRED = new State(0, 0, 0, null, null, null, true);
+
+    private final Map<String, AtomicReference<State>> clients = new ConcurrentHashMap<>();
+    private final LongSupplier clock;
+    private final long debounceMillis;
+    private final int burst;
+    private final double tokensPerMilli;
+    private final long idleMillis;
+
+    private final Counter raised;
+    private final Counter coalesced;
+    private final Counter waited;
+    private final Counter rejected;
+
+    @Autowired
+    public PanicTriggerGuard(MeterRegistry meters,
+                             @Value("${app.panic.trigger.debounce:PT30S}") Duration debounce,
+                             @Value("${app.panic.trigger.burst:3}") int burst,
+                             @Value("${app.panic.trigger.refill-period:PT2M}") Duration refillPeriod) {
+        this(meters, debounce, burst, refillPeriod, System::currentTimeMillis);
+    }
+
+    PanicTriggerGuard(MeterRegistry meters, Duration debounce, int burst, Duration refillPeriod, LongSupplier clock) {
+        this.clock = clock;
+        this.debounceMillis = debounce.toMillis();
+        this.burst = burst;
+        this.tokensPerMilli = 1.0 / refillPeriod.toMillis();
+        // by then the bucket is full again and the debounce long over: the entry carries nothing
+        this.idleMillis = Math.max(debounceMillis, refillPeriod.toMillis() * burst);
+
+        this.raised = Counter.builder("panic.triggers").tag("outcome", "raised").register(meters);
+        this.coalesced = Counter.builder("panic.triggers").tag("outcome", "coalesced").register(meters);
+        this.waited = Counter.builder("panic.triggers").tag("outcome", "waited").register(meters);
+        this.rejected = Counter.builder("panic.triggers").tag("outcome", "rejected").register(meters);
+    }
+
+    public Decision tryTrigger(String client) {
+        while (true) {
+            AtomicReference<State> ref = clients.computeIfAbsent(client,
+                    k -> new AtomicReference<>(new State(burst, clock.getAsLong(), 0, null, null, null, false)));
+            State current = ref.get();
+            if (current.retired()) {
+                // swept between lookup and CAS; start over with a fresh entry
+                clients.remove(client, ref);
+                continue;
+            }
+            long now = clock.getAsLong();
+            State s = current.withTokensAt(now, burst, tokensPerMilli);
+
+            if (s.leader() != null) {
+                // not committed yet: it may still roll back, so nobody is told help is coming
+                if (ref.compareAndSet(current, s)) {
+                    waited.increment();
+                    return new Decision(Outcome.WAIT, null, null, s.leader());
+                }
+                continue;
+            }
+            if (s.alertId() != null && now - s.lastTriggerAt() < debounceMillis) {
+                State next = new State(s.tokens(), now, now, s.alertId(), s.videoRoomId(), null, false);
+                if (ref.compareAndSet(current, next)) {
+                    coalesced.increment();
+                    return new Decision(Outcome.COALESCED, s.alertId(), s.videoRoomId());
+                }
+                continue;
+            }
+            if (s.tokens() < 1) {
+                if (ref.compareAndSet(current, s)) {
+                    rejected.increment();
+                    return new Decision(Outcome.REJECTED, null, null);
+                }
+                continue;
+            }
+            State next = new State(s.tokens() - 1, now, now, null, null, new CompletableFuture<>(), false);
+            if (ref.compareAndSet(current, next)) {
+                raised.increment();
+                return new Decision(Outcome.RAISE, null, null);
+            }
+        }
+    }
+
+    /** The alert a RAISE decision led to has committed; waiting and later taps in the window join it. */
+    public void raised(String client, Integer alertId, String videoRoomId) {
+        State before = update(client, s -> new State(s.tokens(), s.refilledAt(), clock.getAsLong(),
+                alertId, videoRoomId, null, false));
+        if (before != null && before.leader() != null) {
+            before.leader().complete(new Decision(Outcome.COALESCED, alertId, videoRoomId));
+        }
+    }
+
+    /** The RAISE attempt failed or rolled back; refund its token and let waiting taps try again. */
+    public void abandoned(String client) {
+        State before = update(client, s -> new State(Math.min(burst, s.tokens() + 1), s.refilledAt(),
+                s.lastTriggerAt(), null, null, null, false));
+        if (before != null && before.leader() != null) {
+            before.leader().complete(null);
+        }
+    }
+
+    /** The alert was acknowledged or resolved: the next tap is a new emergency, not a repeat. */
+    public void closed(String client, Integer alertId) {
+        update(client, s -> alertId.equals(s.alertId())
+                ? new State(s.tokens(), s.refilledAt(), 0, null, null, null, false)
+                : s);
+    }
+
+    @TransactionalEventListener(phase = TransactionPhase.AFTER_COMMIT)
+    public void onClosed(PanicEscalationService.Closed e) {
+        closed(e.clientUsername(), e.alertId());
+    }
+
+    @Scheduled(fixedDelayString = "${app.panic.trigger.sweep-interval:PT5M}")
+    public void sweep() {
+        long now = clock.getAsLong();
+        clients.forEach((client, ref) -> {
+            State s = ref.get();
+            if (s.leader() == null && now - Math.max(s.lastTriggerAt(), s.refilledAt()) > idleMillis
+                    && ref.compareAndSet(s, RETIRED)) {
+                clients.remove(client, ref);
+            }
+        });
+    }
+
+    int trackedClients() {
+        return clients.size();
+    }
+
+    // returns the state replaced, or null if the client is not tracked
+    private State update(String client, UnaryOperator<State> f) {
+        AtomicReference<State> ref = clients.get(client);
+        if (ref == null) {
+            return null;
+        }
+        while (true) {
+            State current = ref.get();
+            if (current.retired()) {
+                return null;
+            }
+            if (ref.compareAndSet(current, f.apply(current))) {
+                return current;
+            }
+        }
+    }
+}
@@ -10,17 +10,21 @@ import stucanii.backend.domain.Role;
 import stucanii.backend.domain.User;
 import stucanii.backend.repository.PsychologistClientsRepository;
 import stucanii.backend.repository.UserRepository;
+import stucanii.backend.security.IdentityResolver;
 
 @Service
 public class PsychologistClientsService {
 
     private final UserRepository userRepository;
     private final PsychologistClientsRepository clientsRepository;
+    private final IdentityResolver identities;
 
     public PsychologistClientsService(UserRepository userRepository,
-                                      PsychologistClientsRepository clientsRepository) {
+                                      PsychologistClientsRepository clientsRepository,
+                                      IdentityResolver identities) {
         this.userRepository = userRepository;
         this.clientsRepository = clientsRepository;
+        this.identities = identities;
     }
 
     @Transactional(readOnly = true)
@@ -29,10 +33,7 @@ public class PsychologistClientsService {
             String search,
             Pageable pageable
     ) {
-        User me = userRepository.findByUsername(psychologistUsername)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
-
-        if (me.getRole() != Role.PSYCHOLOGIST) {
+        if (identities.resolve(psychologistUsername).role() != Role.PSYCHOLOGIST) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only PSYCHOLOGIST can view clients");
         }
 
@@ -52,10 +53,9 @@ public class PsychologistClientsService {
 
     @Transactional(readOnly = true)
     public User requireMyClient(String psychologistUsername, Integer clientId) {
-        User psychologist = userRepository.findByUsername(psychologistUsername)
-                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED, "User not found"));
+        IdentityResolver.Identity psychologist = identities.resolve(psychologistUsername);
 
-        if (psychologist.getRole() != Role.PSYCHOLOGIST) {
+        if (psychologist.role() != Role.PSYCHOLOGIST) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Only PSYCHOLOGIST allowed");
         }
 
@@ -66,8 +66,8 @@ public class PsychologistClientsService {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Target is not a CLIENT");
         }
 
-        if (client.getPsychologist() == null ||
-                !client.getPsychologist().getUsername().equalsIgnoreCase(psychologistUsername)) {
+        // the id is on the proxy: no load of the psychologist row
+        if (client.getPsychologist() == null || !client.getPsychologist().getId().equals(psychologist.id())) {
             throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Not your client");
         }
 
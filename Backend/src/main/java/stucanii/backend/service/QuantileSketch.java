@@ -0,0 +1,106 @@
+package stucanii.backend.service;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streaming quantile sketch with bounded relative error (DDSketch-style): values are counted in
+ * logarithmic buckets {@code (gamma^(i-1), gamma^i]}, so any quantile is reported within
+ * {@code relativeAccuracy} of the true value, whatever the distribution, in a few hundred buckets.
+ * Values below {@link #MIN_VALUE} (including 0) share one bucket. Sketches merge by adding counts.
+ * Thread-safe.
+ */
+public class QuantileSketch {
+
+    static final double MIN_VALUE = 1.0;
+    private static final byte FORMAT = 1;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+
+    private final TreeMap<Integer, Long> buckets = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+    private double max;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("relativeAccuracy must be in (0, 1)");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    public synchronized void add(double value) {
+        if (value < MIN_VALUE) {
+            zeroCount++;
+        } else {
+            buckets.merge((int) Math.ceil(Math.log(value) / logGamma), 1L, Long::sum);
+        }
+        count++;
+        max = Math.max(max, value);
+    }
+
+    public synchronized long count() {
+        return count;
+    }
+
+    /** @return the estimated {@code q}-quantile, or {@code NaN} when empty */
+    public synchronized double quantile(double q) {
+        if (count == 0) {
+            return Double.NaN;
+        }
+        long rank = (long) Math.floor(q * (count - 1));
+        long seen = zeroCount;
+        if (rank < seen) {
+            return 0;
+        }
+        for (Map.Entry<Integer, Long> b : buckets.entrySet()) {
+            seen += b.getValue();
+            if (rank < seen) {
+                // midpoint of the bucket in relative terms; never above the largest value seen
+                return Math.min(2 * Math.pow(gamma, b.getKey()) / (gamma + 1), max);
+            }
+        }
+        return max;
+    }
+
+    public synchronized void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracy");
+        }
+        synchronized (other) {
+            other.buckets.forEach((i, n) -> buckets.merge(i, n, Long::sum));
+            zeroCount += other.zeroCount;
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+    }
+
+    public synchronized byte[] toBytes() {
+        ByteBuffer buf = ByteBuffer.allocate(1 + 8 + 8 + 8 + 8 + 4 + buckets.size() * 12);
+        buf.put(FORMAT).putDouble(relativeAccuracy).putLong(count).putLong(zeroCount).putDouble(max);
+        buf.putInt(buckets.size());
+        buckets.forEach((i, n) -> buf.putInt(i).putLong(n));
+        return buf.array();
+    }
+
+    public static QuantileSketch fromBytes(byte[] data) {
+        ByteBuffer buf = ByteBuffer.wrap(data);
+        if (buf.get() != FORMAT) {
+            throw new IllegalArgumentException("Unknown sketch format");
+        }
+        QuantileSketch s = new QuantileSketch(buf.getDouble());
+        s.count = buf.getLong();
+        s.zeroCount = buf.getLong();
+        s.max = buf.getDouble();
+        int n = buf.getInt();
+        for (int k = 0; k < n; k++) {
+            s.buckets.put(buf.getInt(), buf.getLong());
+        }
+        return s;
+    }
+}
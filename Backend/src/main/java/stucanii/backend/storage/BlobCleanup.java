@@ -0,0 +1,74 @@
+package stucanii.backend.storage;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.io.IOException;
+
+/**
+ * Ties blob file lifetimes to the current transaction: files are only removed once the rows
+ * that reference them are gone for good, and new files are removed if their rows never commit.
+ */
+@Component
+public class BlobCleanup {
+
+    private static final Logger log = LoggerFactory.getLogger(BlobCleanup.class);
+
+    private final MaterialBlobStore blobs;
+
+    public BlobCleanup(MaterialBlobStore blobs) {
+        this.blobs = blobs;
+    }
+
+    public void deleteAfterCommit(String key) {
+        afterCommit(() -> blobs.delete(key), "blob " + key);
+    }
+
+    public void deleteIfRolledBack(String key) {
+        afterRollback(() -> blobs.delete(key), "blob " + key);
+    }
+
+    public void deleteStagingAfterCommit(String stagingId) {
+        afterCommit(() -> blobs.deleteStaging(stagingId), "staging blob " + stagingId);
+    }
+
+    public void deleteStagingIfRolledBack(String stagingId) {
+        afterRollback(() -> blobs.deleteStaging(stagingId), "staging blob " + stagingId);
+    }
+
+    private void afterCommit(IoAction action, String what) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                runQuietly(action, what);
+            }
+        });
+    }
+
+    private void afterRollback(IoAction action, String what) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_COMMITTED) {
+                    runQuietly(action, what);
+                }
+            }
+        });
+    }
+
+    private static void runQuietly(IoAction action, String what) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            log.warn("Could not delete {}", what, e);
+        }
+    }
+
+    @FunctionalInterface
+    private interface IoAction {
+        void run() throws IOException;
+    }
+}
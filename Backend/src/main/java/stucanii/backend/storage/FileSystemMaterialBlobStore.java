@@ -0,0 +1,171 @@
+package stucanii.backend.storage;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.regex.Pattern;
+
+/**
+ * Default blob store: one file per blob under {@code root/ab/cd/<sha256>}, where the SHA-256 is
+ * taken over the encrypted bytes. Writes go to {@code root/tmp} first and are moved into place
+ * once complete, so readers never see a partial blob.
+ */
+@Component
+@ConditionalOnProperty(name = "app.materials.storage.type", havingValue = "filesystem", matchIfMissing = true)
+public class FileSystemMaterialBlobStore implements MaterialBlobStore {
+
+    private static final Pattern KEY = Pattern.compile("[0-9a-f]{64}");
+    private static final Pattern STAGING_ID = Pattern.compile("[0-9a-f-]{36}");
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final Path root;
+    private final Path tmp;
+    private final Path staging;
+
+    public FileSystemMaterialBlobStore(@Value("${app.materials.storage.root}") String root) throws IOException {
+        this.root = Path.of(root).toAbsolutePath().normalize();
+        this.tmp = this.root.resolve("tmp");
+        this.staging = this.root.resolve("staging");
+        Files.createDirectories(tmp);
+        Files.createDirectories(staging);
+    }
+
+    @Override
+    public StoredBlob write(BlobWriter writer) throws IOException {
+        Path part = Files.createTempFile(tmp, "blob-", ".part");
+        try {
+            MessageDigest sha = sha256();
+            try (FileChannel ch = FileChannel.open(part, StandardOpenOption.WRITE)) {
+                OutputStream out = new DigestOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(ch), BUFFER_BYTES), sha);
+                writer.writeTo(out);
+                out.flush();
+                ch.force(true);
+            }
+
+            return publish(part, sha);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(part);
+            throw e;
+        }
+    }
+
+    @Override
+    public SeekableByteChannel open(String key) throws IOException {
+        return FileChannel.open(pathFor(key), StandardOpenOption.READ);
+    }
+
+    @Override
+    public boolean exists(String key) {
+        return Files.exists(pathFor(key));
+    }
+
+    @Override
+    public void delete(String key) throws IOException {
+        try {
+            Files.delete(pathFor(key));
+        } catch (NoSuchFileException ignored) {
+            // already gone
+        }
+    }
+
+    @Override
+    public OutputStream appendStaging(String stagingId, long offset) throws IOException {
+        Path part = stagingPath(stagingId);
+        FileChannel ch = offset == 0
+                ? FileChannel.open(part, StandardOpenOption.CREATE, StandardOpenOption.WRITE)
+                : FileChannel.open(part, StandardOpenOption.WRITE);
+        try {
+            if (ch.size() < offset) {
+                throw new IOException("Staging blob " + stagingId + " is shorter than " + offset + " bytes");
+            }
+            ch.truncate(offset);
+            ch.position(offset);
+        } catch (IOException e) {
+            ch.close();
+            throw e;
+        }
+        return new BufferedOutputStream(Channels.newOutputStream(ch), BUFFER_BYTES) {
+            @Override
+            public void close() throws IOException {
+                try (ch) {
+                    flush();
+                    ch.force(true);
+                }
+            }
+        };
+    }
+
+    @Override
+    public StoredBlob commitStaging(String stagingId) throws IOException {
+        Path part = stagingPath(stagingId);
+        MessageDigest sha = sha256();
+        try (InputStream in = Files.newInputStream(part)) {
+            byte[] buf = new byte[BUFFER_BYTES];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                sha.update(buf, 0, n);
+            }
+        }
+
+        return publish(part, sha);
+    }
+
+    @Override
+    public void deleteStaging(String stagingId) throws IOException {
+        Files.deleteIfExists(stagingPath(stagingId));
+    }
+
+    private StoredBlob publish(Path part, MessageDigest sha) throws IOException {
+        String key = HexFormat.of().formatHex(sha.digest());
+        long length = Files.size(part);
+        Path target = pathFor(key);
+        Files.createDirectories(target.getParent());
+        if (Files.exists(target)) {
+            // same bytes already stored
+            Files.delete(part);
+        } else {
+            Files.move(part, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        return new StoredBlob(key, length);
+    }
+
+    private Path stagingPath(String stagingId) {
+        if (stagingId == null || !STAGING_ID.matcher(stagingId).matches()) {
+            throw new IllegalArgumentException("Invalid staging id");
+        }
+        return staging.resolve(stagingId + ".part");
+    }
+
+    private Path pathFor(String key) {
+        if (key == null || !KEY.matcher(key).matches()) {
+            throw new IllegalArgumentException("Invalid blob key");
+        }
+        return root.resolve(key.substring(0, 2)).resolve(key.substring(2, 4)).resolve(key);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package stucanii.backend.storage;
+
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import stucanii.backend.domain.EducationalMaterial;
+import stucanii.backend.repository.EducationalMaterialRepository;
+import stucanii.backend.security.FileCryptoService;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Moves materials still stored inline in {@code educational_materials.encrypted_data} into the
+ * {@link MaterialBlobStore}, a small batch per run, one transaction per row. Legacy single-shot
+ * ciphertexts are re-encrypted into the segmented format on the way out.
+ */
+@Component
+public class MaterialBlobMigrationJob {
+
+    private static final Logger log = LoggerFactory.getLogger(MaterialBlobMigrationJob.class);
+
+    private final EducationalMaterialRepository repo;
+    private final MaterialBlobStore blobs;
+    private final FileCryptoService crypto;
+    private final TransactionTemplate tx;
+    private final JdbcTemplate jdbc;
+    private final boolean enabled;
+    private final int batchSize;
+
+    public MaterialBlobMigrationJob(EducationalMaterialRepository repo,
+                                    MaterialBlobStore blobs,
+                                    FileCryptoService crypto,
+                                    TransactionTemplate tx,
+                                    JdbcTemplate jdbc,
+                                    @Value("${app.materials.migration.enabled:true}") boolean enabled,
+                                    @Value("${app.materials.migration.batch-size:20}") int batchSize) {
+        this.repo = repo;
+        this.blobs = blobs;
+        this.crypto = crypto;
+        this.tx = tx;
+        this.jdbc = jdbc;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+    }
+
+    // ddl-auto=update never relaxes constraints, and new rows leave encrypted_data empty
+    @PostConstruct
+    void relaxInlineColumn() {
+        jdbc.execute("alter table educational_materials alter column encrypted_data drop not null");
+    }
+
+    @Scheduled(initialDelayString = "${app.materials.migration.initial-delay:PT30S}",
+            fixedDelayString = "${app.materials.migration.delay:PT30S}")
+    public void migrateBatch() {
+        if (!enabled) {
+            return;
+        }
+        List<Integer> ids = repo.findIdsStoredInline(PageRequest.of(0, batchSize));
+        int moved = 0;
+        for (Integer id : ids) {
+            try {
+                tx.executeWithoutResult(status -> migrate(id));
+                moved++;
+            } catch (RuntimeException e) {
+                log.warn("Could not move material {} to the blob store", id, e);
+            }
+        }
+        if (moved > 0) {
+            log.info("Moved {} educational materials to the blob store", moved);
+        }
+    }
+
+    private void migrate(Integer id) {
+        EducationalMaterial m = repo.findById(id).orElse(null);
+        if (m == null || m.getStorageKey() != null || m.getEncryptedData() == null) {
+            return;
+        }
+
+        byte[] data = m.getEncryptedData();
+        MaterialBlobStore.StoredBlob blob;
+        try {
+            blob = m.getFormatVersion() == FileCryptoService.FORMAT_SEGMENTED
+                    ? blobs.write(out -> out.write(data))
+                    : blobs.write(out -> crypto.encrypt(new ByteArrayInputStream(crypto.decrypt(data)), out));
+        } catch (IOException e) {
+            throw new RuntimeException("Blob write failed", e);
+        }
+
+        m.moveToBlobStore(blob.key(), FileCryptoService.FORMAT_SEGMENTED);
+        repo.save(m);
+    }
+}
@@ -0,0 +1,43 @@
+package stucanii.backend.storage;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * Storage backend for encrypted educational material blobs.
+ *
+ * Blobs are content-addressed: the key is derived from the stored (already encrypted) bytes,
+ * so a key always identifies exactly one immutable blob.
+ */
+public interface MaterialBlobStore {
+
+    /** Streams a new blob through {@code writer} and returns its content address. */
+    StoredBlob write(BlobWriter writer) throws IOException;
+
+    /** Opens a blob for positional reads. The caller closes the channel. */
+    SeekableByteChannel open(String key) throws IOException;
+
+    boolean exists(String key);
+
+    void delete(String key) throws IOException;
+
+    /**
+     * Opens a staging blob for appending at {@code offset}, discarding anything written past it
+     * (e.g. a chunk whose acknowledgement never made it to the database). Creates the blob when
+     * {@code offset} is 0. The caller closes the stream; closing makes the bytes durable.
+     */
+    OutputStream appendStaging(String stagingId, long offset) throws IOException;
+
+    /** Moves a completed staging blob to its content address. */
+    StoredBlob commitStaging(String stagingId) throws IOException;
+
+    void deleteStaging(String stagingId) throws IOException;
+
+    @FunctionalInterface
+    interface BlobWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    record StoredBlob(String key, long length) {}
+}
@@ -0,0 +1,109 @@
+package stucanii.backend.api;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import stucanii.backend.service.EducationalMaterialService;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+class EducationalMaterialControllerTest {
+
+    private static final byte[] BODY = "0123456789".getBytes(StandardCharsets.US_ASCII);
+
+    private final MockMvc mvc = MockMvcBuilders.standaloneSetup(new EducationalMaterialController(
+            new EducationalMaterialService(null, null, null, null, null, null, null) {
+                @Override
+                public DownloadedMaterial downloadAsPsychologist(String psychologistUsername, Integer materialId) {
+                    return new DownloadedMaterial("notes.txt", "text/plain", BODY.length, "\"k\"",
+                            Instant.parse("2024-01-01T00:00:00Z"), new MaterialContent() {
+                        @Override
+                        public void writeTo(OutputStream out) throws IOException {
+                            out.write(BODY);
+                        }
+
+                        @Override
+                        public void writeRange(long start, long endInclusive, OutputStream out)
+                                throws IOException {
+                            out.write(BODY, (int) start, (int) (endInclusive - start + 1));
+                        }
+                    });
+                }
+            })).build();
+
+    @Test
+    void malformedRangeIsIgnoredAndTheWholeFileServed() throws Exception {
+        MvcResult started = mvc.perform(get("/api/materials/1/download")
+                        .principal(new TestingAuthenticationToken("psy", null, "ROLE_PSYCHOLOGIST"))
+                        .header(HttpHeaders.RANGE, "bytes=abc"))
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(BODY));
+    }
+
+    @Test
+    void unsatisfiableRangeIs416() throws Exception {
+        mvc.perform(get("/api/materials/1/download")
+                        .principal(new TestingAuthenticationToken("psy", null, "ROLE_PSYCHOLOGIST"))
+                        .header(HttpHeaders.RANGE, "bytes=50-60"))
+                .andExpect(status().isRequestedRangeNotSatisfiable())
+                .andExpect(header().string(HttpHeaders.CONTENT_RANGE, "bytes */10"));
+    }
+
+    @Test
+    void satisfiableRangesSkipTheOnesPastTheEnd() {
+        assertNull(EducationalMaterialController.satisfiableRanges("bytes=abc", 10));
+        assertNull(EducationalMaterialController.satisfiableRanges("items=0-1", 10));
+
+        List<long[]> ranges = EducationalMaterialController.satisfiableRanges("bytes=0-1, 50-60, -3", 10);
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new long[]{0, 1}, ranges.get(0));
+        assertArrayEquals(new long[]{7, 9}, ranges.get(1));
+
+        assertTrue(EducationalMaterialController.satisfiableRanges("bytes=10-", 10).isEmpty());
+    }
+
+    @Test
+    void overlappingAndAdjacentRangesAreMerged() {
+        List<long[]> ranges = EducationalMaterialController.satisfiableRanges("bytes=6-7, 0-1, 1-2, 3-3, 7-8", 10);
+        assertEquals(2, ranges.size());
+        assertArrayEquals(new long[]{0, 3}, ranges.get(0));
+        assertArrayEquals(new long[]{6, 8}, ranges.get(1));
+    }
+
+    @Test
+    void tooManyRangesAreServedAsTheWholeFile() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= EducationalMaterialController.MAX_RANGES; i++) {
+            header.append(", ").append(2 * i).append('-').append(2 * i);
+        }
+
+        assertNull(EducationalMaterialController.satisfiableRanges(header.toString(), 1_000));
+    }
+
+    @Test
+    void rangesCoveringTheWholeFileGetOneCopyOfIt() throws Exception {
+        assertNull(EducationalMaterialController.satisfiableRanges("bytes=0-, 0-, 0-", 10));
+
+        MvcResult started = mvc.perform(get("/api/materials/1/download")
+                        .principal(new TestingAuthenticationToken("psy", null, "ROLE_PSYCHOLOGIST"))
+                        .header(HttpHeaders.RANGE, "bytes=0-, 0-, 0-"))
+                .andReturn();
+        mvc.perform(asyncDispatch(started))
+                .andExpect(status().isOk())
+                .andExpect(content().bytes(BODY));
+    }
+}
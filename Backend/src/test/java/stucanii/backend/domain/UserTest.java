@@ -18,4 +18,17 @@ class UserTest {
         u.setRole(Role.ADMIN);
         assertEquals(Role.ADMIN, u.getRole());
     }
+
+    @Test
+    void roleVersion_movesOnlyWhenRoleOrPsychologistChanges() {
+        User u = new User("alice", "hash");
+        User psych = new User("bob", "hash", Role.PSYCHOLOGIST);
+        u.setRole(Role.USER);
+        assertEquals(0, u.getRoleVersion());
+
+        u.setRole(Role.CLIENT);
+        u.setPsychologist(psych);
+        u.setPsychologist(psych);
+        assertEquals(2, u.getRoleVersion());
+    }
 }
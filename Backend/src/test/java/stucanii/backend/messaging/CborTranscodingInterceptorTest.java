@@ -0,0 +1,167 @@
+package stucanii.backend.messaging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import stucanii.backend.api.events.PanicAckEvent;
+import tools.jackson.databind.json.JsonMapper;
+import tools.jackson.dataformat.cbor.CBORMapper;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CborTranscodingInterceptorTest {
+
+    private static final String DESTINATION = "/topic/panic-updates/ana";
+
+    private final JsonMapper json = JsonMapper.builder().build();
+    private final CBORMapper cbor = CBORMapper.builder().build();
+    private final CborTranscodingInterceptor interceptor = new CborTranscodingInterceptor(json, cbor);
+    private final PanicAckEvent event = new PanicAckEvent(7, true, "dr.pop", "room-7", "jwt", "r-1");
+
+    // the real broker path: inbound CONNECT/SUBSCRIBE, a publish on the broker channel, MESSAGE frames out
+    private final ExecutorSubscribableChannel inbound = new ExecutorSubscribableChannel();
+    private final ExecutorSubscribableChannel outbound = new ExecutorSubscribableChannel();
+    private final ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+    private final List<Message<?>> toClients = new CopyOnWriteArrayList<>();
+    private final SimpleBrokerMessageHandler broker =
+            new SimpleBrokerMessageHandler(inbound, outbound, brokerChannel, List.of("/topic"));
+
+    @BeforeEach
+    void startBroker() {
+        outbound.addInterceptor(interceptor);
+        outbound.subscribe(toClients::add);
+        broker.start();
+    }
+
+    @AfterEach
+    void stopBroker() {
+        broker.stop();
+    }
+
+    @Test
+    void nativeSessionThatAcceptsCborGetsBinaryCborFrames() throws Exception {
+        connectAndSubscribe("s1", true);
+
+        BinaryMessage frame = assertInstanceOf(BinaryMessage.class, encode(publish("s1")));
+        ByteBuffer buf = frame.getPayload();
+        byte[] bytes = new byte[buf.remaining()];
+        buf.get(bytes);
+        int bodyStart = indexOf(bytes, "\n\n".getBytes(StandardCharsets.UTF_8)) + 2;
+        String headers = new String(bytes, 0, bodyStart, StandardCharsets.UTF_8);
+        assertTrue(headers.contains("content-type:application/cbor"), headers);
+        // body ends with the STOMP NUL terminator
+        byte[] body = Arrays.copyOfRange(bytes, bodyStart, bytes.length - 1);
+        assertEquals(event, cbor.readValue(body, PanicAckEvent.class));
+    }
+
+    @Test
+    void sockJsOrJsonSessionsKeepJson() throws Exception {
+        // no native-transport attribute: the SockJS endpoint
+        connectAndSubscribe("s1", false);
+
+        TextMessage frame = assertInstanceOf(TextMessage.class, encode(publish("s1")));
+        assertTrue(frame.getPayload().contains("content-type:application/json"));
+        assertTrue(frame.getPayload().contains("\"receiptId\":\"r-1\""));
+    }
+
+    @Test
+    void formatIsForgottenOnDisconnect() {
+        connectAndSubscribe("s1", true);
+        assertEquals(1, interceptor.cborSessions());
+
+        interceptor.onDisconnect(new SessionDisconnectEvent(this,
+                MessageBuilder.createMessage(new byte[0], new MessageHeaders(Map.of())), "s1", CloseStatus.NORMAL));
+        assertEquals(0, interceptor.cborSessions());
+    }
+
+    private void connectAndSubscribe(String sessionId, boolean nativeTransport) {
+        Map<String, Object> attributes = new ConcurrentHashMap<>();
+        if (nativeTransport) {
+            attributes.put(CborTranscodingInterceptor.NATIVE_TRANSPORT, Boolean.TRUE);
+        }
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionId(sessionId);
+        connect.setSessionAttributes(attributes);
+        connect.setNativeHeader("accept", "application/cbor");
+        connect.setHeartbeat(0, 0);
+        Message<byte[]> connectFrame = MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders());
+        interceptor.negotiate(connectFrame);
+        inbound.send(connectFrame);
+
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId(sessionId);
+        subscribe.setSubscriptionId("sub-0");
+        subscribe.setDestination(DESTINATION);
+        subscribe.setSessionAttributes(attributes);
+        inbound.send(MessageBuilder.createMessage(new byte[0], subscribe.getMessageHeaders()));
+    }
+
+    // publishes as the fanout does and returns the MESSAGE frame the broker sent to the session
+    private Message<?> publish(String sessionId) {
+        SimpMessagingTemplate messaging = new SimpMessagingTemplate(brokerChannel);
+        messaging.setMessageConverter(new JacksonJsonMessageConverter());
+        messaging.convertAndSend(DESTINATION, event);
+
+        return toClients.stream()
+                .filter(m -> SimpMessageHeaderAccessor.getMessageType(m.getHeaders()) == SimpMessageType.MESSAGE)
+                .filter(m -> sessionId.equals(SimpMessageHeaderAccessor.getSessionId(m.getHeaders())))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    private WebSocketMessage<?> encode(Message<?> message) throws Exception {
+        StompSubProtocolHandler stomp = new StompSubProtocolHandler();
+        stomp.setEncoder(new CborStompEncoder());
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        when(session.getAttributes()).thenReturn(new HashMap<>());
+        stomp.handleMessageToClient(session, message);
+
+        ArgumentCaptor<WebSocketMessage> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session).sendMessage(captor.capture());
+        return captor.getValue();
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0; i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,95 @@
+package stucanii.backend.messaging;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/** The NOTIFY payload format and the own-node dedupe, without a database. */
+class PostgresWsFanoutNotificationTest {
+
+    private final Node a = new Node("node-a");
+    private final Node b = new Node("node-b");
+
+    @Test
+    void notificationCarriesDestinationAndPayloadToTheOtherNode() {
+        b.subscriptions.subscribed("session-1", "sub-0", "/topic/panic/psy");
+
+        // a newline inside the payload must not break the <node>\n<destination>\n<json> framing
+        a.fanout.send("/topic/panic/psy", Map.of("note", "line one\nline two"));
+        b.fanout.onNotification(a.lastNotification());
+
+        Message<?> delivered = b.broker.poll();
+        assertNotNull(delivered);
+        assertEquals("/topic/panic/psy", SimpMessageHeaderAccessor.getDestination(delivered.getHeaders()));
+        assertEquals("{\"note\":\"line one\\nline two\"}",
+                new String((byte[]) delivered.getPayload(), StandardCharsets.UTF_8));
+        assertTrue(a.broker.isEmpty(), "no local subscriber on node A");
+    }
+
+    @Test
+    void ownNotificationIsNotDeliveredTwice() {
+        a.subscriptions.subscribed("session-1", "sub-0", "/topic/panic/psy");
+
+        a.fanout.send("/topic/panic/psy", Map.of("alertId", 7));
+        assertNotNull(a.broker.poll(), "delivered locally by send");
+
+        a.fanout.onNotification(a.lastNotification());
+        assertTrue(a.broker.isEmpty());
+    }
+
+    @Test
+    void ignoresMalformedAndUnsubscribedNotifications() {
+        b.subscriptions.subscribed("session-1", "sub-0", "/topic/panic/psy");
+
+        b.fanout.onNotification("garbage");
+        b.fanout.onNotification("node-a\n/topic/panic/psy");
+        b.fanout.onNotification("node-a\n/topic/panic/other\n{}");
+
+        assertTrue(b.broker.isEmpty());
+    }
+
+    @Test
+    void payloadTooLargeForNotifyStaysOnThisNode() {
+        a.subscriptions.subscribed("session-1", "sub-0", "/topic/big");
+
+        a.fanout.send("/topic/big", Map.of("blob", "x".repeat(8_000)));
+
+        assertNotNull(a.broker.poll());
+        verify(a.jdbc, never()).query(anyString(), any(RowCallbackHandler.class), any(), any());
+    }
+
+    private static final class Node {
+        final BlockingQueue<Message<?>> broker = new LinkedBlockingQueue<>();
+        final LocalSubscriptions subscriptions = new LocalSubscriptions();
+        final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+        final PostgresWsFanout fanout;
+
+        Node(String id) {
+            SimpMessagingTemplate messaging = new SimpMessagingTemplate((message, timeout) -> broker.add(message));
+            messaging.setMessageConverter(new JacksonJsonMessageConverter());
+            fanout = new PostgresWsFanout(mock(DataSource.class), jdbc, messaging, subscriptions, "ws_fanout", id);
+        }
+
+        String lastNotification() {
+            ArgumentCaptor<Object> notification = ArgumentCaptor.forClass(Object.class);
+            verify(jdbc, atLeastOnce()).query(eq("select pg_notify(?, ?)"), any(RowCallbackHandler.class),
+                    eq("ws_fanout"), notification.capture());
+            return (String) notification.getValue();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package stucanii.backend.messaging;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.converter.JacksonJsonMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Two fan-out nodes sharing one database, each with its own in-memory "broker". */
+@Testcontainers(disabledWithoutDocker = true)
+class PostgresWsFanoutTest {
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    private final Node a = new Node("node-a");
+    private final Node b = new Node("node-b");
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        a.fanout.stop();
+        b.fanout.stop();
+    }
+
+    @Test
+    void deliversOnlyOnTheNodeHoldingTheSubscription() throws Exception {
+        b.subscriptions.subscribed("session-1", "sub-0", "/topic/panic/psy");
+        startBoth();
+
+        a.fanout.send("/topic/panic/psy", Map.of("alertId", 7));
+
+        Message<?> delivered = b.broker.poll(5, TimeUnit.SECONDS);
+        assertNotNull(delivered, "node B should deliver to its subscriber");
+        assertEquals("/topic/panic/psy", SimpMessageHeaderAccessor.getDestination(delivered.getHeaders()));
+        assertEquals("{\"alertId\":7}", new String((byte[]) delivered.getPayload(), StandardCharsets.UTF_8));
+        // node A has no subscriber and ignores its own notification
+        assertTrue(a.broker.isEmpty());
+    }
+
+    @Test
+    void stopsDeliveringAfterTheSessionDisconnects() throws Exception {
+        b.subscriptions.subscribed("session-1", "sub-0", "/topic/panic-updates/ana");
+        b.subscriptions.disconnected("session-1");
+        b.subscriptions.subscribed("session-2", "sub-0", "/topic/marker");
+        startBoth();
+
+        a.fanout.send("/topic/panic-updates/ana", Map.of("alertId", 7));
+        // notifications arrive in commit order: once the marker is in, the first one was skipped
+        a.fanout.send("/topic/marker", Map.of("n", 1));
+
+        Message<?> first = b.broker.poll(5, TimeUnit.SECONDS);
+        assertNotNull(first, "the marker should arrive");
+        assertEquals("/topic/marker", SimpMessageHeaderAccessor.getDestination(first.getHeaders()));
+    }
+
+    private void startBoth() throws InterruptedException {
+        a.fanout.start();
+        b.fanout.start();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!(a.fanout.isListening() && b.fanout.isListening()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(a.fanout.isListening() && b.fanout.isListening(), "both listeners registered");
+    }
+
+    private static final class Node {
+        final BlockingQueue<Message<?>> broker = new LinkedBlockingQueue<>();
+        final LocalSubscriptions subscriptions = new LocalSubscriptions();
+        final PostgresWsFanout fanout;
+
+        Node(String id) {
+            DriverManagerDataSource ds = new DriverManagerDataSource(
+                    postgres.getJdbcUrl(), postgres.getUsername(), postgres.getPassword());
+            SimpMessagingTemplate messaging = new SimpMessagingTemplate((message, timeout) -> broker.add(message));
+            messaging.setMessageConverter(new JacksonJsonMessageConverter());
+            fanout = new PostgresWsFanout(ds, new JdbcTemplate(ds), messaging, subscriptions, "ws_fanout", id);
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package stucanii.backend.messaging;
+
+import org.junit.jupiter.api.Test;
+import stucanii.backend.domain.Role;
+
+import java.security.Principal;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PresenceRegistryTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final PresenceRegistry presence = new PresenceRegistry(Duration.ofSeconds(30), now::get);
+
+    @Test
+    void onlineWhileSubscribedToOwnPanicTopic() {
+        presence.connected("s1");
+        assertFalse(presence.isOnline(Role.PSYCHOLOGIST, "dr.pop"));
+
+        presence.subscribed("s1", "sub-0", "/topic/panic/dr.pop", user("dr.pop"));
+        presence.subscribed("s1", "sub-1", "/topic/other", user("dr.pop"));
+        assertTrue(presence.isOnline(Role.PSYCHOLOGIST, "dr.pop"));
+        assertFalse(presence.isOnline(Role.CLIENT, "dr.pop"));
+        assertEquals(List.of("dr.pop"), presence.onlineUsernames(Role.PSYCHOLOGIST));
+
+        presence.unsubscribed("s1", "sub-0");
+        assertFalse(presence.isOnline(Role.PSYCHOLOGIST, "dr.pop"));
+    }
+
+    @Test
+    void staysOnlineUntilLastSessionGoes() {
+        presence.subscribed("s1", "sub-0", "/topic/panic/dr.pop", user("dr.pop"));
+        presence.subscribed("s2", "sub-0", "/topic/panic/dr.pop", user("dr.pop"));
+        presence.subscribed("s3", "sub-0", "/topic/panic-updates/ana", user("ana"));
+        assertEquals(1, presence.onlineCount(Role.PSYCHOLOGIST));
+        assertEquals(1, presence.onlineCount(Role.CLIENT));
+
+        presence.disconnected("s1");
+        assertTrue(presence.isOnline(Role.PSYCHOLOGIST, "dr.pop"));
+        presence.disconnected("s2");
+        assertFalse(presence.isOnline(Role.PSYCHOLOGIST, "dr.pop"));
+        assertTrue(presence.isOnline(Role.CLIENT, "ana"));
+    }
+
+    @Test
+    void onlyTheSessionsOwnUserCountsNotTheTopicItNames() {
+        presence.subscribed("s1", "sub-0", "/topic/panic/dr.pop", user("mallory"));
+        presence.subscribed("s2", "sub-0", "/topic/panic/dr.pop", null);
+        assertFalse(presence.isOnline(Role.PSYCHOLOGIST, "dr.pop"));
+        assertFalse(presence.isOnline(Role.PSYCHOLOGIST, "mallory"));
+    }
+
+    @Test
+    void silentSessionsAreSweptUnlessTheyHeartbeat() {
+        presence.subscribed("quiet", "sub-0", "/topic/panic/dr.pop", user("dr.pop"));
+        presence.subscribed("beating", "sub-0", "/topic/panic/dr.ion", user("dr.ion"));
+
+        now.addAndGet(20_000);
+        presence.touch("beating");
+        now.addAndGet(20_000);
+        presence.sweep();
+
+        assertFalse(presence.isOnline(Role.PSYCHOLOGIST, "dr.pop"));
+        assertTrue(presence.isOnline(Role.PSYCHOLOGIST, "dr.ion"));
+    }
+
+    private static Principal user(String name) {
+        return () -> name;
+    }
+}
@@ -0,0 +1,96 @@
+package stucanii.backend.messaging;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.security.authentication.BadCredentialsException;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+
+import java.security.Principal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StompAuthInterceptorTest {
+
+    private static final String ADMIN_TOPIC = "/topic/panic-admin";
+
+    private final StompAuthInterceptor interceptor = new StompAuthInterceptor(auth -> {
+        String token = ((BearerTokenAuthenticationToken) auth).getToken();
+        if (!token.startsWith("valid-")) {
+            throw new BadCredentialsException("bad token");
+        }
+        return new TestingAuthenticationToken(token.substring("valid-".length()), null, "ROLE_PSYCHOLOGIST");
+    }, ADMIN_TOPIC);
+
+    @Test
+    void connectBecomesTheTokensUser() {
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setNativeHeader("Authorization", "Bearer valid-dr");
+        connect.setLeaveMutable(true);
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders());
+
+        interceptor.preSend(message, null);
+
+        assertEquals("dr", connect.getUser().getName());
+    }
+
+    @Test
+    void connectWithoutAValidTokenIsRefused() {
+        assertThrows(MessageDeliveryException.class, () -> interceptor.preSend(frame(StompCommand.CONNECT, null, null), null));
+
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setNativeHeader("Authorization", "Bearer forged");
+        connect.setLeaveMutable(true);
+        Message<byte[]> forged = MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders());
+        assertThrows(BadCredentialsException.class, () -> interceptor.preSend(forged, null));
+    }
+
+    @Test
+    void subscribesOnlyToItsOwnPanicTopics() {
+        Principal dr = user("dr", "ROLE_PSYCHOLOGIST");
+
+        assertNotNull(interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/panic/dr", dr), null));
+        assertThrows(MessageDeliveryException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/panic/other", dr), null));
+        assertThrows(MessageDeliveryException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/panic-updates/ana", dr), null));
+        assertThrows(MessageDeliveryException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, ADMIN_TOPIC, dr), null));
+        assertThrows(MessageDeliveryException.class,
+                () -> interceptor.preSend(frame(StompCommand.SUBSCRIBE, "/topic/panic/dr", null), null));
+    }
+
+    @Test
+    void adminTopicAndReceiptsFollowTheSameRule() {
+        assertTrue(StompAuthInterceptor.mayReceive(user("root", "ROLE_ADMIN"), ADMIN_TOPIC, ADMIN_TOPIC));
+        assertTrue(StompAuthInterceptor.mayReceive(user("ana", "ROLE_CLIENT"), "/topic/panic-updates/ana", ADMIN_TOPIC));
+        assertFalse(StompAuthInterceptor.mayReceive(user("ana", "ROLE_CLIENT"), "/topic/panic/ana-psych", ADMIN_TOPIC));
+        assertFalse(StompAuthInterceptor.mayReceive(null, "/topic/panic/dr", ADMIN_TOPIC));
+    }
+
+    @Test
+    void sendNeedsAnAuthenticatedSession() {
+        assertThrows(MessageDeliveryException.class,
+                () -> interceptor.preSend(frame(StompCommand.SEND, "/app/panic/receipt", null), null));
+        assertNotNull(interceptor.preSend(frame(StompCommand.SEND, "/app/panic/receipt", user("dr", "ROLE_PSYCHOLOGIST")), null));
+    }
+
+    private static Message<byte[]> frame(StompCommand command, String destination, Principal user) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+        if (destination != null) {
+            accessor.setDestination(destination);
+        }
+        accessor.setUser(user);
+        accessor.setLeaveMutable(true);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+    private static Authentication user(String name, String role) {
+        return new TestingAuthenticationToken(name, null, role);
+    }
+}
@@ -0,0 +1,201 @@
+package stucanii.backend.messaging;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+import stucanii.backend.config.CborConfig;
+import stucanii.backend.config.CorsConfig;
+import stucanii.backend.config.WebSocketConfig;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.security.JwtConfig;
+import stucanii.backend.security.JwtService;
+import stucanii.backend.security.SecurityConfig;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.lang.reflect.Type;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Load harness for the STOMP broker settings under {@code app.ws.broker}: opens thousands of authenticated
+ * native WebSocket sessions against the real broker, security and channel configuration (no database),
+ * each subscribed to its own panic topic, then publishes rounds of one event per session and reports
+ * connect time, delivery latency percentiles, queue depth and sessions the server dropped.
+ * <p>
+ * Off by default; run with
+ * {@code gradle test --tests '*StompLoadTest' -Dws.load.sessions=2000 [-Dws.load.rounds=5]}.
+ */
+@EnabledIfSystemProperty(named = "ws.load.sessions", matches = "\\d+")
+@SpringBootTest(classes = StompLoadTest.Broker.class, webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = "server.tomcat.threads.max=400")
+class StompLoadTest {
+
+    private static final int CONNECTS_IN_FLIGHT = 200;
+
+    @Configuration
+    @EnableAutoConfiguration(excludeName = {
+            "org.springframework.boot.jdbc.autoconfigure.DataSourceAutoConfiguration",
+            "org.springframework.boot.hibernate.autoconfigure.HibernateJpaAutoConfiguration",
+            "org.springframework.boot.data.jpa.autoconfigure.DataJpaRepositoriesAutoConfiguration"
+    })
+    @Import({WebSocketConfig.class, SecurityConfig.class, CorsConfig.class, JwtConfig.class, JwtService.class,
+            CborConfig.class, CborTranscodingInterceptor.class, PresenceRegistry.class, SubscriptionBatcher.class,
+            BrokerMetrics.class})
+    static class Broker {
+    }
+
+    @LocalServerPort
+    int port;
+
+    @Autowired
+    SimpMessagingTemplate messaging;
+
+    @Autowired
+    JwtService jwt;
+
+    @Autowired
+    MeterRegistry meters;
+
+    private final JsonMapper json = JsonMapper.builder().build();
+
+    @Test
+    void thousandsOfSessionsEachReceiveTheirPanicEvents() throws Exception {
+        int sessions = Integer.getInteger("ws.load.sessions");
+        int rounds = Integer.getInteger("ws.load.rounds", 5);
+
+        ThreadPoolTaskScheduler heartbeats = new ThreadPoolTaskScheduler();
+        heartbeats.setPoolSize(4);
+        heartbeats.initialize();
+        WebSocketStompClient client = new WebSocketStompClient(new StandardWebSocketClient());
+        client.setTaskScheduler(heartbeats);
+        client.setDefaultHeartbeat(new long[] {10_000, 10_000});
+        client.setInboundMessageSizeLimit(64 * 1024);
+
+        ConcurrentLinkedQueue<Long> latenciesNanos = new ConcurrentLinkedQueue<>();
+        CountDownLatch[] delivered = new CountDownLatch[rounds];
+        for (int r = 0; r < rounds; r++) {
+            delivered[r] = new CountDownLatch(sessions);
+        }
+
+        // connect and subscribe, a bounded number at a time like a reconnect storm would arrive
+        long connectStart = System.nanoTime();
+        Semaphore inFlight = new Semaphore(CONNECTS_IN_FLIGHT);
+        List<CompletableFuture<StompSession>> connecting = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            String username = "load-" + i;
+            StompHeaders connect = new StompHeaders();
+            connect.add("Authorization", "Bearer " + token(username, i + 1));
+            inFlight.acquire();
+            CompletableFuture<StompSession> f = client.connectAsync(URI.create("ws://localhost:" + port + "/ws-native"),
+                    new WebSocketHttpHeaders(), connect, new StompSessionHandlerAdapter() {});
+            connecting.add(f.whenComplete((s, ex) -> inFlight.release()).thenApply(s -> {
+                s.subscribe(StompAuthInterceptor.PSYCHOLOGIST_TOPIC + username, new StompFrameHandler() {
+                    @Override
+                    public Type getPayloadType(StompHeaders headers) {
+                        return byte[].class;
+                    }
+
+                    @Override
+                    public void handleFrame(StompHeaders headers, Object payload) {
+                        Map<?, ?> event = json.readValue((byte[]) payload, Map.class);
+                        latenciesNanos.add(System.nanoTime() - ((Number) event.get("sentAt")).longValue());
+                        delivered[((Number) event.get("round")).intValue()].countDown();
+                    }
+                });
+                return s;
+            }));
+        }
+        List<StompSession> open = new ArrayList<>(sessions);
+        for (CompletableFuture<StompSession> f : connecting) {
+            open.add(f.get(60, TimeUnit.SECONDS));
+        }
+        long connectMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - connectStart);
+        // a SUBSCRIBE is fire-and-forget; give the inbound channel time to register them all
+        awaitGauge("ws.sessions", sessions);
+        Thread.sleep(1_000);
+
+        double maxQueued = 0;
+        long publishStart = System.nanoTime();
+        for (int r = 0; r < rounds; r++) {
+            for (int i = 0; i < sessions; i++) {
+                Object event = Map.of("round", r, "sentAt", System.nanoTime());
+                messaging.convertAndSend(StompAuthInterceptor.PSYCHOLOGIST_TOPIC + "load-" + i, event);
+            }
+            maxQueued = Math.max(maxQueued, gauge("ws.channel.queued", "outbound"));
+            assertTrue(delivered[r].await(60, TimeUnit.SECONDS), "round " + r + " not fully delivered");
+        }
+        long publishMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - publishStart);
+
+        long[] sorted = latenciesNanos.stream().mapToLong(Long::longValue).sorted().toArray();
+        double slowConsumers = meters.get("ws.sessions.dropped").tag("reason", "slow-consumer").functionCounter().count();
+        System.out.printf("""
+                        STOMP load: %d sessions, %d rounds (%d events)
+                          connect+subscribe: %d ms
+                          publish+deliver:   %d ms (%.0f events/s)
+                          latency p50 %.2f ms, p95 %.2f ms, p99 %.2f ms, max %.2f ms
+                          outbound queue max sampled: %.0f, slow-consumer drops: %.0f
+                        """,
+                sessions, rounds, sorted.length, connectMillis, publishMillis,
+                sorted.length * 1000.0 / Math.max(1, publishMillis),
+                millis(sorted, 0.50), millis(sorted, 0.95), millis(sorted, 0.99), millis(sorted, 1.0),
+                maxQueued, slowConsumers);
+
+        assertEquals((long) sessions * rounds, sorted.length);
+        assertEquals(0, slowConsumers);
+
+        open.forEach(StompSession::disconnect);
+        client.stop();
+        heartbeats.shutdown();
+    }
+
+    private String token(String username, int id) {
+        User user = new User(username, "x", Role.PSYCHOLOGIST);
+        ReflectionTestUtils.setField(user, "id", id);
+        return jwt.createToken(user);
+    }
+
+    private void awaitGauge(String name, double atLeast) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (meters.get(name).gauge().value() < atLeast && System.nanoTime() < deadline) {
+            Thread.sleep(50);
+        }
+    }
+
+    private double gauge(String name, String channel) {
+        return meters.get(name).tag("channel", channel).gauge().value();
+    }
+
+    private static double millis(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int i = (int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1);
+        return sorted[Math.max(0, i)] / 1e6;
+    }
+}
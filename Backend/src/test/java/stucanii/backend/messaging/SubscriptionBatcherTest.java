@@ -0,0 +1,101 @@
+package stucanii.backend.messaging;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.util.MimeTypeUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class SubscriptionBatcherTest {
+
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final List<ScheduledFuture<?>> timers = new ArrayList<>();
+    private final List<Message<?>> sent = new ArrayList<>();
+    private final MessageChannel channel = (m, timeout) -> sent.add(m);
+    private final SubscriptionBatcher batcher;
+
+    SubscriptionBatcherTest() {
+        TaskScheduler scheduler = mock(TaskScheduler.class);
+        when(scheduler.schedule(any(Runnable.class), any(Instant.class))).thenAnswer(inv -> {
+            scheduled.add(inv.getArgument(0));
+            ScheduledFuture<?> timer = mock(ScheduledFuture.class);
+            timers.add(timer);
+            return timer;
+        });
+        batcher = new SubscriptionBatcher(scheduler, new SimpleMeterRegistry(), Duration.ofMillis(250), 3);
+    }
+
+    @Test
+    void messagesInsideTheWindowGoOutAsOneArrayFrame() {
+        batcher.subscribed("s1", "sub-0", "/topic/activity/dr.pop", "25");
+
+        assertNull(batcher.preSend(message("sub-0", "/topic/activity/dr.pop", "{\"n\":1}"), channel));
+        assertNull(batcher.preSend(message("sub-0", "/topic/activity/dr.pop", "{\"n\":2}"), channel));
+        assertTrue(sent.isEmpty());
+        assertEquals(1, scheduled.size());
+
+        scheduled.get(0).run();
+        assertEquals(1, sent.size());
+        assertEquals("[{\"n\":1},{\"n\":2}]", body(sent.get(0)));
+        assertEquals("2", NativeMessageHeaderAccessor.getFirstNativeHeader("batch-size", sent.get(0).getHeaders()));
+        // the flushed frame passes straight through
+        assertSame(sent.get(0), batcher.preSend(sent.get(0), channel));
+    }
+
+    @Test
+    void fullBatchIsSentWithoutWaiting() {
+        batcher.subscribed("s1", "sub-0", "/topic/activity/dr.pop", "25");
+        for (int i = 0; i < 3; i++) {
+            batcher.preSend(message("sub-0", "/topic/activity/dr.pop", "{}"), channel);
+        }
+        assertEquals(1, sent.size());
+        verify(timers.get(0)).cancel(false);
+
+        // the first batch's timer firing anyway does not cut the next window short
+        batcher.preSend(message("sub-0", "/topic/activity/dr.pop", "{}"), channel);
+        scheduled.get(0).run();
+        assertEquals(1, sent.size());
+        scheduled.get(1).run();
+        assertEquals(2, sent.size());
+    }
+
+    @Test
+    void panicAndUnbatchedSubscriptionsAreNeverHeld() {
+        batcher.subscribed("s1", "sub-0", "/topic/panic/dr.pop", "25");
+        batcher.subscribed("s1", "sub-1", "/topic/activity/dr.pop", "25");
+
+        Message<?> panic = message("sub-0", "/topic/panic/dr.pop", "{}");
+        assertSame(panic, batcher.preSend(panic, channel));
+        Message<?> other = message("sub-2", "/topic/activity/dr.pop", "{}");
+        assertSame(other, batcher.preSend(other, channel));
+    }
+
+    private static Message<byte[]> message(String subscriptionId, String destination, String json) {
+        SimpMessageHeaderAccessor h = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        h.setSessionId("s1");
+        h.setSubscriptionId(subscriptionId);
+        h.setDestination(destination);
+        h.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        return MessageBuilder.createMessage(json.getBytes(StandardCharsets.UTF_8), h.getMessageHeaders());
+    }
+
+    private static String body(Message<?> m) {
+        return new String((byte[]) m.getPayload(), StandardCharsets.UTF_8);
+    }
+}
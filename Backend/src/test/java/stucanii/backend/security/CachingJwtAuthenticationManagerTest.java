@@ -0,0 +1,104 @@
+package stucanii.backend.security;
+
+import com.nimbusds.jose.jwk.source.ImmutableSecret;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.authentication.AuthenticationProvider;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.oauth2.jwt.*;
+import org.springframework.security.oauth2.server.resource.authentication.BearerTokenAuthenticationToken;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationConverter;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationProvider;
+
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.security.oauth2.jose.jws.MacAlgorithm.HS256;
+
+class CachingJwtAuthenticationManagerTest {
+
+    private final SecretKey key = new SecretKeySpec(
+            "0123456789abcdef0123456789abcdef".getBytes(StandardCharsets.UTF_8), "HmacSHA256");
+    private final JwtEncoder encoder = new NimbusJwtEncoder(new ImmutableSecret<>(key));
+    private final AtomicInteger verifications = new AtomicInteger();
+    private final AtomicReference<Instant> now = new AtomicReference<>(Instant.now());
+    private final CachingJwtAuthenticationManager manager;
+
+    CachingJwtAuthenticationManagerTest() {
+        JwtAuthenticationConverter converter = new JwtAuthenticationConverter();
+        converter.setJwtGrantedAuthoritiesConverter(new JwtAuthConverter());
+        JwtAuthenticationProvider provider = new JwtAuthenticationProvider(NimbusJwtDecoder.withSecretKey(key).build());
+        provider.setJwtAuthenticationConverter(converter);
+        AuthenticationProvider counting = new AuthenticationProvider() {
+            @Override
+            public Authentication authenticate(Authentication a) throws AuthenticationException {
+                verifications.incrementAndGet();
+                return provider.authenticate(a);
+            }
+
+            @Override
+            public boolean supports(Class<?> c) {
+                return provider.supports(c);
+            }
+        };
+        manager = new CachingJwtAuthenticationManager(counting, new SimpleMeterRegistry(), 100, now::get);
+    }
+
+    @Test
+    void reusedTokenIsVerifiedOnce() {
+        String token = token(Instant.now().plusSeconds(900));
+
+        Authentication first = manager.authenticate(bearer(token, "req-1"));
+        Authentication second = manager.authenticate(bearer(token, "req-2"));
+
+        assertEquals(1, verifications.get());
+        assertEquals("ana", second.getName());
+        assertTrue(second.isAuthenticated());
+        assertEquals(first.getAuthorities(), second.getAuthorities());
+        assertTrue(second.getAuthorities().stream().map(GrantedAuthority::getAuthority).anyMatch("ROLE_CLIENT"::equals));
+        assertEquals("req-2", second.getDetails());
+    }
+
+    @Test
+    void expiredTokenIsNotServedFromCache() {
+        String token = token(Instant.now().plusSeconds(900));
+        manager.authenticate(bearer(token, null));
+
+        now.set(Instant.now().plusSeconds(901));
+        manager.authenticate(bearer(token, null));
+        assertEquals(2, verifications.get());
+    }
+
+    @Test
+    void rejectedTokensAreNotCached() {
+        String forged = token(Instant.now().plusSeconds(900)) + "x";
+
+        assertThrows(AuthenticationException.class, () -> manager.authenticate(bearer(forged, null)));
+        assertThrows(AuthenticationException.class, () -> manager.authenticate(bearer(forged, null)));
+        assertEquals(2, verifications.get());
+        assertEquals(0, manager.size());
+    }
+
+    private String token(Instant expiresAt) {
+        JwtClaimsSet claims = JwtClaimsSet.builder()
+                .issuedAt(Instant.now())
+                .expiresAt(expiresAt)
+                .subject("ana")
+                .claim("role", "CLIENT")
+                .build();
+        return encoder.encode(JwtEncoderParameters.from(JwsHeader.with(HS256).build(), claims)).getTokenValue();
+    }
+
+    private static BearerTokenAuthenticationToken bearer(String token, Object details) {
+        BearerTokenAuthenticationToken b = new BearerTokenAuthenticationToken(token);
+        b.setDetails(details);
+        return b;
+    }
+}
@@ -0,0 +1,35 @@
+package stucanii.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CryptoServiceTest {
+
+    private final CryptoService crypto = new CryptoService(Base64.getEncoder().encodeToString(new byte[32]));
+
+    @Test
+    void decryptAll_returnsPlaintextsInOrder() {
+        List<CryptoService.EncryptedPayload> payloads = List.of(
+                crypto.encrypt("first"),
+                crypto.encrypt("second"),
+                crypto.encrypt("third")
+        );
+
+        assertEquals(List.of("first", "second", "third"), crypto.decryptAll(payloads));
+    }
+
+    @Test
+    void decrypt_rejectsTamperedCiphertext() {
+        CryptoService.EncryptedPayload p = crypto.encrypt("secret");
+        p.ciphertext()[0] ^= 1;
+
+        assertThrows(RuntimeException.class, () -> crypto.decrypt(p.iv(), p.ciphertext()));
+        // the thread's cipher must still be usable after a failed doFinal
+        CryptoService.EncryptedPayload ok = crypto.encrypt("still works");
+        assertEquals("still works", crypto.decrypt(ok.iv(), ok.ciphertext()));
+    }
+}
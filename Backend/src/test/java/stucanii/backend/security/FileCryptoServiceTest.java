@@ -0,0 +1,140 @@
+package stucanii.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileCryptoServiceTest {
+
+    private static final int S = FileCryptoService.SEGMENT_SIZE;
+
+    private final FileCryptoService crypto = new FileCryptoService(Base64.getEncoder().encodeToString(new byte[32]));
+
+    @Test
+    void roundTrip_acrossSegmentBoundaries() throws IOException {
+        for (int size : new int[]{0, 1, S - 1, S, S + 1, 3 * S}) {
+            byte[] plain = randomBytes(size);
+
+            byte[] enc = encrypt(plain);
+            assertEquals(FileCryptoService.encryptedSize(size), enc.length, "size " + size);
+            assertArrayEquals(plain, decrypt(enc), "size " + size);
+        }
+    }
+
+    @Test
+    void decrypt_rejectsDroppedLastSegment() throws IOException {
+        byte[] enc = encrypt(randomBytes(2 * S));
+        byte[] truncated = Arrays.copyOf(enc, FileCryptoService.HEADER_BYTES + S + FileCryptoService.TAG_BYTES);
+
+        assertThrows(IOException.class, () -> decrypt(truncated));
+    }
+
+    @Test
+    void decryptRange_returnsOnlyTheRequestedBytes() throws IOException {
+        byte[] plain = randomBytes(3 * S + 17);
+        byte[] enc = encrypt(plain);
+
+        long[][] ranges = {{0, 0}, {5, S + 5}, {S - 1, S}, {3 * S, 3 * S + 16}, {0, plain.length - 1}};
+        for (long[] range : ranges) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            crypto.decryptRange(new SeekableInMemoryChannel(enc), plain.length, range[0], range[1], out);
+            assertArrayEquals(Arrays.copyOfRange(plain, (int) range[0], (int) range[1] + 1), out.toByteArray(),
+                    range[0] + "-" + range[1]);
+        }
+    }
+
+    @Test
+    void encryptSegments_chunkByChunkDecryptsLikeAWholeFile() throws IOException {
+        byte[] plain = randomBytes(2 * S + 100);
+        byte[] header = crypto.newHeader();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(header);
+        crypto.encryptSegments(header, 0, new ByteArrayInputStream(plain, 0, 2 * S), 2 * S, false, out);
+        crypto.encryptSegments(header, 2, new ByteArrayInputStream(plain, 2 * S, 100), 100, true, out);
+
+        assertArrayEquals(plain, decrypt(out.toByteArray()));
+    }
+
+    private byte[] encrypt(byte[] plain) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(plain.length, crypto.encrypt(new ByteArrayInputStream(plain), out));
+        return out.toByteArray();
+    }
+
+    private byte[] decrypt(byte[] enc) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        crypto.decrypt(new ByteArrayInputStream(enc), out);
+        return out.toByteArray();
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] b = new byte[size];
+        new Random(size).nextBytes(b);
+        return b;
+    }
+
+    private static final class SeekableInMemoryChannel implements SeekableByteChannel {
+        private final byte[] data;
+        private int position;
+
+        SeekableInMemoryChannel(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position >= data.length) {
+                return -1;
+            }
+            int n = Math.min(dst.remaining(), data.length - position);
+            dst.put(data, position, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            position = (int) newPosition;
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return data.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package stucanii.backend.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.oauth2.jwt.Jwt;
+import org.springframework.security.oauth2.server.resource.authentication.JwtAuthenticationToken;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+import org.springframework.web.server.ResponseStatusException;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.security.IdentityResolver.Identity;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IdentityResolverTest {
+
+    private final Map<String, Identity> users = new HashMap<>();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final AtomicLong now = new AtomicLong(1_000);
+    private final IdentityResolver resolver = new IdentityResolver(username -> {
+        loads.incrementAndGet();
+        return Optional.ofNullable(users.get(username));
+    }, new SimpleMeterRegistry(), Duration.ofSeconds(30), 2, now::get);
+
+    @AfterEach
+    void clearRequest() {
+        RequestContextHolder.resetRequestAttributes();
+        SecurityContextHolder.clearContext();
+    }
+
+    @Test
+    void servesRepeatLookupsFromCacheUntilTheyExpire() {
+        users.put("ana", new Identity(1, "ana", Role.CLIENT, 7, 0));
+
+        assertEquals(Role.CLIENT, resolver.resolve("ana").role());
+        assertEquals(7, resolver.resolve("ana").psychologistId());
+        assertEquals(1, loads.get());
+
+        now.addAndGet(30_000);
+        resolver.resolve("ana");
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void evictionMakesRoleChangesVisibleAtOnce() {
+        users.put("ana", new Identity(1, "ana", Role.USER, null, 0));
+        resolver.resolve("ana");
+
+        users.put("ana", new Identity(1, "ana", Role.CLIENT, 7, 0));
+        assertEquals(Role.USER, resolver.resolve("ana").role());
+
+        resolver.evict(user(1, "ana", Role.CLIENT));
+        assertEquals(Role.CLIENT, resolver.resolve("ana").role());
+
+        users.put("ana", new Identity(1, "ana", Role.PSYCHOLOGIST, null, 0));
+        resolver.evict(1);
+        assertEquals(Role.PSYCHOLOGIST, resolver.resolve("ana").role());
+    }
+
+    @Test
+    void currentTokenIsServedFromTheCache() {
+        users.put("ana", new Identity(1, "ana", Role.CLIENT, 7, 2));
+        signIn("ana", 1, Role.CLIENT, 2);
+
+        assertEquals(new Identity(1, "ana", Role.CLIENT, 7, 2), resolver.resolve("ana"));
+        resolver.resolve("ana");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void tokenOlderThanTheStoredRoleVersionIsRefused() {
+        users.put("ana", new Identity(1, "ana", Role.PSYCHOLOGIST, null, 3));
+        signIn("ana", 1, Role.CLIENT, 2);
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> resolver.resolve("ana"));
+        assertEquals(HttpStatus.UNAUTHORIZED, e.getStatusCode());
+    }
+
+    @Test
+    void roleChangeMadeElsewhereIsSeenWhenTheCachedEntryIsOlderThanTheToken() {
+        // cached here before another node changed the role and issued a new token
+        users.put("ana", new Identity(1, "ana", Role.CLIENT, 7, 2));
+        resolver.resolve("ana");
+        users.put("ana", new Identity(1, "ana", Role.PSYCHOLOGIST, null, 3));
+
+        signIn("ana", 1, Role.PSYCHOLOGIST, 3);
+        assertEquals(Role.PSYCHOLOGIST, resolver.resolve("ana").role());
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void ignoresTokensWithoutIdentityClaims() {
+        users.put("ana", new Identity(1, "ana", Role.CLIENT, 7, 0));
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(
+                jwt(Map.of("sub", "ana", "role", "CLIENT"))));
+
+        resolver.resolve("ana");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void resolvesOncePerRequest() {
+        users.put("ana", new Identity(1, "ana", Role.CLIENT, 7, 0));
+        RequestContextHolder.setRequestAttributes(new ServletRequestAttributes(new MockHttpServletRequest()));
+
+        resolver.resolve("ana");
+        resolver.evict(user(1, "ana", Role.CLIENT));
+        resolver.resolve("ana");
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    void deletedUsersTokensAreNoLongerTrusted() {
+        users.put("ana", new Identity(1, "ana", Role.CLIENT, 7, 3));
+        signIn("ana", 1, Role.CLIENT, 3);
+        resolver.resolve("ana");
+
+        users.remove("ana");
+        resolver.evict(1);
+        ResponseStatusException gone = assertThrows(ResponseStatusException.class, () -> resolver.resolve("ana"));
+        assertEquals(HttpStatus.UNAUTHORIZED, gone.getStatusCode());
+
+        // the name taken again by someone else: the old token is not theirs
+        users.put("ana", new Identity(2, "ana", Role.CLIENT, null, 3));
+        ResponseStatusException reused = assertThrows(ResponseStatusException.class, () -> resolver.resolve("ana"));
+        assertEquals(HttpStatus.UNAUTHORIZED, reused.getStatusCode());
+    }
+
+    @Test
+    void unknownUserIsUnauthorizedAndNotCached() {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> resolver.resolve("ghost"));
+        assertEquals(HttpStatus.UNAUTHORIZED, e.getStatusCode());
+        assertEquals(0, resolver.size());
+    }
+
+    @Test
+    void staysWithinItsBound() {
+        for (String u : new String[] {"a", "b", "c"}) {
+            users.put(u, new Identity(u.charAt(0) - 'a', u, Role.CLIENT, null, 0));
+            resolver.resolve(u);
+        }
+        assertEquals(2, resolver.size());
+    }
+
+    private void signIn(String username, int id, Role role, int roleVersion) {
+        Map<String, Object> claims = new HashMap<>();
+        claims.put("sub", username);
+        claims.put("role", role.name());
+        claims.put(JwtService.USER_ID, id);
+        claims.put(JwtService.ROLE_VERSION, roleVersion);
+        SecurityContextHolder.getContext().setAuthentication(new JwtAuthenticationToken(jwt(claims)));
+    }
+
+    private static Jwt jwt(Map<String, Object> claims) {
+        return new Jwt("token", Instant.now(), Instant.now().plusSeconds(900), Map.of("alg", "HS256"), claims);
+    }
+
+    // a User with that id whose role was just changed, as the services hand it to evict
+    private static User user(int id, String username, Role role) {
+        User u = new User(username, "hash");
+        u.setRole(role);
+        ReflectionTestUtils.setField(u, "id", id);
+        return u;
+    }
+}
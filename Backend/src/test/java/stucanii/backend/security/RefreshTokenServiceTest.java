@@ -0,0 +1,48 @@
+package stucanii.backend.security;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import stucanii.backend.domain.RefreshToken;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.RefreshTokenRepository;
+
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class RefreshTokenServiceTest {
+
+    @Test
+    void hash_matchesPostgresSha256Hex() {
+        // select encode(sha256(convert_to('abc', 'UTF8')), 'hex'): what the migration wrote for old rows
+        assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+                RefreshTokenService.hash("abc"));
+        assertEquals(64, RefreshTokenService.hash("x".repeat(64)).length());
+    }
+
+    @Test
+    void logoutRevokesTheTokenEvenWhenTheFilterClaimsItAlreadyIs() {
+        String hash = RefreshTokenService.hash("live-token");
+        // a false positive: the filter says revoked, the row is live
+        RevokedTokenFilter filter = new RevokedTokenFilter(sink -> sink.accept(hash), 1000, 0.01);
+        filter.rebuild();
+        assertTrue(filter.mightContain(hash));
+
+        RefreshToken row = new RefreshToken(hash, new User("ana", "x", Role.CLIENT), Instant.now().plusSeconds(60));
+        RefreshTokenRepository repo = mock(RefreshTokenRepository.class);
+        when(repo.findByTokenHash(hash)).thenReturn(Optional.of(row));
+        RefreshTokenService service = new RefreshTokenService(repo,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)), filter,
+                mock(ApplicationEventPublisher.class), new SimpleMeterRegistry(), 60);
+
+        service.revoke("live-token");
+
+        assertTrue(row.isRevoked());
+    }
+}
@@ -0,0 +1,55 @@
+package stucanii.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RevokedTokenFilterTest {
+
+    @Test
+    void neverMissesWhatWasAddedAndRarelyClaimsWhatWasNot() {
+        RevokedTokenFilter.Bloom bloom = new RevokedTokenFilter.Bloom(10_000, 0.001);
+        for (int i = 0; i < 10_000; i++) {
+            bloom.add(RefreshTokenService.hash("revoked-" + i));
+        }
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(bloom.mightContain(RefreshTokenService.hash("revoked-" + i)));
+        }
+
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (bloom.mightContain(RefreshTokenService.hash("live-" + i))) {
+                falsePositives++;
+            }
+        }
+        // expected ~100 at 0.001
+        assertTrue(falsePositives < 300, "false positives: " + falsePositives);
+    }
+
+    @Test
+    void rebuildForgetsPurgedRowsAndKeepsRevocationsMadeWhileItRuns() {
+        List<String> table = new ArrayList<>(List.of(RefreshTokenService.hash("a"), RefreshTokenService.hash("b")));
+        RevokedTokenFilter[] self = new RevokedTokenFilter[1];
+        RevokedTokenFilter filter = new RevokedTokenFilter(sink -> {
+            table.forEach(sink);
+            if (self[0].size() > 0) {
+                // committed after the rebuild's query started
+                self[0].add(RefreshTokenService.hash("c"));
+            }
+        }, 1_000, 0.0001);
+        self[0] = filter;
+
+        filter.rebuild();
+        assertTrue(filter.mightContain(RefreshTokenService.hash("a")));
+        assertFalse(filter.mightContain(RefreshTokenService.hash("c")));
+
+        table.remove(0);
+        filter.rebuild();
+        assertFalse(filter.mightContain(RefreshTokenService.hash("a")));
+        assertTrue(filter.mightContain(RefreshTokenService.hash("b")));
+        assertTrue(filter.mightContain(RefreshTokenService.hash("c")));
+    }
+}
@@ -0,0 +1,74 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import stucanii.backend.domain.AckLatencySketch;
+import stucanii.backend.repository.AckLatencySketchRepository;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class AckLatencyAnalyticsTest {
+
+    private static final Instant CUTOFF = Instant.parse("2026-01-01T10:00:00Z");
+
+    private final AckLatencySketchRepository repo = mock(AckLatencySketchRepository.class);
+    private final AckLatencyAnalytics analytics = new AckLatencyAnalytics(repo, mock(JdbcTemplate.class),
+            new TransactionTemplate(mock(PlatformTransactionManager.class)), new SimpleMeterRegistry());
+
+    @Test
+    void acknowledgementsAlreadyInTheBackfillAreNotCountedAgain() {
+        AckLatencySketch all = row(AckLatencyAnalytics.ALL, 1_000, 2_000);
+        all.markBackfilled(CUTOFF);
+        when(repo.count()).thenReturn(1L);
+        when(repo.findAll()).thenReturn(List.of(all));
+
+        // one acknowledged before the backfill's cutoff (so it is in the row), one after
+        analytics.onAcknowledged(ack(CUTOFF.minusSeconds(1)));
+        analytics.onAcknowledged(ack(CUTOFF.plusSeconds(1)));
+        analytics.load();
+
+        assertEquals(3, analytics.snapshot().get(AckLatencyAnalytics.ALL).count());
+    }
+
+    @Test
+    void persistMergesOnlyThisNodesNewAcknowledgementsIntoTheStoredRow() {
+        when(repo.count()).thenReturn(1L);
+        when(repo.findAll()).thenReturn(List.of());
+        analytics.load();
+        analytics.onAcknowledged(ack(CUTOFF));
+
+        // meanwhile another node wrote 5 samples
+        AckLatencySketch stored = row(AckLatencyAnalytics.ALL, 1_000, 1_000, 1_000, 1_000, 1_000);
+        AckLatencySketch psychologist = row(AckLatencyAnalytics.psychologistScope(7));
+        when(repo.findForUpdate(anyCollection())).thenReturn(List.of(stored, psychologist));
+        analytics.persist();
+
+        verify(repo, times(2)).insertIfAbsent(anyString(), any());
+        assertEquals(6, stored.getSampleCount());
+        assertEquals(1, psychologist.getSampleCount());
+
+        // nothing new: nothing written
+        analytics.persist();
+        verify(repo, times(1)).findForUpdate(anyCollection());
+    }
+
+    private static AckLatencyAnalytics.Acknowledged ack(Instant acknowledgedAt) {
+        return new AckLatencyAnalytics.Acknowledged(7, acknowledgedAt.minusSeconds(30), acknowledgedAt);
+    }
+
+    private static AckLatencySketch row(String scope, double... millis) {
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (double m : millis) {
+            sketch.add(m);
+        }
+        return new AckLatencySketch(scope, sketch.toBytes(), sketch.count());
+    }
+}
@@ -0,0 +1,68 @@
+package stucanii.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimerWheelTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final List<Integer> expired = new ArrayList<>();
+    private final HashedTimerWheel<Integer> wheel = new HashedTimerWheel<>(100, 8, now::get, expired::add);
+
+    @Test
+    void expiresAfterDeadlineNeverBefore_evenPastOneRotation() {
+        wheel.schedule(1, now.get() + 250);
+        wheel.schedule(2, now.get() + 2_050); // more than one full rotation (8 x 100ms)
+
+        now.addAndGet(200);
+        wheel.advance();
+        assertTrue(expired.isEmpty());
+
+        now.addAndGet(200);
+        wheel.advance();
+        assertEquals(List.of(1), expired);
+
+        now.addAndGet(1_600);
+        wheel.advance();
+        assertEquals(List.of(1), expired);
+
+        now.addAndGet(200);
+        wheel.advance();
+        assertEquals(List.of(1, 2), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void cancelledAndRescheduledKeysFireOnlyOnceOrNever() {
+        wheel.schedule(1, now.get() + 100);
+        wheel.schedule(2, now.get() + 100);
+        wheel.schedule(2, now.get() + 500);
+        assertTrue(wheel.cancel(1));
+
+        now.addAndGet(300);
+        wheel.advance();
+        assertTrue(expired.isEmpty());
+
+        now.addAndGet(400);
+        wheel.advance();
+        assertEquals(List.of(2), expired);
+        assertFalse(wheel.cancel(2));
+    }
+
+    @Test
+    void handlesManyPendingDeadlines() {
+        for (int i = 0; i < 50_000; i++) {
+            wheel.schedule(i, now.get() + (i % 5_000));
+        }
+        assertEquals(50_000, wheel.size());
+
+        now.addAndGet(6_000);
+        assertEquals(50_000, wheel.advance());
+        assertEquals(0, wheel.size());
+    }
+}
@@ -0,0 +1,107 @@
+package stucanii.backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import stucanii.backend.domain.EducationalMaterial;
+import stucanii.backend.domain.MaterialLibraryItem;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.EducationalMaterialRepository;
+import stucanii.backend.repository.MaterialLibraryItemRepository;
+import stucanii.backend.repository.UserRepository;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/** Reference counting and deduplication under concurrent uploads, against a real database. */
+@Testcontainers(disabledWithoutDocker = true)
+@SpringBootTest
+class MaterialLibraryConcurrencyTest {
+
+    private static final int CLIENTS = 8;
+
+    @Container
+    static final PostgreSQLContainer<?> postgres = new PostgreSQLContainer<>("postgres:16-alpine");
+
+    @DynamicPropertySource
+    static void properties(DynamicPropertyRegistry registry) {
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+        registry.add("app.materials.storage.root",
+                () -> Path.of(System.getProperty("java.io.tmpdir"), "materials-" + UUID.randomUUID()).toString());
+    }
+
+    @Autowired
+    MaterialLibraryService library;
+
+    @Autowired
+    MaterialLibraryItemRepository items;
+
+    @Autowired
+    EducationalMaterialRepository materials;
+
+    @Autowired
+    UserRepository users;
+
+    @Test
+    void concurrentUploadsOfOneFileShareOneItemAndCountEveryAssignment() throws Exception {
+        User psych = users.save(new User("dr-concurrent", "hash", Role.PSYCHOLOGIST));
+        List<User> clients = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; i++) {
+            User client = new User("client-concurrent-" + i, "hash", Role.CLIENT);
+            client.setPsychologist(psych);
+            clients.add(users.save(client));
+        }
+        byte[] file = "the same worksheet".getBytes();
+
+        List<Integer> materialIds = runConcurrently(clients.stream().<Callable<Integer>>map(client -> () -> {
+            MaterialLibraryItem item = library.store(psych, "worksheet.pdf", "application/pdf",
+                    new ByteArrayInputStream(file));
+            return library.assign(psych, item, List.of(client)).get(0);
+        }).toList());
+
+        List<MaterialLibraryItem> stored = items.findByPsychologist_UsernameOrderByCreatedAtDesc("dr-concurrent");
+        assertEquals(1, stored.size());
+        assertEquals(CLIENTS, stored.get(0).getRefCount());
+
+        runConcurrently(materialIds.stream().<Callable<Integer>>map(id -> () -> {
+            EducationalMaterial m = materials.findById(id).orElseThrow();
+            library.release(m);
+            return id;
+        }).toList());
+
+        MaterialLibraryItem kept = items.findById(stored.get(0).getId()).orElseThrow();
+        assertEquals(0, kept.getRefCount());
+        library.delete("dr-concurrent", kept.getId());
+        assertTrue(items.findById(kept.getId()).isEmpty());
+    }
+
+    private static <T> List<T> runConcurrently(List<Callable<T>> tasks) throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(tasks.size());
+        try {
+            List<T> results = new ArrayList<>();
+            for (Future<T> f : pool.invokeAll(tasks)) {
+                results.add(f.get());
+            }
+            return results;
+        } finally {
+            pool.shutdown();
+        }
+    }
+}
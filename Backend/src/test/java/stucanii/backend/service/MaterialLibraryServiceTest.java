@@ -0,0 +1,153 @@
+package stucanii.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.server.ResponseStatusException;
+import stucanii.backend.domain.EducationalMaterial;
+import stucanii.backend.domain.MaterialLibraryItem;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.EducationalMaterialRepository;
+import stucanii.backend.repository.MaterialLibraryItemRepository;
+import stucanii.backend.security.FileCryptoService;
+import stucanii.backend.storage.BlobCleanup;
+import stucanii.backend.storage.FileSystemMaterialBlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class MaterialLibraryServiceTest {
+
+    @TempDir
+    Path root;
+
+    private final MaterialLibraryItemRepository library = mock(MaterialLibraryItemRepository.class);
+    private final EducationalMaterialRepository materials = mock(EducationalMaterialRepository.class);
+    private final BlobCleanup cleanup = mock(BlobCleanup.class);
+    private final User psych = user(1, "dr", Role.PSYCHOLOGIST);
+    private KeyCapturingBlobStore blobs;
+    private MaterialLibraryService service;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobs = new KeyCapturingBlobStore(root.toString());
+        service = new MaterialLibraryService(null, library, materials,
+                new FileCryptoService(Base64.getEncoder().encodeToString(new byte[32])), blobs, cleanup);
+    }
+
+    @Test
+    void releasingTheLastAssignmentOfAnUploadedMaterialFreesTheBlob() {
+        MaterialLibraryItem item = item(10, "stored-key");
+        item.addReferences(2);
+        when(library.findForUpdate(10)).thenReturn(Optional.of(item));
+
+        service.release(material(item));
+        verify(library, never()).delete(any());
+        verifyNoInteractions(cleanup);
+
+        service.release(material(item));
+        assertEquals(0, item.getRefCount());
+        verify(library).delete(item);
+        verify(cleanup).deleteAfterCommit("stored-key");
+    }
+
+    @Test
+    void releasingTheLastAssignmentKeepsALibraryUpload() {
+        MaterialLibraryItem item = item(10, "stored-key");
+        item.markCurated();
+        item.addReferences(1);
+        when(library.findForUpdate(10)).thenReturn(Optional.of(item));
+        EducationalMaterial m = material(item);
+
+        service.release(m);
+
+        assertEquals(0, item.getRefCount());
+        verify(materials).delete(m);
+        verify(library, never()).delete(any());
+        verifyNoInteractions(cleanup);
+    }
+
+    @Test
+    void deleteIsRefusedWhileAssignedAndFreesTheBlobOnceUnassigned() {
+        MaterialLibraryItem item = item(10, "stored-key");
+        item.addReferences(1);
+        when(library.findForUpdate(10)).thenReturn(Optional.of(item));
+
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> service.delete("dr", 10));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+
+        item.removeReference();
+        service.delete("dr", 10);
+        verify(library).delete(item);
+        verify(cleanup).deleteAfterCommit("stored-key");
+    }
+
+    @Test
+    void sameFileUploadedConcurrentlyAdoptsTheStoredCopy() throws IOException {
+        MaterialLibraryItem existing = item(10, "stored-key");
+        when(library.insertIfAbsent(eq(1), any(), any(), anyLong(), any(), any())).thenReturn(0);
+        when(library.findByContentHashForUpdate(eq(1), any())).thenReturn(Optional.of(existing));
+
+        MaterialLibraryItem adopted = service.store(psych, "copy.pdf", "application/pdf",
+                new ByteArrayInputStream("same file".getBytes()));
+
+        assertSame(existing, adopted);
+        assertFalse(blobs.exists(blobs.lastKey), "the duplicate blob is dropped");
+        verify(cleanup, never()).deleteIfRolledBack(any());
+    }
+
+    @Test
+    void itemDeletedWhileAdoptingIsInsertedAgain() throws IOException {
+        MaterialLibraryItem inserted = item(11, "ignored");
+        when(library.insertIfAbsent(eq(1), any(), any(), anyLong(), any(), any())).thenReturn(0, 1);
+        when(library.findByContentHashForUpdate(eq(1), any())).thenReturn(Optional.empty()).thenReturn(Optional.of(inserted));
+
+        assertSame(inserted, service.store(psych, "a.pdf", "application/pdf",
+                new ByteArrayInputStream("file".getBytes())));
+        verify(library, times(2)).insertIfAbsent(eq(1), any(), any(), anyLong(), any(), any());
+        verify(cleanup).deleteIfRolledBack(blobs.lastKey);
+        assertTrue(blobs.exists(blobs.lastKey));
+    }
+
+    private MaterialLibraryItem item(int id, String storageKey) {
+        MaterialLibraryItem item = new MaterialLibraryItem(psych, "notes.pdf", "application/pdf", 9, "hash", storageKey);
+        ReflectionTestUtils.setField(item, "id", id);
+        return item;
+    }
+
+    private EducationalMaterial material(MaterialLibraryItem item) {
+        return new EducationalMaterial(user(2, "ana", Role.CLIENT), psych, item,
+                "notes.pdf", "application/pdf", FileCryptoService.FORMAT_SEGMENTED);
+    }
+
+    private static User user(int id, String username, Role role) {
+        User u = new User(username, "hash", role);
+        ReflectionTestUtils.setField(u, "id", id);
+        return u;
+    }
+
+    private static class KeyCapturingBlobStore extends FileSystemMaterialBlobStore {
+        String lastKey;
+
+        KeyCapturingBlobStore(String root) throws IOException {
+            super(root);
+        }
+
+        @Override
+        public StoredBlob write(BlobWriter writer) throws IOException {
+            StoredBlob blob = super.write(writer);
+            lastKey = blob.key();
+            return blob;
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package stucanii.backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import stucanii.backend.domain.MaterialUploadSession;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.MaterialUploadSessionRepository;
+import stucanii.backend.security.FileCryptoService;
+import stucanii.backend.storage.FileSystemMaterialBlobStore;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Optional;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class MaterialUploadServiceTest {
+
+    private static final int CHUNK = FileCryptoService.SEGMENT_SIZE;
+    private static final byte[] FILE = new byte[CHUNK + 10];
+    private static final String ID = "00000000-0000-0000-0000-000000000001";
+
+    static {
+        new Random(1).nextBytes(FILE);
+    }
+
+    @TempDir
+    Path root;
+
+    private final FileCryptoService crypto = new FileCryptoService(Base64.getEncoder().encodeToString(new byte[32]));
+    private FailingBlobStore blobs;
+    private MaterialUploadSession session;
+    private MaterialUploadService uploads;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        blobs = new FailingBlobStore(root.toString());
+        session = new MaterialUploadSession(ID, new User("dr", "hash"), new User("ana", "hash"),
+                "notes.pdf", "application/pdf", FILE.length, CHUNK, crypto.newHeader());
+        try (OutputStream out = blobs.appendStaging(ID, 0)) {
+            out.write(session.getCryptoHeader());
+        }
+
+        MaterialUploadSessionRepository sessions = mock(MaterialUploadSessionRepository.class);
+        when(sessions.findById(ID)).thenReturn(Optional.of(session));
+        when(sessions.findForUpdate(ID)).thenReturn(Optional.of(session));
+        uploads = new MaterialUploadService(sessions, null, null, crypto, blobs, null,
+                new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                CHUNK, 1 << 20, Duration.ofHours(24), Duration.ofMinutes(2));
+    }
+
+    @Test
+    void rejectsShortAndLongChunksBeforeSealingAnything() throws IOException {
+        for (int size : new int[] {CHUNK - 1, CHUNK + 1}) {
+            ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> put(0, Arrays.copyOf(FILE, size)));
+            assertEquals(HttpStatus.BAD_REQUEST, e.getStatusCode());
+        }
+        assertEquals(FileCryptoService.HEADER_BYTES, stagingSize());
+        assertNull(session.getPendingChunk());
+
+        put(0, chunk(0));
+        assertEquals(CHUNK, session.getReceivedBytes());
+    }
+
+    @Test
+    void acknowledgedChunkIsNotSealedAgain() throws IOException {
+        put(0, chunk(0));
+        long staged = stagingSize();
+
+        byte[] other = chunk(0).clone();
+        other[0] ^= 1;
+        put(0, other);
+
+        assertEquals(CHUNK, session.getReceivedBytes());
+        assertEquals(staged, stagingSize());
+    }
+
+    @Test
+    void failedWriteMayOnlyBeRetriedWithTheSameBytes() throws IOException {
+        blobs.failNextAppend = true;
+        assertThrows(IOException.class, () -> put(0, chunk(0)));
+        assertEquals(0, session.getReceivedBytes());
+        assertNull(session.getPendingWriter());
+
+        byte[] other = chunk(0).clone();
+        other[0] ^= 1;
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> put(0, other));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+
+        put(0, chunk(0));
+        put(1, chunk(1));
+        assertEquals(FILE.length, session.getReceivedBytes());
+        assertArrayEquals(FILE, decryptStaging());
+    }
+
+    @Test
+    void chunkBeingWrittenElsewhereIsRefusedUntilItsLeaseRunsOut() throws IOException {
+        byte[] digest = digestOf(chunk(0));
+        session.claim(0, digest, "other-writer", Instant.now());
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, () -> put(0, chunk(0)));
+        assertEquals(HttpStatus.CONFLICT, e.getStatusCode());
+
+        session.claim(0, digest, "other-writer", Instant.now().minus(Duration.ofMinutes(3)));
+        put(0, chunk(0));
+        assertEquals(CHUNK, session.getReceivedBytes());
+    }
+
+    private void put(long index, byte[] bytes) throws IOException {
+        uploads.putChunk("dr", ID, index, new ByteArrayInputStream(bytes));
+    }
+
+    private static byte[] chunk(int index) {
+        return Arrays.copyOfRange(FILE, index * CHUNK, Math.min(FILE.length, (index + 1) * CHUNK));
+    }
+
+    private long stagingSize() throws IOException {
+        try (var files = Files.walk(root)) {
+            return files.filter(p -> p.getFileName().toString().equals(ID + ".part")).findFirst().map(p -> {
+                try {
+                    return Files.size(p);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }).orElseThrow();
+        }
+    }
+
+    private byte[] decryptStaging() throws IOException {
+        String key = blobs.commitStaging(ID).key();
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        try (SeekableByteChannel ch = blobs.open(key)) {
+            crypto.decrypt(Channels.newInputStream(ch), plain);
+        }
+        return plain.toByteArray();
+    }
+
+    private static byte[] digestOf(byte[] bytes) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(bytes);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static class FailingBlobStore extends FileSystemMaterialBlobStore {
+        boolean failNextAppend;
+
+        FailingBlobStore(String root) throws IOException {
+            super(root);
+        }
+
+        @Override
+        public OutputStream appendStaging(String stagingId, long offset) throws IOException {
+            OutputStream out = super.appendStaging(stagingId, offset);
+            if (!failNextAppend) {
+                return out;
+            }
+            failNextAppend = false;
+            // fails part-way, after some ciphertext reached the file
+            return new OutputStream() {
+                private int written;
+
+                @Override
+                public void write(int b) throws IOException {
+                    if (++written > 1000) {
+                        throw new IOException("disk full");
+                    }
+                    out.write(b);
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+    }
+}
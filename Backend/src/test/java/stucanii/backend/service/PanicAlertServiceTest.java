@@ -0,0 +1,96 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.http.HttpStatus;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.repository.PanicAlertRepository;
+import stucanii.backend.repository.PanicOutboxRepository;
+import stucanii.backend.repository.UserRepository;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class PanicAlertServiceTest {
+
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final PanicTriggerGuard guard = new PanicTriggerGuard(
+            meters, Duration.ofSeconds(30), 3, Duration.ofMinutes(2), System::currentTimeMillis);
+    private final UserRepository users = mock(UserRepository.class);
+    private final PanicAlertService service = new PanicAlertService(users, mock(PanicAlertRepository.class),
+            mock(PanicOutboxRepository.class), mock(ApplicationEventPublisher.class), guard,
+            new TransactionTemplate(new NoOpTransactionManager()), Duration.ofSeconds(10));
+
+    @Test
+    void tapWaitingOnARaiseThatRollsBackIsNotToldHelpIsComing() throws Exception {
+        CountDownLatch leaderInside = new CountDownLatch(1);
+        CountDownLatch leaderMayFail = new CountDownLatch(1);
+        // no psychologist assigned: raising the alert fails and its transaction rolls back
+        when(users.findByUsername("ana")).thenAnswer(inv -> {
+            leaderInside.countDown();
+            leaderMayFail.await(10, TimeUnit.SECONDS);
+            return Optional.of(new User("ana", "x", Role.CLIENT));
+        });
+
+        CompletableFuture<PanicAlertService.TriggerResult> leader =
+                CompletableFuture.supplyAsync(() -> service.trigger("ana", false));
+        assertTrue(leaderInside.await(10, TimeUnit.SECONDS));
+        CompletableFuture<PanicAlertService.TriggerResult> repeat =
+                CompletableFuture.supplyAsync(() -> service.trigger("ana", false));
+        awaitWaiting();
+        leaderMayFail.countDown();
+
+        assertBadRequest(leader);
+        // it was not joined to the failed alert: it tried itself and learned the same
+        assertBadRequest(repeat);
+    }
+
+    private void awaitWaiting() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (meters.counter("panic.triggers", "outcome", "waited").count() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(1.0, meters.counter("panic.triggers", "outcome", "waited").count());
+    }
+
+    private static void assertBadRequest(CompletableFuture<PanicAlertService.TriggerResult> tap) {
+        ExecutionException e = assertThrows(ExecutionException.class, () -> tap.get(10, TimeUnit.SECONDS));
+        ResponseStatusException cause = assertInstanceOf(ResponseStatusException.class, e.getCause());
+        assertEquals(HttpStatus.BAD_REQUEST, cause.getStatusCode());
+    }
+
+    // runs transaction synchronizations, touches no resource
+    private static class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import stucanii.backend.domain.PanicAlert;
+import stucanii.backend.domain.PanicEventType;
+import stucanii.backend.domain.PanicOutboxEvent;
+import stucanii.backend.domain.Role;
+import stucanii.backend.domain.User;
+import stucanii.backend.messaging.PresenceRegistry;
+import stucanii.backend.repository.PanicAlertRepository;
+import stucanii.backend.repository.PanicOutboxRepository;
+import stucanii.backend.repository.UserRepository;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class PanicEscalationServiceTest {
+
+    private static final String ADMIN_TOPIC = "/topic/panic-admin";
+
+    private final PanicAlertRepository alerts = mock(PanicAlertRepository.class);
+    private final PanicOutboxRepository outbox = mock(PanicOutboxRepository.class);
+    private final PresenceRegistry presence = mock(PresenceRegistry.class);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final PanicAlert alert = new PanicAlert(new User("ana", "x", Role.CLIENT),
+            new User("dr", "x", Role.PSYCHOLOGIST), false);
+
+    @Test
+    void alertForAnOfflinePsychologistIsEscalatedAtOnce() {
+        when(alerts.findForUpdate(7)).thenReturn(Optional.of(alert));
+        PanicEscalationService escalation = service("local");
+
+        escalation.onOpened(new PanicEscalationService.Opened(7, Instant.now(), "dr"));
+
+        ArgumentCaptor<PanicOutboxEvent> sent = ArgumentCaptor.forClass(PanicOutboxEvent.class);
+        verify(outbox).save(sent.capture());
+        assertEquals(PanicEventType.ESCALATED, sent.getValue().getType());
+        assertEquals(ADMIN_TOPIC, sent.getValue().getDestination());
+        assertNotNull(alert.getEscalatedAt());
+        assertEquals(1, meters.get("panic.escalations.offline").counter().count());
+        assertEquals(0, meters.get("panic.escalation.pending").gauge().value());
+    }
+
+    @Test
+    void onlinePsychologistGetsTheTimeoutFirst() {
+        when(presence.isOnline(Role.PSYCHOLOGIST, "dr")).thenReturn(true);
+        PanicEscalationService escalation = service("local");
+
+        escalation.onOpened(new PanicEscalationService.Opened(7, Instant.now(), "dr"));
+
+        verifyNoInteractions(alerts, outbox);
+        assertEquals(1, meters.get("panic.escalation.pending").gauge().value());
+    }
+
+    @Test
+    void presenceOfThisNodeIsNotTrustedWithPostgresFanout() {
+        PanicEscalationService escalation = service("postgres");
+
+        escalation.onOpened(new PanicEscalationService.Opened(7, Instant.now(), "dr"));
+
+        verifyNoInteractions(presence, alerts, outbox);
+        assertEquals(1, meters.get("panic.escalation.pending").gauge().value());
+    }
+
+    private PanicEscalationService service(String fanoutMode) {
+        return new PanicEscalationService(alerts, mock(UserRepository.class), outbox,
+                mock(ApplicationEventPublisher.class), new TransactionTemplate(mock(PlatformTransactionManager.class)),
+                Runnable::run, presence, meters, true, true, fanoutMode, Duration.ofMinutes(2), Duration.ofHours(1),
+                Duration.ofSeconds(1), 64, "", ADMIN_TOPIC);
+    }
+}
@@ -0,0 +1,80 @@
+package stucanii.backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import stucanii.backend.service.PanicTriggerGuard.Outcome;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PanicTriggerGuardTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    private final SimpleMeterRegistry meters = new SimpleMeterRegistry();
+    private final PanicTriggerGuard guard = new PanicTriggerGuard(
+            meters, Duration.ofSeconds(30), 2, Duration.ofMinutes(2), now::get);
+
+    @Test
+    void repeatTapsInsideWindowJoinTheRaisedAlert() {
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+
+        // still being raised: waits for it to commit
+        PanicTriggerGuard.Decision inFlight = guard.tryTrigger("ana");
+        assertEquals(Outcome.WAIT, inFlight.outcome());
+        assertFalse(inFlight.leader().isDone());
+
+        guard.raised("ana", 7, "room-7");
+        assertEquals(new PanicTriggerGuard.Decision(Outcome.COALESCED, 7, "room-7"), inFlight.leader().join());
+        now.addAndGet(10_000);
+        PanicTriggerGuard.Decision repeat = guard.tryTrigger("ana");
+        assertEquals(new PanicTriggerGuard.Decision(Outcome.COALESCED, 7, "room-7"), repeat);
+
+        assertEquals(1.0, meters.counter("panic.triggers", "outcome", "waited").count());
+        assertEquals(1.0, meters.counter("panic.triggers", "outcome", "coalesced").count());
+    }
+
+    @Test
+    void tapsWaitingOnARaiseThatRolledBackAreNotJoinedToIt() {
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+        PanicTriggerGuard.Decision waiting = guard.tryTrigger("ana");
+        assertEquals(Outcome.WAIT, waiting.outcome());
+
+        guard.abandoned("ana");
+
+        assertNull(waiting.leader().join());
+        // the refunded token lets the waiting tap raise it itself
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+    }
+
+    @Test
+    void newAlertsBeyondTheBucketAreRejectedUntilRefilled() {
+        for (int i = 0; i < 2; i++) {
+            assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+            guard.raised("ana", i, "room");
+            guard.closed("ana", i);
+        }
+        assertEquals(Outcome.REJECTED, guard.tryTrigger("ana").outcome());
+        assertEquals(Outcome.RAISE, guard.tryTrigger("bob").outcome());
+
+        now.addAndGet(Duration.ofMinutes(2).toMillis());
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+        assertEquals(1.0, meters.counter("panic.triggers", "outcome", "rejected").count());
+    }
+
+    @Test
+    void abandonedRaiseRefundsItsTokenAndIdleClientsAreSwept() {
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+        guard.abandoned("ana");
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+        guard.abandoned("ana");
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+        guard.abandoned("ana");
+
+        now.addAndGet(Duration.ofMinutes(10).toMillis());
+        guard.sweep();
+        assertEquals(0, guard.trackedClients());
+        assertEquals(Outcome.RAISE, guard.tryTrigger("ana").outcome());
+    }
+}
@@ -0,0 +1,45 @@
+package stucanii.backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantileSketchTest {
+
+    @Test
+    void quantilesStayWithinRelativeAccuracy() {
+        Random random = new Random(42);
+        double[] values = new double[100_000];
+        QuantileSketch sketch = new QuantileSketch(0.01);
+        for (int i = 0; i < values.length; i++) {
+            // long-tailed, like real time-to-acknowledge
+            values[i] = Math.exp(random.nextGaussian() * 1.5 + 10);
+            sketch.add(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double q : new double[]{0.5, 0.95, 0.99}) {
+            double exact = values[(int) Math.floor(q * (values.length - 1))];
+            assertEquals(exact, sketch.quantile(q), exact * 0.01, "q=" + q);
+        }
+    }
+
+    @Test
+    void mergeAndRoundTripPreserveCounts() {
+        QuantileSketch a = new QuantileSketch(0.01);
+        QuantileSketch b = new QuantileSketch(0.01);
+        for (int i = 1; i <= 100; i++) {
+            a.add(i * 1000);
+            b.add(0);
+        }
+
+        a.merge(QuantileSketch.fromBytes(b.toBytes()));
+
+        assertEquals(200, a.count());
+        assertEquals(0, a.quantile(0.25));
+        assertEquals(50_000, a.quantile(0.75), 500);
+    }
+}
@@ -0,0 +1,43 @@
+package stucanii.backend.storage;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileSystemMaterialBlobStoreTest {
+
+    @TempDir
+    Path root;
+
+    @Test
+    void write_isContentAddressedAndReadable() throws IOException {
+        FileSystemMaterialBlobStore store = new FileSystemMaterialBlobStore(root.toString());
+        byte[] bytes = "encrypted bytes".getBytes(StandardCharsets.UTF_8);
+
+        MaterialBlobStore.StoredBlob a = store.write(out -> out.write(bytes));
+        MaterialBlobStore.StoredBlob b = store.write(out -> out.write(bytes));
+
+        assertEquals(a.key(), b.key());
+        assertEquals(bytes.length, a.length());
+        try (SeekableByteChannel ch = store.open(a.key())) {
+            assertArrayEquals(bytes, Channels.newInputStream(ch).readAllBytes());
+        }
+
+        store.delete(a.key());
+        assertFalse(store.exists(a.key()));
+    }
+
+    @Test
+    void open_rejectsKeysOutsideTheStore() throws IOException {
+        FileSystemMaterialBlobStore store = new FileSystemMaterialBlobStore(root.toString());
+
+        assertThrows(IllegalArgumentException.class, () -> store.open("../../etc/passwd"));
+    }
+}
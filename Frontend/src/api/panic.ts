@@ -1,5 +1,5 @@
 import { postJsonAuth } from "./api";
 
 export async function triggerPanic(longPress: boolean) {
-    return await postJsonAuth<{ id: number }>("/api/panic/trigger", { longPress });
+    return await postJsonAuth<{ id: number | null; videoRoomId: string | null; coalesced: boolean }>("/api/panic/trigger", { longPress });
 }
\ No newline at end of file
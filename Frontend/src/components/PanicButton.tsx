@@ -61,8 +61,13 @@ const PanicButton: React.FC<Props> = ({ enabled }) => {
         if (isSending) return;
         setIsSending(true);
         try {
-            await triggerPanic(longPress);
-            setToastMsg(longPress ? "🚨 Panic alert sent (long press)" : "🚨 Panic alert sent");
+            const res = await triggerPanic(longPress);
+            if (res.coalesced) {
+                // alerta e deja trimisă; psihologul a fost anunțat
+                setToastMsg("🚨 Panic alert already sent, help is on the way");
+            } else {
+                setToastMsg(longPress ? "🚨 Panic alert sent (long press)" : "🚨 Panic alert sent");
+            }
             setShowToast(true);
         } catch {
             setToastMsg("Failed to send panic alert");
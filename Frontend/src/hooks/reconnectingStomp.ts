@@ -0,0 +1,47 @@
+import SockJS from "sockjs-client";
+import Stomp from "stompjs";
+import { getAccessToken } from "../auth/authStorage";
+
+const WS_URL = "http://localhost:8080/ws";
+const MIN_DELAY_MS = 1_000;
+const MAX_DELAY_MS = 30_000;
+
+/**
+ * Conectare STOMP care se reface singură: serverul închide sesiunile care nu țin pasul
+ * (slow consumer), iar clientul revine după o pauză crescătoare, cu jitter ca să nu revină toți odată.
+ * Returnează funcția de oprire.
+ */
+export function connectWithRetry(onConnected: (client: Stomp.Client) => void): () => void {
+    let stopped = false;
+    let attempt = 0;
+    let timer: ReturnType<typeof setTimeout> | null = null;
+    let client: Stomp.Client | null = null;
+
+    const open = () => {
+        const c = Stomp.over(new SockJS(WS_URL));
+        c.debug = () => {};
+        client = c;
+        // serverul refuză CONNECT fără token; citit la fiecare încercare, ca reconectarea să ia token-ul reîmprospătat
+        c.connect(
+            { Authorization: `Bearer ${getAccessToken() ?? ""}` },
+            () => {
+                attempt = 0;
+                onConnected(c);
+            },
+            () => {
+                if (stopped) return;
+                const base = Math.min(MAX_DELAY_MS, MIN_DELAY_MS * 2 ** attempt++);
+                timer = setTimeout(open, base / 2 + Math.random() * base / 2);
+            }
+        );
+    };
+    open();
+
+    return () => {
+        stopped = true;
+        if (timer) clearTimeout(timer);
+        if (client?.connected) {
+            client.disconnect(() => {});
+        }
+    };
+}
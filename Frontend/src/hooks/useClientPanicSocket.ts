@@ -1,6 +1,5 @@
 import { useEffect, useRef } from "react";
-import SockJS from "sockjs-client";
-import Stomp from "stompjs";
+import { connectWithRetry } from "./reconnectingStomp";
 import { getDecodedToken } from "../auth/authStorage";
 
 export type PanicAckEvent = {
@@ -9,12 +8,14 @@ export type PanicAckEvent = {
     psychologistUsername: string;
     videoRoomId: string;
     jitsiToken: string;
+    receiptId: string;
 };
 
 export function useClientPanicSocket(
     onAck: (e: PanicAckEvent) => void
 ) {
-    const clientRef = useRef<Stomp.Client | null>(null);
+    // evenimentele pot veni de mai multe ori (retrimitere / resubscribe)
+    const seenRef = useRef<Set<string>>(new Set());
 
     useEffect(() => {
         // Luăm username-ul direct din token-ul stocat
@@ -23,28 +24,20 @@ export function useClientPanicSocket(
 
         if (!username) return;
 
-        const socket = new SockJS("http://localhost:8080/ws");
-        const client = Stomp.over(socket);
-
-        client.debug = () => {}; // Oprim logurile din consolă
-
-        client.connect({}, () => {
+        // după reconectare serverul retrimite ce n-am confirmat, iar seenRef filtrează dublurile
+        return connectWithRetry((client) => {
             // Ascultăm pe canalul personalizat al clientului
             client.subscribe(
                 `/topic/panic-updates/${username}`,
                 (msg) => {
                     const data = JSON.parse(msg.body) as PanicAckEvent;
+                    // confirmăm primirea, altfel serverul retrimite evenimentul
+                    client.send("/app/panic/receipt", {}, JSON.stringify({ receiptId: data.receiptId }));
+                    if (seenRef.current.has(data.receiptId)) return;
+                    seenRef.current.add(data.receiptId);
                     onAck(data);
                 }
             );
         });
-
-        clientRef.current = client;
-
-        return () => {
-            if (clientRef.current?.connected) {
-                clientRef.current.disconnect(() => {});
-            }
-        };
     }, [onAck]);
 }
\ No newline at end of file
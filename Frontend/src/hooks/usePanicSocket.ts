@@ -1,6 +1,5 @@
 import { useEffect, useRef } from "react";
-import SockJS from "sockjs-client";
-import Stomp from "stompjs";
+import { connectWithRetry } from "./reconnectingStomp";
 
 export type PanicEvent = {
     alertId: number;
@@ -9,38 +8,32 @@ export type PanicEvent = {
     createdAt: string;
     videoRoomId: string;
     jitsiToken: string;
+    receiptId: string;
 };
 
 export function usePanicSocket(
     psychologistUsername: string | null,
     onEvent: (e: PanicEvent) => void
 ) {
-    const clientRef = useRef<Stomp.Client | null>(null);
+    // evenimentele pot veni de mai multe ori (retrimitere / resubscribe)
+    const seenRef = useRef<Set<string>>(new Set());
 
     useEffect(() => {
         if (!psychologistUsername) return;
 
-        const socket = new SockJS("http://localhost:8080/ws");
-        const client = Stomp.over(socket);
-
-        client.debug = () => {}; // silence logs
-
-        client.connect({}, () => {
+        // după reconectare serverul retrimite ce n-am confirmat, iar seenRef filtrează dublurile
+        return connectWithRetry((client) => {
             client.subscribe(
                 `/topic/panic/${psychologistUsername}`,
                 (msg) => {
                     const data = JSON.parse(msg.body) as PanicEvent;
+                    // confirmăm primirea, altfel serverul retrimite evenimentul
+                    client.send("/app/panic/receipt", {}, JSON.stringify({ receiptId: data.receiptId }));
+                    if (seenRef.current.has(data.receiptId)) return;
+                    seenRef.current.add(data.receiptId);
                     onEvent(data);
                 }
             );
         });
-
-        clientRef.current = client;
-
-        return () => {
-            if (clientRef.current?.connected) {
-                clientRef.current.disconnect(() => {});
-            }
-        };
     }, [psychologistUsername, onEvent]);
 }
\ No newline at end of file